@@ -0,0 +1,30 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.diagram;
+
+/**
+ * Generates the ids of new BPMN elements, see {@link UUIDGenerator#setIdGenerator(IdGenerator)}.
+ * 
+ * Implementations are called for every element that is constructed, from any
+ * thread: they must be thread-safe and shouldn't block.
+ * 
+ * @author jbarrez
+ */
+public interface IdGenerator {
+
+	/**
+	 * Returns a new id, unique within all documents the elements can end up in.
+	 */
+	String generateId();
+
+}
@@ -1,7 +1,96 @@
-package  org.activiti.kickstart.bpmn20.diagram;
+package org.activiti.kickstart.bpmn20.diagram;
 
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates the default ids of BPMN elements, all element constructors call
+ * {@link #generate()}.
+ * 
+ * The ids are produced by a pluggable {@link IdGenerator}. The default generator
+ * creates random "sid-" UUIDs from a random source per thread:
+ * {@link UUID#randomUUID()} uses one shared SecureRandom, which all threads 
+ * constructing elements would contend on. {@link #SECURE_RANDOM} gives the 
+ * previous behaviour.
+ * 
+ * Elements created while id generation is {@link #suspend() suspended} on the
+ * current thread get no id. This is used while unmarshalling, where ids are
+ * taken from the xml: the unmarshaller generates the ids of the elements that
+ * have none in the xml afterwards.
+ */
 public class UUIDGenerator {
+	
+	/** Random UUIDs from a non-blocking random source per thread */
+	public static final IdGenerator THREAD_LOCAL_RANDOM = new ThreadLocalRandomIdGenerator();
+	
+	/** Random UUIDs from the shared SecureRandom of {@link UUID#randomUUID()} */
+	public static final IdGenerator SECURE_RANDOM = new IdGenerator() {
+		public String generateId() {
+			return "sid-" + UUID.randomUUID().toString();
+		}
+	};
+	
+	private static volatile IdGenerator idGenerator = THREAD_LOCAL_RANDOM;
+	
+	private static final ThreadLocal<int[]> suspensions = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+	
+	/**
+	 * Returns a new id, or null while id generation is suspended on the current thread.
+	 */
 	public static String generate(){
-		return "sid-" + java.util.UUID.randomUUID().toString();
+		if (suspensions.get()[0] > 0) {
+			return null;
+		}
+		return idGenerator.generateId();
+	}
+	
+	/**
+	 * Suspends id generation on the current thread, until the matching {@link #resume()}.
+	 * Calls can be nested.
+	 */
+	public static void suspend() {
+		suspensions.get()[0]++;
+	}
+	
+	public static void resume() {
+		suspensions.get()[0]--;
+	}
+	
+	public static IdGenerator getIdGenerator() {
+		return idGenerator;
+	}
+	
+	/**
+	 * Replaces the id generator used for all elements created from now on.
+	 */
+	public static void setIdGenerator(IdGenerator generator) {
+		if (generator == null) {
+			throw new IllegalArgumentException("Id generator is required");
+		}
+		idGenerator = generator;
+	}
+	
+	/**
+	 * Version 4 UUIDs, with the same format as {@link UUID#randomUUID()}.
+	 */
+	protected static class ThreadLocalRandomIdGenerator implements IdGenerator {
+		
+		protected final ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+			protected Random initialValue() {
+				return new Random();
+			}
+		};
+		
+		public String generateId() {
+			Random random = randoms.get();
+			long mostSignificantBits = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L; // version 4
+			long leastSignificantBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+			return "sid-" + new UUID(mostSignificantBits, leastSignificantBits).toString();
+		}
+		
 	}
-}
\ No newline at end of file
+}
@@ -135,7 +135,7 @@ public abstract class BaseElement {
 	@XmlSchemaType(name = "ID")
 	protected String id;
 	@XmlAnyAttribute
-	private Map<QName, String> otherAttributes = new HashMap<QName, String>();
+	private Map<QName, String> otherAttributes;
 	@XmlElement
 	private ExtensionElements extensionElements;
 	
@@ -164,13 +164,13 @@ public abstract class BaseElement {
 	 * 		The {@link BaseElement} to copy.
 	 */
 	public BaseElement(BaseElement base) {
-		if(base.getDocumentation().size() > 0)
+		if(base.isSetDocumentation())
 			this.getDocumentation().addAll(base.getDocumentation());
 		
-		if(base.getAny().size() > 0)
+		if(base.isSetAny())
 			this.getAny().addAll(base.getAny());
 		
-		if(base.getOtherAttributes().size() > 0)
+		if(base.isSetOtherAttributes())
 			this.getOtherAttributes().putAll(base.getOtherAttributes());
 		
 		this.setId(base.getId());
@@ -289,6 +289,27 @@ public abstract class BaseElement {
 	 }
 	 return this.documentation;
 	 }
+	 
+	/**
+	 * Collections and maps of the model are only allocated when they are first
+	 * requested through their getter. The isSet methods check for content
+	 * without allocating: read-only code should use them, so elements that
+	 * are only read stay lean.
+	 * 
+	 * @return true if the element has documentation
+	 */
+	public boolean isSetDocumentation() {
+		return documentation != null && !documentation.isEmpty();
+	}
+	
+	public boolean isSetAny() {
+		return any != null && !any.isEmpty();
+	}
+	
+	public boolean isSetOtherAttributes() {
+		return otherAttributes != null && !otherAttributes.isEmpty();
+	}
+	
 	/**
 	 * Gets the value of the any property.
 	 * 
@@ -369,6 +390,9 @@ public abstract class BaseElement {
 	 * @return always non-null
 	 */
 	public Map<QName, String> getOtherAttributes() {
+		if (otherAttributes == null) {
+			otherAttributes = new HashMap<QName, String>();
+		}
 		return otherAttributes;
 	}
 
@@ -25,6 +25,7 @@ package org.activiti.kickstart.bpmn20.model;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -161,10 +162,22 @@ public class Definitions {
 	/**
 	 * The {@link Marshaller} invokes this method right before marshaling to 
 	 * XML. The namespace are added as attributes to the definitions element.
+	 * The attributes always reflect the current namespaces, also when the 
+	 * same definitions are marshalled multiple times.
 	 * @param marshaller 
 	 * 		The marshaling context
 	 */
 	public void beforeMarshal(Marshaller marshaller) {
+		/* Declarations of namespaces that were removed since a previous marshal */
+		Iterator<QName> attributeNames = this.getOtherAttributes().keySet().iterator();
+		while (attributeNames.hasNext()) {
+			String attributeName = attributeNames.next().getLocalPart();
+			if (attributeName.startsWith("xmlns:") 
+					&& !this.getNamespaces().containsKey(attributeName.substring("xmlns:".length()))) {
+				attributeNames.remove();
+			}
+		}
+		
 		for (String prefix : this.getNamespaces().keySet()) {
 			QName namespacePrefix = new QName("xmlns:" + prefix);
 			this.getOtherAttributes().put(namespacePrefix,
@@ -155,6 +155,10 @@ public abstract class FlowElement extends BaseElement {
 	}
 
 	public void afterUnmarshal(Unmarshaller u, Object parent) {
+		if (parent instanceof Process) {
+			this.process = (Process) parent;
+		}
+
 		if (parent != null && parent instanceof SubProcess) {
 			this.subProcess = (SubProcess) parent;
 		}
@@ -223,6 +227,17 @@ public abstract class FlowElement extends BaseElement {
 		}
 		return this.outgoing;
 	}
+	
+	/**
+	 * Checks for incoming edges without allocating the list, see {@link BaseElement#isSetDocumentation()}.
+	 */
+	public boolean isSetIncoming() {
+		return incoming != null && !incoming.isEmpty();
+	}
+	
+	public boolean isSetOutgoing() {
+		return outgoing != null && !outgoing.isEmpty();
+	}
 
 	/**
 	 * Gets the value of the auditing property.
@@ -294,6 +309,10 @@ public abstract class FlowElement extends BaseElement {
 		}
 		return this.categoryValue;
 	}
+	
+	public boolean isSetCategoryValue() {
+		return categoryValue != null && !categoryValue.isEmpty();
+	}
 
 	/**
 	 * Gets the value of the name property.
@@ -320,6 +339,24 @@ public abstract class FlowElement extends BaseElement {
 		this.process = process;
 	}
 
+	/**
+	 * The graph index of the process refers to the element by its id.
+	 */
+	public void setId(String value) {
+		super.setId(value);
+		invalidateGraphIndex();
+	}
+
+	/**
+	 * Drops the graph index of the process the element belongs to, if any.
+	 * Called for changes the process itself can't see.
+	 */
+	protected void invalidateGraphIndex() {
+		if (process != null) {
+			process.invalidateGraphIndex();
+		}
+	}
+
 	/**
 	 * Sets the value of the name property.
 	 * 
@@ -24,6 +24,7 @@
 package org.activiti.kickstart.bpmn20.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.xml.bind.Marshaller;
@@ -110,11 +111,16 @@ public abstract class FlowNode extends FlowElement {
 	/**
 	 * Convenience method to retrieve all incoming {@link SequenceFlow}
 	 * 
-	 * Changes to that list have no influence to the result other callers get.
+	 * The list can't be modified. For a node of a process it is taken from the
+	 * {@link Process#getGraphIndex() graph index}, without allocating.
 	 * 
 	 * @return The list of {@link SequenceFlow}
 	 */
 	public List<SequenceFlow> getIncomingSequenceFlows() {
+		if (getProcess() != null) {
+			return getProcess().getGraphIndex().getIncoming(this);
+		}
+
 		ArrayList<SequenceFlow> incomingSeq = new ArrayList<SequenceFlow>();
 
 		for (FlowElement node : this.getIncoming()) {
@@ -124,28 +130,35 @@ public abstract class FlowNode extends FlowElement {
 			}
 		}
 
-		return incomingSeq;
+		return Collections.unmodifiableList(incomingSeq);
 	}
 
 	/**
 	 * The {@link Marshaller} invokes this method right before marshaling to
 	 * XML. Add sequenceflow to the reference list.
 	 * 
+	 * Sequence flows already in the reference list are not added again, so
+	 * marshalling the same node multiple times gives the same result.
+	 * 
 	 * @param marshaller
 	 *            The marshaling context
 	 */
 	public void beforeMarshal(Marshaller marshaller) {
 		/* Incoming sequence flows */
-		for (Edge edge : this.getIncoming()) {
-			if (edge instanceof SequenceFlow) {
-				get_incomingSequenceFlows().add((SequenceFlow) edge);
+		if (this.isSetIncoming()) {
+			for (Edge edge : this.getIncoming()) {
+				if (edge instanceof SequenceFlow && !get_incomingSequenceFlows().contains(edge)) {
+					get_incomingSequenceFlows().add((SequenceFlow) edge);
+				}
 			}
 		}
 
 		/* Outgoing sequence flows */
-		for (Edge edge : this.getOutgoing()) {
-			if (edge instanceof SequenceFlow) {
-				get_outgoingSequenceFlows().add((SequenceFlow) edge);
+		if (this.isSetOutgoing()) {
+			for (Edge edge : this.getOutgoing()) {
+				if (edge instanceof SequenceFlow && !get_outgoingSequenceFlows().contains(edge)) {
+					get_outgoingSequenceFlows().add((SequenceFlow) edge);
+				}
 			}
 		}
 	}
@@ -153,11 +166,16 @@ public abstract class FlowNode extends FlowElement {
 	/**
 	 * Convenience method to retrieve all outgoing {@link SequenceFlow}
 	 * 
-	 * Changes to that list have no influence to the result other callers get.
+	 * The list can't be modified. For a node of a process it is taken from the
+	 * {@link Process#getGraphIndex() graph index}, without allocating.
 	 * 
 	 * @return The list of {@link SequenceFlow}
 	 */
 	public List<SequenceFlow> getOutgoingSequenceFlows() {
+		if (getProcess() != null) {
+			return getProcess().getGraphIndex().getOutgoing(this);
+		}
+
 		ArrayList<SequenceFlow> outgoingSeq = new ArrayList<SequenceFlow>();
 
 		for (FlowElement node : this.getOutgoing()) {
@@ -167,7 +185,7 @@ public abstract class FlowNode extends FlowElement {
 			}
 		}
 
-		return outgoingSeq;
+		return Collections.unmodifiableList(outgoingSeq);
 	}
 
 	/**
@@ -229,4 +247,15 @@ public abstract class FlowNode extends FlowElement {
 
 		return _outgoingSequenceFlows;
 	}
+
+	/**
+	 * Checks for sequence flow references without allocating the list, see {@link BaseElement#isSetDocumentation()}.
+	 */
+	public boolean isSet_incomingSequenceFlows() {
+		return _incomingSequenceFlows != null && !_incomingSequenceFlows.isEmpty();
+	}
+
+	public boolean isSet_outgoingSequenceFlows() {
+		return _outgoingSequenceFlows != null && !_outgoingSequenceFlows.isEmpty();
+	}
 }
@@ -24,6 +24,7 @@
 package org.activiti.kickstart.bpmn20.model;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.xml.bind.JAXBElement;
@@ -33,6 +34,7 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.namespace.QName;
 
@@ -178,6 +180,11 @@ public class Process
     @XmlElement(type = LaneSet.class)
     protected List<LaneSet> laneSet;
     
+    @XmlTransient
+    protected ProcessGraphIndex graphIndex;
+    @XmlTransient
+    protected int graphIndexChangeCount;
+    
     /**
      * Adds the child to the process's flow elements if possible.
      */
@@ -204,11 +211,37 @@ public class Process
     public void removeChild(BaseElement child) {
     	this.getArtifact().remove(child);
     	
-    	this.getFlowElement().remove(child);
+    	if(this.getFlowElement().remove(child) && ((FlowElement) child).getProcess() == this) {
+    		((FlowElement) child).setProcess(null);
+    	}
     	
     	removeFromLaneSet(child);
     }
     
+    /**
+     * Returns the index of the sequence flow graph of this process. The index is
+     * built on first use and shared until the process changes: every change to the
+     * list of flow elements (adding, removing or replacing an element) and rewiring
+     * or renaming one of its elements drops it.
+     */
+    public ProcessGraphIndex getGraphIndex() {
+    	FlowElementList flowElements = (FlowElementList) getFlowElement();
+    	ProcessGraphIndex index = this.graphIndex;
+    	if(index == null || graphIndexChangeCount != flowElements.getChangeCount()) {
+    		graphIndexChangeCount = flowElements.getChangeCount();
+    		index = new ProcessGraphIndex(flowElements);
+    		this.graphIndex = index;
+    	}
+    	return index;
+    }
+    
+    /**
+     * Drops the graph index, the next call to {@link #getGraphIndex()} builds a new one.
+     */
+    public void invalidateGraphIndex() {
+    	this.graphIndex = null;
+    }
+    
     /**
      * Remove the element recursively from the lane set.
      */
@@ -489,8 +522,9 @@ public class Process
      */
     @ChildElements
     public List<FlowElement> getFlowElement() {
-        if (flowElement == null) {
-            flowElement = new ArrayList<FlowElement>();
+        if (!(flowElement instanceof FlowElementList)) {
+            // also replaces the plain list JAXB creates while unmarshalling
+            flowElement = new FlowElementList(flowElement);
         }
         return this.flowElement;
     }
@@ -662,4 +696,67 @@ public class Process
 		this.processType = processType;
 	}
 
+	/**
+	 * The flow elements of the process. Elements added to the list belong to the process,
+	 * and every change of the list, including replacing an element, is counted so the
+	 * {@link Process#getGraphIndex() graph index} knows when it is stale. Replacements are
+	 * counted apart: modCount is left to the iterators of the list.
+	 */
+	protected class FlowElementList extends ArrayList<FlowElement> {
+
+		private static final long serialVersionUID = 1L;
+
+		protected int replaceCount;
+
+		public FlowElementList(Collection<FlowElement> flowElements) {
+			if (flowElements != null) {
+				addAll(flowElements);
+			}
+		}
+
+		public boolean add(FlowElement flowElement) {
+			adopt(flowElement);
+			return super.add(flowElement);
+		}
+
+		public void add(int index, FlowElement flowElement) {
+			adopt(flowElement);
+			super.add(index, flowElement);
+		}
+
+		public FlowElement set(int index, FlowElement flowElement) {
+			adopt(flowElement);
+			replaceCount++;
+			return super.set(index, flowElement);
+		}
+
+		public boolean addAll(Collection<? extends FlowElement> flowElements) {
+			for (FlowElement flowElement : flowElements) {
+				adopt(flowElement);
+			}
+			return super.addAll(flowElements);
+		}
+
+		public boolean addAll(int index, Collection<? extends FlowElement> flowElements) {
+			for (FlowElement flowElement : flowElements) {
+				adopt(flowElement);
+			}
+			return super.addAll(index, flowElements);
+		}
+
+		/**
+		 * Grows with every structural change (modCount) and every replaced element.
+		 */
+		public int getChangeCount() {
+			return modCount + replaceCount;
+		}
+
+		protected void adopt(FlowElement flowElement) {
+			if (flowElement != null) {
+				flowElement.setProcess(Process.this);
+			}
+		}
+
+	}
+
 }
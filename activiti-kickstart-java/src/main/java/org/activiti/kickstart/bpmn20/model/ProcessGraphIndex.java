@@ -0,0 +1,205 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.activiti.kickstart.bpmn20.model.connector.SequenceFlow;
+
+/**
+ * Immutable index of the sequence flow graph of a {@link Process}: the flow
+ * elements by id, the incoming and outgoing sequence flows of every flow node
+ * and the flow nodes in topological order.
+ *
+ * The index is built in one pass over the flow elements. All lists it returns
+ * are created at that time and can't be modified, so lookups don't allocate.
+ * Use {@link Process#getGraphIndex()} to share one index between all code
+ * working on the same process.
+ *
+ * @author jbarrez
+ */
+public class ProcessGraphIndex {
+
+	protected static final List<SequenceFlow> NO_SEQUENCE_FLOWS = Collections.emptyList();
+
+	protected final int nrOfFlowElements;
+	protected final Map<String, FlowElement> elementsById;
+	protected final Map<FlowElement, Integer> nodeIndexes;
+	protected final List<SequenceFlow>[] incoming;
+	protected final List<SequenceFlow>[] outgoing;
+	protected final List<FlowNode> topologicalOrder;
+
+	@SuppressWarnings("unchecked")
+	public ProcessGraphIndex(List<FlowElement> flowElements) {
+		this.nrOfFlowElements = flowElements.size();
+
+		// Dense numbering of the flow nodes, in document order
+		Map<String, FlowElement> elementsById = new HashMap<String, FlowElement>(flowElements.size() * 2);
+		Map<FlowElement, Integer> nodeIndexes = new IdentityHashMap<FlowElement, Integer>();
+		List<FlowNode> nodes = new ArrayList<FlowNode>();
+		List<SequenceFlow> sequenceFlows = new ArrayList<SequenceFlow>();
+		for (FlowElement flowElement : flowElements) {
+			if (flowElement.getId() != null) {
+				elementsById.put(flowElement.getId(), flowElement);
+			}
+			if (flowElement instanceof FlowNode) {
+				nodeIndexes.put(flowElement, nodes.size());
+				nodes.add((FlowNode) flowElement);
+			} else if (flowElement instanceof SequenceFlow) {
+				sequenceFlows.add((SequenceFlow) flowElement);
+			}
+		}
+
+		// Adjacency: the flows are counted first, so every node gets an exactly sized array
+		int[] nrOfIncoming = new int[nodes.size()];
+		int[] nrOfOutgoing = new int[nodes.size()];
+		for (SequenceFlow sequenceFlow : sequenceFlows) {
+			Integer source = nodeIndexes.get(sequenceFlow.getSourceRef());
+			Integer target = nodeIndexes.get(sequenceFlow.getTargetRef());
+			if (source != null) {
+				nrOfOutgoing[source]++;
+			}
+			if (target != null) {
+				nrOfIncoming[target]++;
+			}
+		}
+
+		SequenceFlow[][] incomingFlows = new SequenceFlow[nodes.size()][];
+		SequenceFlow[][] outgoingFlows = new SequenceFlow[nodes.size()][];
+		for (int i = 0; i < nodes.size(); i++) {
+			incomingFlows[i] = new SequenceFlow[nrOfIncoming[i]];
+			outgoingFlows[i] = new SequenceFlow[nrOfOutgoing[i]];
+		}
+		int[] incomingFilled = new int[nodes.size()];
+		int[] outgoingFilled = new int[nodes.size()];
+		for (SequenceFlow sequenceFlow : sequenceFlows) {
+			Integer source = nodeIndexes.get(sequenceFlow.getSourceRef());
+			Integer target = nodeIndexes.get(sequenceFlow.getTargetRef());
+			if (source != null) {
+				outgoingFlows[source][outgoingFilled[source]++] = sequenceFlow;
+			}
+			if (target != null) {
+				incomingFlows[target][incomingFilled[target]++] = sequenceFlow;
+			}
+		}
+
+		this.elementsById = elementsById;
+		this.nodeIndexes = nodeIndexes;
+		this.incoming = new List[nodes.size()];
+		this.outgoing = new List[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			incoming[i] = asList(incomingFlows[i]);
+			outgoing[i] = asList(outgoingFlows[i]);
+		}
+		this.topologicalOrder = Collections.unmodifiableList(sortTopologically(nodes, nrOfIncoming));
+	}
+
+	/**
+	 * Kahn's algorithm, nodes that become ready at the same time keep their document order.
+	 * Nodes on a cycle are never ready: they are added at the end, in document order.
+	 */
+	protected List<FlowNode> sortTopologically(List<FlowNode> nodes, int[] nrOfIncoming) {
+		int[] remainingIncoming = nrOfIncoming.clone();
+		int[] queue = new int[nodes.size()];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			if (remainingIncoming[i] == 0) {
+				queue[tail++] = i;
+			}
+		}
+
+		boolean[] sorted = new boolean[nodes.size()];
+		List<FlowNode> order = new ArrayList<FlowNode>(nodes.size());
+		while (head < tail) {
+			int node = queue[head++];
+			sorted[node] = true;
+			order.add(nodes.get(node));
+			for (SequenceFlow sequenceFlow : outgoing[node]) {
+				Integer target = nodeIndexes.get(sequenceFlow.getTargetRef());
+				if (target != null && --remainingIncoming[target] == 0) {
+					queue[tail++] = target;
+				}
+			}
+		}
+
+		for (int i = 0; i < nodes.size(); i++) {
+			if (!sorted[i]) {
+				order.add(nodes.get(i));
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the flow element with the given id, or null.
+	 */
+	public FlowElement getElement(String id) {
+		return elementsById.get(id);
+	}
+
+	/**
+	 * Returns the sequence flows ending in the given flow node, in document order.
+	 */
+	public List<SequenceFlow> getIncoming(FlowElement flowNode) {
+		Integer index = nodeIndexes.get(flowNode);
+		return index != null ? incoming[index] : NO_SEQUENCE_FLOWS;
+	}
+
+	/**
+	 * Returns the sequence flows starting in the given flow node, in document order.
+	 */
+	public List<SequenceFlow> getOutgoing(FlowElement flowNode) {
+		Integer index = nodeIndexes.get(flowNode);
+		return index != null ? outgoing[index] : NO_SEQUENCE_FLOWS;
+	}
+
+	public List<SequenceFlow> getIncoming(String flowNodeId) {
+		return getIncoming(getElement(flowNodeId));
+	}
+
+	public List<SequenceFlow> getOutgoing(String flowNodeId) {
+		return getOutgoing(getElement(flowNodeId));
+	}
+
+	/**
+	 * Returns all flow nodes, every node after all nodes that lead to it.
+	 */
+	public List<FlowNode> getTopologicalOrder() {
+		return topologicalOrder;
+	}
+
+	/**
+	 * Number of flow elements the index was built from. The index doesn't follow
+	 * changes of the process, {@link Process#getGraphIndex()} drops it instead.
+	 */
+	public int getNrOfFlowElements() {
+		return nrOfFlowElements;
+	}
+
+	// Helper methods ////////////////////////////////////////////////////////////////////
+
+	protected List<SequenceFlow> asList(SequenceFlow[] sequenceFlows) {
+		if (sequenceFlows.length == 0) {
+			return NO_SEQUENCE_FLOWS;
+		}
+		return Collections.unmodifiableList(Arrays.asList(sequenceFlows));
+	}
+
+}
@@ -455,6 +455,29 @@ public abstract class Activity
         return this.activityResource;
     }
 
+    /**
+     * Checks for content without allocating the lists, see {@link org.activiti.kickstart.bpmn20.model.BaseElement#isSetDocumentation()}.
+     */
+    public boolean isSetActivityResource() {
+        return activityResource != null && !activityResource.isEmpty();
+    }
+
+    public boolean isSetProperty() {
+        return property != null && !property.isEmpty();
+    }
+
+    public boolean isSetDataInputAssociation() {
+        return dataInputAssociation != null && !dataInputAssociation.isEmpty();
+    }
+
+    public boolean isSetDataOutputAssociation() {
+        return dataOutputAssociation != null && !dataOutputAssociation.isEmpty();
+    }
+
+    public boolean isSetAdditionalProperties() {
+        return additionalProperties != null && !additionalProperties.isEmpty();
+    }
+
     /**
      * Gets the value of the loopCharacteristics property.
      * 
@@ -30,8 +30,10 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlSchemaType;
 import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import org.activiti.kickstart.bpmn20.model.activity.Task;
+import org.activiti.kickstart.bpmn20.util.EscapingStringAdapter;
 
 /**
  * <p>
@@ -92,6 +94,7 @@ public class ScriptTask extends Task {
   }
 
   @XmlElement
+  @XmlJavaTypeAdapter(EscapingStringAdapter.class)
   protected String script;
 
   @XmlAttribute
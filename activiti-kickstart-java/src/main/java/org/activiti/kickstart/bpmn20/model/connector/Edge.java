@@ -107,11 +107,13 @@ public abstract class Edge extends FlowElement {
 	 */
 	public void setSourceRef(FlowElement sourceRef) {
 		this.sourceRef = sourceRef;
+		invalidateGraphIndex();
 	}
 	/**
 	 * @param targetRef the targetRef to set
 	 */
 	public void setTargetRef(FlowElement targetRef) {
 		this.targetRef = targetRef;
+		invalidateGraphIndex();
 	}
 }
@@ -99,6 +99,10 @@ public class StartEvent
       this.initiator = initiator;
     }
     
+    public String getInitiator() {
+      return initiator;
+    }
+    
     
     public void setFormKey(String formKey) {
       this.formKey = formKey;
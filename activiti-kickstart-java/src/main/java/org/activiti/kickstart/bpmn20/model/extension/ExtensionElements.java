@@ -24,12 +24,17 @@
 package org.activiti.kickstart.bpmn20.model.extension;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
 import org.w3c.dom.Element;
@@ -64,6 +69,16 @@ public class ExtensionElements {
 	// @XmlAnyElement(lax = true)
 	@XmlElementRef(type = AbstractExtensionElement.class)
 	protected List<AbstractExtensionElement> any;
+	
+	/* 
+	 * The elements of the any list by their exact class, in list order. Kept up to 
+	 * date by add(..) and rebuilt after unmarshalling, or when the size of the 
+	 * any list shows that it was changed directly.
+	 */
+	@XmlTransient
+	protected Map<Class<?>, TypedElements> elementsByType;
+	@XmlTransient
+	protected int nrOfIndexedElements;
 
 	/**
 	 * Returns the first element of type {@code elementType}.
@@ -74,17 +89,16 @@ public class ExtensionElements {
 	@SuppressWarnings("unchecked")
 	public <T extends AbstractExtensionElement> T getFirstExtensionElementOfType(
 			Class<T> elementType) {
-		for (AbstractExtensionElement element : getAny()) {
-			if (element.getClass().equals(elementType)) {
-				return (T) element;
-			}
+		TypedElements typedElements = getElementsByType().get(elementType);
+		if (typedElements == null) {
+			return null;
 		}
-
-		return null;
+		return (T) typedElements.elements.get(0);
 	}
 
 	/**
-	 * Returns the first element of type {@code elementType}.
+	 * Returns all elements of type {@code elementType}, in document order. 
+	 * The returned list can't be modified.
 	 * 
 	 * @param elementType
 	 * @return
@@ -92,14 +106,11 @@ public class ExtensionElements {
 	@SuppressWarnings("unchecked")
 	public <T extends AbstractExtensionElement> List<T> getAllElementOfType(
 			Class<T> elementType) {
-		List<T> elements = new ArrayList<T>();
-		for (AbstractExtensionElement element : getAny()) {
-			if (element.getClass().equals(elementType)) {
-				elements.add((T) element);
-			}
+		TypedElements typedElements = getElementsByType().get(elementType);
+		if (typedElements == null) {
+			return Collections.emptyList();
 		}
-
-		return elements;
+		return (List<T>) typedElements.view;
 	}
 	
 	/**
@@ -108,7 +119,35 @@ public class ExtensionElements {
 	 * @param extensionElement
 	 */
 	public void add(AbstractExtensionElement extensionElement) {
+		Map<Class<?>, TypedElements> index = getElementsByType();
 		getAny().add(extensionElement);
+		addToIndex(index, extensionElement);
+		nrOfIndexedElements++;
+	}
+	
+	public void afterUnmarshal(Unmarshaller u, Object parent) {
+		this.elementsByType = null;
+	}
+	
+	protected Map<Class<?>, TypedElements> getElementsByType() {
+		if (elementsByType == null || nrOfIndexedElements != getAny().size()) {
+			Map<Class<?>, TypedElements> index = new HashMap<Class<?>, TypedElements>();
+			for (AbstractExtensionElement element : getAny()) {
+				addToIndex(index, element);
+			}
+			this.elementsByType = index;
+			this.nrOfIndexedElements = getAny().size();
+		}
+		return elementsByType;
+	}
+	
+	protected void addToIndex(Map<Class<?>, TypedElements> index, AbstractExtensionElement element) {
+		TypedElements typedElements = index.get(element.getClass());
+		if (typedElements == null) {
+			typedElements = new TypedElements();
+			index.put(element.getClass(), typedElements);
+		}
+		typedElements.elements.add(element);
 	}
 
 	/**
@@ -140,5 +179,15 @@ public class ExtensionElements {
 		}
 		return this.any;
 	}
+	
+	/**
+	 * The elements of one type, with a read-only view that is created once.
+	 */
+	protected static class TypedElements {
+		
+		protected final List<AbstractExtensionElement> elements = new ArrayList<AbstractExtensionElement>(4);
+		protected final List<AbstractExtensionElement> view = Collections.unmodifiableList(elements);
+		
+	}
 
 }
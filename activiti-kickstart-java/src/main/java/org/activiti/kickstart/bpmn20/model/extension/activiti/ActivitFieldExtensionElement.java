@@ -18,8 +18,10 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import org.activiti.kickstart.bpmn20.model.extension.AbstractExtensionElement;
+import org.activiti.kickstart.bpmn20.util.EscapingStringAdapter;
 
 @XmlRootElement(name="field", namespace = "http://activiti.org/bpmn")
 @XmlType(propOrder = {"name", "stringValue", "expression"})
@@ -38,6 +40,7 @@ public class ActivitFieldExtensionElement extends AbstractExtensionElement {
     }
     
     @XmlElement(name = "string", namespace = "http://activiti.org/bpmn")
+    @XmlJavaTypeAdapter(EscapingStringAdapter.class)
     private String stringValue;
     
     public String getStringValue() {
@@ -49,6 +52,7 @@ public class ActivitFieldExtensionElement extends AbstractExtensionElement {
     }
     
     @XmlElement(name = "expression", namespace = "http://activiti.org/bpmn")
+    @XmlJavaTypeAdapter(EscapingStringAdapter.class)
     private String expression;
     
     public String getExpression() {
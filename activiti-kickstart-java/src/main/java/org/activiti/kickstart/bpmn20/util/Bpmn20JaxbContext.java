@@ -0,0 +1,340 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.ValidationEventHandler;
+
+import org.activiti.kickstart.bpmn20.diagram.UUIDGenerator;
+import org.activiti.kickstart.bpmn20.model.BaseElement;
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.Documentation;
+import org.activiti.kickstart.bpmn20.model.Expression;
+import org.activiti.kickstart.bpmn20.model.FormalExpression;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.activity.resource.HumanPerformer;
+import org.activiti.kickstart.bpmn20.model.activity.resource.PotentialOwner;
+import org.activiti.kickstart.bpmn20.model.activity.resource.ResourceAssignmentExpression;
+import org.activiti.kickstart.bpmn20.model.activity.type.ScriptTask;
+import org.activiti.kickstart.bpmn20.model.activity.type.ServiceTask;
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNDiagram;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNEdge;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNPlane;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNShape;
+import org.activiti.kickstart.bpmn20.model.connector.SequenceFlow;
+import org.activiti.kickstart.bpmn20.model.event.EndEvent;
+import org.activiti.kickstart.bpmn20.model.event.StartEvent;
+import org.activiti.kickstart.bpmn20.model.extension.ExtensionElements;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitiFormProperty;
+import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import com.sun.xml.bind.v2.model.annotation.RuntimeAnnotationReader;
+
+/**
+ * Process-wide holder of the {@link JAXBContext} for the BPMN 2.0 model.
+ *
+ * Creating the context reflects over the complete model tree, so it is built
+ * only once and shared. {@link JAXBContext} is thread-safe, but marshallers
+ * and unmarshallers are not: each thread gets its own instance, which is
+ * reused for all subsequent calls on that thread.
+ *
+ * Two bindings are available, see {@link Mode}. The KickStart subset only
+ * knows the constructs KickStart itself generates; whenever it meets anything
+ * else it hands over to the full model.
+ *
+ * @author jbarrez
+ */
+public class Bpmn20JaxbContext {
+
+	private static final Logger LOGGER = Logger.getLogger(Bpmn20JaxbContext.class.getName());
+
+	public enum Mode {
+
+		/** Binds the complete BPMN 2.0 model */
+		FULL,
+
+		/** Binds only the BPMN constructs KickStart reads and writes */
+		KICKSTART_SUBSET
+	}
+
+	/**
+	 * Classes bound by the {@link Mode#KICKSTART_SUBSET} context: exactly the elements
+	 * generated by the marshalling service and the diagram generator.
+	 */
+	public static final List<Class<?>> KICKSTART_SUBSET_CLASSES = Arrays.<Class<?>>asList(
+			Definitions.class, Process.class, Documentation.class,
+			StartEvent.class, EndEvent.class,
+			UserTask.class, ServiceTask.class, ScriptTask.class,
+			ParallelGateway.class, SequenceFlow.class,
+			HumanPerformer.class, PotentialOwner.class, ResourceAssignmentExpression.class,
+			Expression.class, FormalExpression.class,
+			ExtensionElements.class, ActivitFieldExtensionElement.class, ActivitiFormProperty.class,
+			BPMNDiagram.class, BPMNPlane.class, BPMNShape.class, BPMNEdge.class);
+
+	protected final JAXBContext jaxbContext;
+	protected final Bpmn20JaxbContext fallback;
+
+	protected final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
+	protected final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>();
+
+	protected Bpmn20JaxbContext(JAXBContext jaxbContext, Bpmn20JaxbContext fallback) {
+		this.jaxbContext = jaxbContext;
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Returns the shared context bound to the full BPMN 2.0 model.
+	 */
+	public static Bpmn20JaxbContext getInstance() {
+		return FullModelHolder.INSTANCE;
+	}
+
+	/**
+	 * Returns the shared context for the given binding mode.
+	 */
+	public static Bpmn20JaxbContext getInstance(Mode mode) {
+		if (mode == Mode.KICKSTART_SUBSET) {
+			return KickstartSubsetHolder.INSTANCE;
+		}
+		return FullModelHolder.INSTANCE;
+	}
+
+	public JAXBContext getJaxbContext() {
+		return jaxbContext;
+	}
+
+	/**
+	 * Returns the {@link Marshaller} confined to the calling thread.
+	 */
+	public Marshaller getMarshaller() {
+		Marshaller marshaller = marshallers.get();
+		if (marshaller == null) {
+			try {
+				marshaller = jaxbContext.createMarshaller();
+			} catch (JAXBException e) {
+				throw new RuntimeException("Could not create marshaller", e);
+			}
+			marshallers.set(marshaller);
+		}
+		return marshaller;
+	}
+
+	/**
+	 * Returns the {@link Unmarshaller} confined to the calling thread.
+	 */
+	public Unmarshaller getUnmarshaller() {
+		Unmarshaller unmarshaller = unmarshallers.get();
+		if (unmarshaller == null) {
+			try {
+				unmarshaller = jaxbContext.createUnmarshaller();
+				unmarshaller.setListener(new IdCompletingListener());
+			} catch (JAXBException e) {
+				throw new RuntimeException("Could not create unmarshaller", e);
+			}
+			unmarshallers.set(unmarshaller);
+		}
+		return unmarshaller;
+	}
+
+	/**
+	 * Marshals the given definitions. If this context cannot handle one of the
+	 * elements in the graph, the full model is used instead.
+	 */
+	public String marshal(Definitions definitions) throws JAXBException {
+		try {
+			StringWriter writer = new StringWriter();
+			getMarshaller().marshal(definitions, writer);
+			return writer.toString();
+		} catch (JAXBException e) {
+			if (fallback == null) {
+				throw e;
+			}
+			LOGGER.log(Level.FINE, "Definitions contain elements outside of the KickStart subset, using full model", e);
+			return fallback.marshal(definitions);
+		}
+	}
+
+	/**
+	 * Marshals the given definitions as UTF-8 to the given stream. For the KickStart
+	 * subset the document is buffered first, so nothing reaches the stream when
+	 * the full model has to take over.
+	 */
+	public void marshal(Definitions definitions, OutputStream outputStream) throws JAXBException {
+		if (fallback == null) {
+			getMarshaller().marshal(definitions, outputStream);
+			return;
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			getMarshaller().marshal(definitions, buffer);
+		} catch (JAXBException e) {
+			LOGGER.log(Level.FINE, "Definitions contain elements outside of the KickStart subset, using full model", e);
+			fallback.marshal(definitions, outputStream);
+			return;
+		}
+
+		try {
+			buffer.writeTo(outputStream);
+		} catch (IOException e) {
+			throw new JAXBException("Could not write marshalled definitions", e);
+		}
+	}
+
+	/**
+	 * Unmarshals the given BPMN 2.0 xml. If the document contains elements this
+	 * context doesn't know (eg. a process not created by KickStart), it is
+	 * parsed again with the full model, so no content is silently dropped.
+	 *
+	 * Elements get the id of the xml. Id generation is suspended while JAXB
+	 * constructs them, so no id is generated only to be overwritten: elements
+	 * that have no id in the xml get one generated after they are unmarshalled
+	 * (see {@link IdCompletingListener}), just like elements created in code.
+	 */
+	public Definitions unmarshal(byte[] bpmnXml) throws JAXBException {
+		UUIDGenerator.suspend();
+		try {
+			return unmarshalWithoutIds(bpmnXml);
+		} finally {
+			UUIDGenerator.resume();
+		}
+	}
+
+	protected Definitions unmarshalWithoutIds(byte[] bpmnXml) throws JAXBException {
+		Unmarshaller unmarshaller = getUnmarshaller();
+		if (fallback == null) {
+			return (Definitions) unmarshaller.unmarshal(new ByteArrayInputStream(bpmnXml));
+		}
+
+		UnknownContentDetector detector = new UnknownContentDetector();
+		unmarshaller.setEventHandler(detector);
+		Definitions definitions = null;
+		try {
+			definitions = (Definitions) unmarshaller.unmarshal(new ByteArrayInputStream(bpmnXml));
+		} finally {
+			unmarshaller.setEventHandler(null);
+		}
+
+		if (detector.unknownContentFound) {
+			LOGGER.fine("BPMN 2.0 xml contains elements outside of the KickStart subset, using full model");
+			return fallback.unmarshal(bpmnXml);
+		}
+		return definitions;
+	}
+
+	// Helper classes ////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Unexpected elements are recoverable errors for JAXB: they're remembered and parsing continues.
+	 */
+	protected static class UnknownContentDetector implements ValidationEventHandler {
+
+		protected boolean unknownContentFound;
+
+		public boolean handleEvent(ValidationEvent event) {
+			if (event.getSeverity() == ValidationEvent.FATAL_ERROR) {
+				return false;
+			}
+			unknownContentFound = true;
+			return true;
+		}
+
+	}
+
+	/**
+	 * Generates the ids the element constructors would have generated, for the elements
+	 * that don't have one in the xml. Called while generation is suspended, so the
+	 * {@link UUIDGenerator#getIdGenerator() id generator} is used directly.
+	 */
+	protected static class IdCompletingListener extends Unmarshaller.Listener {
+
+		public void afterUnmarshal(Object target, Object parent) {
+			if (target instanceof BaseElement) {
+				BaseElement baseElement = (BaseElement) target;
+				if (baseElement.getId() == null) {
+					baseElement.setId(generateId());
+				}
+			} else if (target instanceof BPMNPlane) {
+				BPMNPlane plane = (BPMNPlane) target;
+				if (plane.getId() == null) {
+					plane.setId(generateId());
+				}
+			} else if (target instanceof BPMNDiagram) {
+				BPMNDiagram diagram = (BPMNDiagram) target;
+				if (diagram.getId() == null) {
+					diagram.setId(generateId());
+				}
+				// The plane created by the constructor stays when the xml has none
+				if (diagram.getBPMNPlane() != null && diagram.getBPMNPlane().getId() == null) {
+					diagram.getBPMNPlane().setId(generateId());
+				}
+			}
+		}
+
+		protected String generateId() {
+			return UUIDGenerator.getIdGenerator().generateId();
+		}
+
+	}
+
+	// Lazy holders: the contexts are only built on first use, class loading guarantees thread-safety
+
+	private static class FullModelHolder {
+		static final Bpmn20JaxbContext INSTANCE = new Bpmn20JaxbContext(createJaxbContext(), null);
+
+		static JAXBContext createJaxbContext() {
+			try {
+				return JAXBContext.newInstance(Definitions.class);
+			} catch (JAXBException e) {
+				throw new RuntimeException("Could not create JAXB context for BPMN 2.0 model", e);
+			}
+		}
+	}
+
+	private static class KickstartSubsetHolder {
+		static final Bpmn20JaxbContext INSTANCE = createInstance();
+
+		static Bpmn20JaxbContext createInstance() {
+			Map<String, Object> properties = new HashMap<String, Object>();
+			properties.put(RuntimeAnnotationReader.class.getName(), new KickstartSubsetAnnotationReader(KICKSTART_SUBSET_CLASSES));
+			try {
+				JAXBContext jaxbContext = JAXBContext.newInstance(
+						KICKSTART_SUBSET_CLASSES.toArray(new Class<?>[KICKSTART_SUBSET_CLASSES.size()]), properties);
+				return new Bpmn20JaxbContext(jaxbContext, FullModelHolder.INSTANCE);
+			} catch (JAXBException e) {
+				// Only the JAXB reference implementation supports a custom annotation reader
+				LOGGER.log(Level.WARNING, "Could not create KickStart subset JAXB context, using full model", e);
+				return FullModelHolder.INSTANCE;
+			}
+		}
+	}
+
+}
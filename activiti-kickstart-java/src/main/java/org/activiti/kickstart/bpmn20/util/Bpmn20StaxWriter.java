@@ -0,0 +1,778 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.activiti.kickstart.bpmn20.model.BaseElement;
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.Documentation;
+import org.activiti.kickstart.bpmn20.model.Expression;
+import org.activiti.kickstart.bpmn20.model.FlowElement;
+import org.activiti.kickstart.bpmn20.model.FlowNode;
+import org.activiti.kickstart.bpmn20.model.FormalExpression;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.activity.Activity;
+import org.activiti.kickstart.bpmn20.model.activity.resource.ActivityResource;
+import org.activiti.kickstart.bpmn20.model.activity.resource.HumanPerformer;
+import org.activiti.kickstart.bpmn20.model.activity.resource.PotentialOwner;
+import org.activiti.kickstart.bpmn20.model.activity.resource.ResourceAssignmentExpression;
+import org.activiti.kickstart.bpmn20.model.activity.type.ScriptTask;
+import org.activiti.kickstart.bpmn20.model.activity.type.ServiceTask;
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNDiagram;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNEdge;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNPlane;
+import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNShape;
+import org.activiti.kickstart.bpmn20.model.bpmndi.dc.Bounds;
+import org.activiti.kickstart.bpmn20.model.bpmndi.dc.Point;
+import org.activiti.kickstart.bpmn20.model.bpmndi.di.DiagramElement;
+import org.activiti.kickstart.bpmn20.model.connector.SequenceFlow;
+import org.activiti.kickstart.bpmn20.model.event.Event;
+import org.activiti.kickstart.bpmn20.model.event.EndEvent;
+import org.activiti.kickstart.bpmn20.model.event.StartEvent;
+import org.activiti.kickstart.bpmn20.model.extension.AbstractExtensionElement;
+import org.activiti.kickstart.bpmn20.model.extension.ExtensionElements;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitiFormProperty;
+import org.activiti.kickstart.bpmn20.model.gateway.GatewayDirection;
+import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+
+/**
+ * Writes a {@link Definitions} graph as BPMN 2.0 xml with plain, type specific
+ * code: no reflection, no accessor dispatch and no JAXB context is involved.
+ *
+ * Only the {@link Bpmn20JaxbContext#KICKSTART_SUBSET_CLASSES} are supported, with
+ * the properties KickStart and the diagram generator use. The produced xml
+ * contains the same elements, attributes and ids as JAXB would write, only the
+ * namespace prefixes may differ. As soon as the writer meets anything else, it
+ * stops with an {@link UnsupportedContentException}: the caller is expected to
+ * buffer the output and use JAXB for the complete graph instead.
+ *
+ * A few properties KickStart never sets can't be told apart from their default
+ * through the getters of the model (eg. the process type or the user task
+ * implementation). These are never written.
+ *
+ * Documentation, scripts and mail field bodies are written through the
+ * {@link XmlTextWriter}, as CDATA when they contain markup.
+ *
+ * In {@link #isCompact() compact} mode the writer leaves out what the engine
+ * doesn't need: empty documentation, the ids of elements nothing can refer to
+ * (documentation, resource roles and their expressions) and the declarations
+ * of namespaces that aren't used in the document.
+ *
+ * The element writers that take plain values (namespaces, ids, fields, form
+ * properties, scripts) are also used by the StaxMarshallingServiceImpl, which
+ * streams a workflow without building the graph: both paths share one
+ * serialization of these elements.
+ *
+ * @author jbarrez
+ */
+public class Bpmn20StaxWriter {
+
+	public static final String BPMN_NAMESPACE = "http://www.omg.org/spec/BPMN/20100524/MODEL";
+	public static final String BPMNDI_NAMESPACE = "http://www.omg.org/spec/BPMN/20100524/DI";
+	public static final String DC_NAMESPACE = "http://www.omg.org/spec/DD/20100524/DC";
+	public static final String DI_NAMESPACE = "http://www.omg.org/spec/DD/20100524/DI";
+	public static final String ACTIVITI_NAMESPACE = "http://activiti.org/bpmn";
+
+	public static final String ACTIVITI_PREFIX = "activiti";
+	public static final String BPMNDI_PREFIX = "bpmndi";
+	public static final String DC_PREFIX = "dc";
+	public static final String DI_PREFIX = "di";
+
+	public static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
+
+	protected static final BigInteger DEFAULT_QUANTITY = BigInteger.ONE;
+
+	protected XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+	protected boolean compact;
+
+	public Bpmn20StaxWriter() {
+	}
+
+	public Bpmn20StaxWriter(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * Writes the given definitions as UTF-8 to the stream, which is not closed.
+	 *
+	 * @throws UnsupportedContentException when the graph contains anything outside of
+	 *         the KickStart subset. Part of the document may have been written already.
+	 */
+	public void write(Definitions definitions, OutputStream outputStream) throws XMLStreamException {
+		try {
+			outputStream.write(XML_DECLARATION.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new XMLStreamException("Could not write xml declaration", e);
+		}
+		XMLStreamWriter xtw = xmlOutputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+		writeDefinitions(xtw, definitions);
+		xtw.close(); // flushes, but doesn't close the underlying stream
+	}
+
+	// Root and process ////////////////////////////////////////////////////////////////////
+
+	protected void writeDefinitions(XMLStreamWriter xtw, Definitions definitions) throws XMLStreamException {
+		requireEmpty(definitions.getExtension(), "definitions extension");
+
+		// Same callback as JAXB invokes, it adds the namespaces to the other attributes
+		definitions.beforeMarshal(null);
+
+		writeDefinitionsStart(xtw, !compact || !definitions.getDiagram().isEmpty(),
+				!compact || containsDiagramElements(definitions));
+		writeAttribute(xtw, "id", definitions.getId());
+		writeAttribute(xtw, "name", definitions.getName());
+		writeAttribute(xtw, "targetNamespace", definitions.getTargetNamespace());
+		writeAttribute(xtw, "expressionLanguage", definitions.getExpressionLanguage());
+		writeAttribute(xtw, "typeLanguage", definitions.getTypeLanguage());
+		writeAttribute(xtw, "exporter", definitions.getExporter());
+		writeAttribute(xtw, "exporterVersion", definitions.getExporterVersion());
+		writeOtherAttributes(xtw, definitions.getOtherAttributes());
+
+		for (BaseElement rootElement : definitions.getRootElement()) {
+			if (rootElement.getClass() != Process.class) {
+				throw unsupported(rootElement);
+			}
+			writeProcess(xtw, (Process) rootElement);
+		}
+
+		for (BPMNDiagram diagram : definitions.getDiagram()) {
+			writeDiagram(xtw, diagram);
+		}
+
+		xtw.writeEndElement(); // definitions
+		xtw.writeEndDocument();
+	}
+
+	protected void writeProcess(XMLStreamWriter xtw, Process process) throws XMLStreamException {
+		requireEmpty(process.getSupportedInterfaceRef(), "process supportedInterfaceRef");
+		requireNull(process.getIoSpecification(), "process ioSpecification");
+		requireEmpty(process.getIoBinding(), "process ioBinding");
+		requireEmpty(process.getLaneSet(), "process laneSet");
+		requireEmpty(process.getArtifact(), "process artifact");
+		requireEmpty(process.getSupports(), "process supports");
+		requireNull(process.getDefinitionalCollaborationRef(), "process definitionalCollaborationRef");
+		if (process.isIsClosed()) {
+			throw new UnsupportedContentException("process isClosed");
+		}
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "process");
+		writeBaseElementAttributes(xtw, process);
+		writeEscapedAttribute(xtw, "name", process.getName());
+		xtw.writeAttribute("isExecutable", String.valueOf(process.isExecutable()));
+		writeBaseElementContent(xtw, process);
+
+		for (FlowElement flowElement : process.getFlowElement()) {
+			writeFlowElement(xtw, flowElement);
+		}
+
+		xtw.writeEndElement(); // process
+	}
+
+	/**
+	 * Dispatches on the exact class: a subclass of a supported type may have
+	 * properties this writer doesn't know about.
+	 */
+	protected void writeFlowElement(XMLStreamWriter xtw, FlowElement flowElement) throws XMLStreamException {
+		Class<?> type = flowElement.getClass();
+		if (type == SequenceFlow.class) {
+			writeSequenceFlow(xtw, (SequenceFlow) flowElement);
+		} else if (type == UserTask.class) {
+			writeUserTask(xtw, (UserTask) flowElement);
+		} else if (type == ServiceTask.class) {
+			writeServiceTask(xtw, (ServiceTask) flowElement);
+		} else if (type == ScriptTask.class) {
+			writeScriptTask(xtw, (ScriptTask) flowElement);
+		} else if (type == ParallelGateway.class) {
+			writeParallelGateway(xtw, (ParallelGateway) flowElement);
+		} else if (type == StartEvent.class) {
+			writeStartEvent(xtw, (StartEvent) flowElement);
+		} else if (type == EndEvent.class) {
+			writeEndEvent(xtw, (EndEvent) flowElement);
+		} else {
+			throw unsupported(flowElement);
+		}
+	}
+
+	// Flow elements ////////////////////////////////////////////////////////////////////
+
+	protected void writeStartEvent(XMLStreamWriter xtw, StartEvent startEvent) throws XMLStreamException {
+		requireNoEventDefinitions(startEvent);
+		if (startEvent.isParallelMultiple() || startEvent.isIsInterrupting()) {
+			throw new UnsupportedContentException("start event parallelMultiple or isInterrupting");
+		}
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "startEvent");
+		writeFlowElementAttributes(xtw, startEvent);
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "initiator", startEvent.getInitiator());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "formKey", startEvent.getFormKey());
+		writeFlowNodeContent(xtw, startEvent);
+		xtw.writeEndElement();
+	}
+
+	protected void writeEndEvent(XMLStreamWriter xtw, EndEvent endEvent) throws XMLStreamException {
+		requireNoEventDefinitions(endEvent);
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "endEvent");
+		writeFlowElementAttributes(xtw, endEvent);
+		writeFlowNodeContent(xtw, endEvent);
+		xtw.writeEndElement();
+	}
+
+	protected void writeParallelGateway(XMLStreamWriter xtw, ParallelGateway parallelGateway) throws XMLStreamException {
+		if (parallelGateway.getGatewayDirection() != GatewayDirection.UNSPECIFIED) {
+			throw new UnsupportedContentException("gateway direction");
+		}
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "parallelGateway");
+		writeFlowElementAttributes(xtw, parallelGateway);
+		writeFlowNodeContent(xtw, parallelGateway);
+		xtw.writeEndElement();
+	}
+
+	protected void writeSequenceFlow(XMLStreamWriter xtw, SequenceFlow sequenceFlow) throws XMLStreamException {
+		requireNull(sequenceFlow.getConditionExpression(), "sequence flow conditionExpression");
+		if (!sequenceFlow.isIsImmediate()) {
+			throw new UnsupportedContentException("sequence flow isImmediate");
+		}
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "sequenceFlow");
+		writeFlowElementAttributes(xtw, sequenceFlow);
+		writeReference(xtw, "sourceRef", sequenceFlow.getSourceRef());
+		writeReference(xtw, "targetRef", sequenceFlow.getTargetRef());
+		writeFlowElementContent(xtw, sequenceFlow);
+		xtw.writeEndElement();
+	}
+
+	protected void writeUserTask(XMLStreamWriter xtw, UserTask userTask) throws XMLStreamException {
+		requireEmpty(userTask.getRendering(), "user task rendering");
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "userTask");
+		writeActivityAttributes(xtw, userTask);
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "formKey", userTask.getFormKey());
+		writeActivityContent(xtw, userTask);
+		xtw.writeEndElement();
+	}
+
+	protected void writeServiceTask(XMLStreamWriter xtw, ServiceTask serviceTask) throws XMLStreamException {
+		requireNull(serviceTask.getImplementation(), "service task implementation");
+		requireNull(serviceTask.getOperationRef(), "service task operationRef");
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "serviceTask");
+		writeActivityAttributes(xtw, serviceTask);
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "delegateExpression", serviceTask.getDelegateExpression());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "class", serviceTask.getClassName());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "expression", serviceTask.getExpression());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "type", serviceTask.getType());
+		writeActivityContent(xtw, serviceTask);
+		xtw.writeEndElement();
+	}
+
+	protected void writeScriptTask(XMLStreamWriter xtw, ScriptTask scriptTask) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "scriptTask");
+		writeActivityAttributes(xtw, scriptTask);
+		writeAttribute(xtw, "scriptFormat", scriptTask.getScriptFormat());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "resultVariableName", scriptTask.getResultVariableName());
+		writeActivityContent(xtw, scriptTask);
+		writeScript(xtw, scriptTask.getScript());
+		xtw.writeEndElement();
+	}
+
+	// Properties shared by the flow elements ////////////////////////////////////////////
+
+	protected void writeFlowElementAttributes(XMLStreamWriter xtw, FlowElement flowElement) throws XMLStreamException {
+		requireNull(flowElement.getAuditing(), "auditing");
+		requireNull(flowElement.getMonitoring(), "monitoring");
+		requireUnset(flowElement.isSetCategoryValue(), "categoryValue");
+
+		writeBaseElementAttributes(xtw, flowElement);
+		writeEscapedAttribute(xtw, "name", flowElement.getName());
+	}
+
+	protected void writeFlowElementContent(XMLStreamWriter xtw, FlowElement flowElement) throws XMLStreamException {
+		writeBaseElementContent(xtw, flowElement);
+	}
+
+	protected void writeFlowNodeContent(XMLStreamWriter xtw, FlowNode flowNode) throws XMLStreamException {
+		writeFlowElementContent(xtw, flowNode);
+
+		// Same callback as JAXB invokes, it fills the sequence flow references
+		flowNode.beforeMarshal(null);
+		if (flowNode.isSet_incomingSequenceFlows()) {
+			for (SequenceFlow incoming : flowNode.get_incomingSequenceFlows()) {
+				writeElementReference(xtw, "incoming", incoming);
+			}
+		}
+		if (flowNode.isSet_outgoingSequenceFlows()) {
+			for (SequenceFlow outgoing : flowNode.get_outgoingSequenceFlows()) {
+				writeElementReference(xtw, "outgoing", outgoing);
+			}
+		}
+	}
+
+	protected void writeActivityAttributes(XMLStreamWriter xtw, Activity activity) throws XMLStreamException {
+		requireNull(activity.getIoSpecification(), "activity ioSpecification");
+		requireUnset(activity.isSetProperty(), "activity property");
+		requireUnset(activity.isSetDataInputAssociation(), "activity dataInputAssociation");
+		requireUnset(activity.isSetDataOutputAssociation(), "activity dataOutputAssociation");
+		requireNull(activity.getLoopCharacteristics(), "activity loopCharacteristics");
+		requireUnset(activity.isSetAdditionalProperties(), "activity additionalProperties");
+		requireNull(activity.getDefault(), "activity default");
+		if (activity.isForCompensation()
+				|| !DEFAULT_QUANTITY.equals(activity.getStartQuantity())
+				|| !DEFAULT_QUANTITY.equals(activity.getCompletionQuantity())) {
+			throw new UnsupportedContentException("activity isForCompensation or quantities");
+		}
+
+		writeFlowElementAttributes(xtw, activity);
+	}
+
+	protected void writeActivityContent(XMLStreamWriter xtw, Activity activity) throws XMLStreamException {
+		writeFlowNodeContent(xtw, activity);
+		if (!activity.isSetActivityResource()) {
+			return;
+		}
+
+		for (ActivityResource activityResource : activity.getActivityResource()) {
+			if (activityResource.getClass() == HumanPerformer.class) {
+				writeActivityResource(xtw, "humanPerformer", activityResource);
+			} else if (activityResource.getClass() == PotentialOwner.class) {
+				writeActivityResource(xtw, "potentialOwner", activityResource);
+			} else {
+				throw unsupported(activityResource);
+			}
+		}
+	}
+
+	protected void writeActivityResource(XMLStreamWriter xtw, String elementName, ActivityResource activityResource) throws XMLStreamException {
+		requireNull(activityResource.getResourceRef(), "resourceRef");
+		requireEmpty(activityResource.getResourceParameterBinding(), "resourceParameterBinding");
+
+		xtw.writeStartElement(BPMN_NAMESPACE, elementName);
+		writeBaseElementAttributes(xtw, activityResource);
+		writeBaseElementContent(xtw, activityResource);
+
+		ResourceAssignmentExpression assignmentExpression = activityResource.getResourceAssignmentExpression();
+		if (assignmentExpression != null) {
+			xtw.writeStartElement(BPMN_NAMESPACE, "resourceAssignmentExpression");
+			writeBaseElementAttributes(xtw, assignmentExpression);
+			writeBaseElementContent(xtw, assignmentExpression);
+			if (assignmentExpression.getExpression() != null) {
+				writeExpression(xtw, assignmentExpression.getExpression());
+			}
+			xtw.writeEndElement(); // resourceAssignmentExpression
+		}
+
+		xtw.writeEndElement();
+	}
+
+	protected void writeExpression(XMLStreamWriter xtw, Expression expression) throws XMLStreamException {
+		if (expression.getClass() == FormalExpression.class) {
+			FormalExpression formalExpression = (FormalExpression) expression;
+			xtw.writeStartElement(BPMN_NAMESPACE, "formalExpression");
+			writeBaseElementAttributes(xtw, formalExpression);
+			writeEscapedAttribute(xtw, "language", formalExpression.getLanguage());
+			writeEscapedAttribute(xtw, "evaluatesToTypeRef", formalExpression.getEvaluatesToTypeRef());
+		} else if (expression.getClass() == Expression.class) {
+			xtw.writeStartElement(BPMN_NAMESPACE, "expression");
+			writeBaseElementAttributes(xtw, expression);
+		} else {
+			throw unsupported(expression);
+		}
+
+		writeBaseElementContent(xtw, expression);
+		for (String content : expression.getContent()) {
+			writeEscapedCharacters(xtw, content);
+		}
+		xtw.writeEndElement();
+	}
+
+	// Base element: id, documentation and extension elements ////////////////////////////
+
+	protected void writeBaseElementAttributes(XMLStreamWriter xtw, BaseElement baseElement) throws XMLStreamException {
+		requireUnset(baseElement.isSetAny(), "any content of " + baseElement.getId());
+
+		writeId(xtw, baseElement.getId(), !isUnreferenced(baseElement));
+		if (baseElement.isSetOtherAttributes()) {
+			writeOtherAttributes(xtw, baseElement.getOtherAttributes());
+		}
+	}
+
+	/**
+	 * Only the non-allocating isSet checks are used on the model, writing leaves the elements as lean as they are.
+	 */
+	protected void writeBaseElementContent(XMLStreamWriter xtw, BaseElement baseElement) throws XMLStreamException {
+		if (baseElement.isSetDocumentation()) {
+			for (Documentation documentation : baseElement.getDocumentation()) {
+				if (!compact || !isEmpty(documentation)) {
+					writeDocumentation(xtw, documentation);
+				}
+			}
+		}
+		if (baseElement.getExtensionElements() != null) {
+			writeExtensionElements(xtw, baseElement.getExtensionElements());
+		}
+	}
+
+	protected void writeDocumentation(XMLStreamWriter xtw, Documentation documentation) throws XMLStreamException {
+		if (documentation.getClass() != Documentation.class) {
+			throw unsupported(documentation);
+		}
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "documentation");
+		writeBaseElementAttributes(xtw, documentation);
+		writeBaseElementContent(xtw, documentation);
+		XmlTextWriter.writeFreeText(xtw, documentation.getText());
+		xtw.writeEndElement();
+	}
+
+	protected void writeExtensionElements(XMLStreamWriter xtw, ExtensionElements extensionElements) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "extensionElements");
+		for (AbstractExtensionElement extensionElement : extensionElements.getAny()) {
+			if (extensionElement.getClass() == ActivitFieldExtensionElement.class) {
+				writeField(xtw, (ActivitFieldExtensionElement) extensionElement);
+			} else if (extensionElement.getClass() == ActivitiFormProperty.class) {
+				writeFormProperty(xtw, (ActivitiFormProperty) extensionElement);
+			} else {
+				throw new UnsupportedContentException("extension element " + extensionElement.getClass().getName());
+			}
+		}
+		xtw.writeEndElement();
+	}
+
+	protected void writeField(XMLStreamWriter xtw, ActivitFieldExtensionElement field) throws XMLStreamException {
+		writeField(xtw, field.getName(), field.getStringValue(), field.getExpression());
+	}
+
+	protected void writeFormProperty(XMLStreamWriter xtw, ActivitiFormProperty formProperty) throws XMLStreamException {
+		writeFormProperty(xtw, formProperty.getId(), formProperty.getName(), formProperty.getType(), formProperty.getRequired());
+	}
+
+	// Diagram interchange ////////////////////////////////////////////////////////////////
+
+	protected void writeDiagram(XMLStreamWriter xtw, BPMNDiagram diagram) throws XMLStreamException {
+		if (diagram.getClass() != BPMNDiagram.class) {
+			throw new UnsupportedContentException("diagram " + diagram.getClass().getName());
+		}
+		requireEmpty(diagram.getBPMNLabelStyle(), "BPMNLabelStyle");
+
+		xtw.writeStartElement(BPMNDI_NAMESPACE, "BPMNDiagram");
+		writeAttribute(xtw, "name", diagram.getName());
+		writeAttribute(xtw, "documentation", diagram.getDocumentation());
+		if (diagram.getResolution() != null) {
+			xtw.writeAttribute("resolution", printDouble(diagram.getResolution()));
+		}
+		writeAttribute(xtw, "id", diagram.getId());
+
+		BPMNPlane plane = diagram.getBPMNPlane();
+		if (plane != null) {
+			xtw.writeStartElement(BPMNDI_NAMESPACE, "BPMNPlane");
+			writeDiagramElementAttributes(xtw, plane);
+			writeReference(xtw, "bpmnElement", plane.getBpmnElement());
+			for (DiagramElement diagramElement : plane.getDiagramElement()) {
+				if (diagramElement.getClass() == BPMNShape.class) {
+					writeShape(xtw, (BPMNShape) diagramElement);
+				} else if (diagramElement.getClass() == BPMNEdge.class) {
+					writeEdge(xtw, (BPMNEdge) diagramElement);
+				} else {
+					throw new UnsupportedContentException("diagram element " + diagramElement.getClass().getName());
+				}
+			}
+			xtw.writeEndElement(); // BPMNPlane
+		}
+
+		xtw.writeEndElement(); // BPMNDiagram
+	}
+
+	protected void writeShape(XMLStreamWriter xtw, BPMNShape shape) throws XMLStreamException {
+		requireNull(shape.getBPMNLabel(), "shape BPMNLabel");
+		requireNull(shape.getParticipantBandKind(), "shape participantBandKind");
+		requireNull(shape.getChoreographyActivityShape(), "shape choreographyActivityShape");
+
+		xtw.writeStartElement(BPMNDI_NAMESPACE, "BPMNShape");
+		writeDiagramElementAttributes(xtw, shape);
+		writeReference(xtw, "bpmnElement", shape.getBpmnElement());
+		writeAttribute(xtw, "isHorizontal", shape.isIsHorizontal());
+		writeAttribute(xtw, "isExpanded", shape.isIsExpanded());
+		writeAttribute(xtw, "isMarkerVisible", shape.isIsMarkerVisible());
+		writeAttribute(xtw, "isMessageVisible", shape.isIsMessageVisible());
+
+		Bounds bounds = shape.getBounds();
+		if (bounds != null) {
+			xtw.writeEmptyElement(DC_NAMESPACE, "Bounds");
+			xtw.writeAttribute("x", printDouble(bounds.getX()));
+			xtw.writeAttribute("y", printDouble(bounds.getY()));
+			xtw.writeAttribute("width", printDouble(bounds.getWidth()));
+			xtw.writeAttribute("height", printDouble(bounds.getHeight()));
+		}
+
+		xtw.writeEndElement();
+	}
+
+	protected void writeEdge(XMLStreamWriter xtw, BPMNEdge edge) throws XMLStreamException {
+		requireNull(edge.getBPMNLabel(), "edge BPMNLabel");
+		requireNull(edge.getMessageVisibleKind(), "edge messageVisibleKind");
+
+		xtw.writeStartElement(BPMNDI_NAMESPACE, "BPMNEdge");
+		writeDiagramElementAttributes(xtw, edge);
+		writeReference(xtw, "bpmnElement", edge.getBpmnElement());
+		if (edge.getSourceElement() != null) {
+			writeAttribute(xtw, "sourceElement", edge.getSourceElement().getId());
+		}
+		if (edge.getTargetElement() != null) {
+			writeAttribute(xtw, "targetElement", edge.getTargetElement().getId());
+		}
+
+		for (Point waypoint : edge.getWaypoint()) {
+			xtw.writeEmptyElement(DI_NAMESPACE, "waypoint");
+			xtw.writeAttribute("x", printDouble(waypoint.getX()));
+			xtw.writeAttribute("y", printDouble(waypoint.getY()));
+		}
+
+		xtw.writeEndElement();
+	}
+
+	protected void writeDiagramElementAttributes(XMLStreamWriter xtw, DiagramElement diagramElement) throws XMLStreamException {
+		requireNull(diagramElement.getExtension(), "diagram element extension");
+
+		writeAttribute(xtw, "id", diagramElement.getId());
+		writeOtherAttributes(xtw, diagramElement.getOtherAttributes());
+	}
+
+	// Element writers shared with the StaxMarshallingServiceImpl ////////////////////////
+
+	/**
+	 * Starts the definitions element and declares the namespaces. The bpmndi and dc/di
+	 * namespaces are only declared when asked for, so compact documents leave them out.
+	 */
+	public void writeDefinitionsStart(XMLStreamWriter xtw, boolean diagramNamespace, boolean diagramElementNamespaces) throws XMLStreamException {
+		xtw.setDefaultNamespace(BPMN_NAMESPACE);
+		xtw.setPrefix(ACTIVITI_PREFIX, ACTIVITI_NAMESPACE);
+		xtw.setPrefix(BPMNDI_PREFIX, BPMNDI_NAMESPACE);
+		xtw.setPrefix(DC_PREFIX, DC_NAMESPACE);
+		xtw.setPrefix(DI_PREFIX, DI_NAMESPACE);
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "definitions");
+		xtw.writeDefaultNamespace(BPMN_NAMESPACE);
+		xtw.writeNamespace(ACTIVITI_PREFIX, ACTIVITI_NAMESPACE);
+		if (diagramNamespace) {
+			xtw.writeNamespace(BPMNDI_PREFIX, BPMNDI_NAMESPACE);
+		}
+		if (diagramElementNamespaces) {
+			xtw.writeNamespace(DC_PREFIX, DC_NAMESPACE);
+			xtw.writeNamespace(DI_PREFIX, DI_NAMESPACE);
+		}
+	}
+
+	/**
+	 * Ids of elements nothing refers to are left out by the compact profile.
+	 */
+	public void writeId(XMLStreamWriter xtw, String id, boolean referenced) throws XMLStreamException {
+		if (!compact || referenced) {
+			writeAttribute(xtw, "id", id);
+		}
+	}
+
+	public void writeField(XMLStreamWriter xtw, String name, String stringValue, String expression) throws XMLStreamException {
+		xtw.writeStartElement(ACTIVITI_NAMESPACE, "field");
+		writeAttribute(xtw, "name", name);
+		if (stringValue != null) {
+			xtw.writeStartElement(ACTIVITI_NAMESPACE, "string");
+			XmlTextWriter.writeFreeText(xtw, stringValue);
+			xtw.writeEndElement();
+		}
+		if (expression != null) {
+			xtw.writeStartElement(ACTIVITI_NAMESPACE, "expression");
+			XmlTextWriter.writeFreeText(xtw, expression);
+			xtw.writeEndElement();
+		}
+		xtw.writeEndElement();
+	}
+
+	public void writeFormProperty(XMLStreamWriter xtw, String id, String name, String type, String required) throws XMLStreamException {
+		xtw.writeEmptyElement(ACTIVITI_NAMESPACE, "formProperty");
+		writeAttribute(xtw, "id", id);
+		writeAttribute(xtw, "name", name);
+		writeAttribute(xtw, "type", type);
+		writeAttribute(xtw, "required", required);
+	}
+
+	public void writeScript(XMLStreamWriter xtw, String script) throws XMLStreamException {
+		if (script != null) {
+			xtw.writeStartElement(BPMN_NAMESPACE, "script");
+			XmlTextWriter.writeFreeText(xtw, script);
+			xtw.writeEndElement();
+		}
+	}
+
+	// Helper methods ////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Elements of the KickStart subset that can't be the target of an id reference.
+	 */
+	protected boolean isUnreferenced(BaseElement baseElement) {
+		return baseElement instanceof Documentation
+				|| baseElement instanceof ActivityResource
+				|| baseElement instanceof ResourceAssignmentExpression
+				|| baseElement instanceof Expression;
+	}
+
+	protected boolean isEmpty(Documentation documentation) {
+		return (documentation.getText() == null || documentation.getText().length() == 0)
+				&& !documentation.isSetDocumentation()
+				&& documentation.getExtensionElements() == null
+				&& !documentation.isSetOtherAttributes();
+	}
+
+	protected boolean containsDiagramElements(Definitions definitions) {
+		for (BPMNDiagram diagram : definitions.getDiagram()) {
+			if (diagram.getBPMNPlane() != null && !diagram.getBPMNPlane().getDiagramElement().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void writeAttribute(XMLStreamWriter xtw, String name, String value) throws XMLStreamException {
+		if (value != null) {
+			xtw.writeAttribute(name, value);
+		}
+	}
+
+	protected void writeAttribute(XMLStreamWriter xtw, String name, Boolean value) throws XMLStreamException {
+		if (value != null) {
+			xtw.writeAttribute(name, value.toString());
+		}
+	}
+
+	public void writeAttribute(XMLStreamWriter xtw, String namespace, String name, String value) throws XMLStreamException {
+		if (value != null) {
+			xtw.writeAttribute(namespace, name, value);
+		}
+	}
+
+	/**
+	 * For the properties that go through the {@link EscapingStringAdapter} in the model.
+	 */
+	public void writeEscapedAttribute(XMLStreamWriter xtw, String name, String value) throws XMLStreamException {
+		if (value != null) {
+			xtw.writeAttribute(name, EscapingStringAdapter.escapeCharacters(value));
+		}
+	}
+
+	protected void writeEscapedCharacters(XMLStreamWriter xtw, String text) throws XMLStreamException {
+		XmlTextWriter.writeText(xtw, text);
+	}
+
+	protected void writeOtherAttributes(XMLStreamWriter xtw, Map<QName, String> otherAttributes) throws XMLStreamException {
+		for (Map.Entry<QName, String> attribute : otherAttributes.entrySet()) {
+			QName name = attribute.getKey();
+			if (name.getNamespaceURI() == null || name.getNamespaceURI().length() == 0) {
+				xtw.writeAttribute(name.getLocalPart(), attribute.getValue());
+			} else {
+				xtw.writeAttribute(name.getNamespaceURI(), name.getLocalPart(), attribute.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Id references are written as the id of the referenced element, like JAXB does for @XmlIDREF.
+	 */
+	protected void writeReference(XMLStreamWriter xtw, String name, BaseElement element) throws XMLStreamException {
+		if (element != null) {
+			writeAttribute(xtw, name, element.getId());
+		}
+	}
+
+	protected void writeElementReference(XMLStreamWriter xtw, String elementName, BaseElement element) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, elementName);
+		xtw.writeCharacters(element.getId());
+		xtw.writeEndElement();
+	}
+
+	/**
+	 * Same lexical form as JAXB uses for xs:double.
+	 */
+	protected String printDouble(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (value == Double.POSITIVE_INFINITY) {
+			return "INF";
+		} else if (value == Double.NEGATIVE_INFINITY) {
+			return "-INF";
+		}
+		return String.valueOf(value);
+	}
+
+	protected void requireNoEventDefinitions(Event event) {
+		requireEmpty(event.getEventDefinition(), "event definitions");
+		requireNull(event.getEventDefinitionRef(), "eventDefinitionRef");
+	}
+
+	protected void requireNull(Object value, String description) {
+		if (value != null) {
+			throw new UnsupportedContentException(description);
+		}
+	}
+
+	protected void requireUnset(boolean set, String description) {
+		if (set) {
+			throw new UnsupportedContentException(description);
+		}
+	}
+
+	protected void requireEmpty(Collection<?> values, String description) {
+		if (values != null && !values.isEmpty()) {
+			throw new UnsupportedContentException(description);
+		}
+	}
+
+	protected UnsupportedContentException unsupported(BaseElement element) {
+		return new UnsupportedContentException(element.getClass().getName() + " '" + element.getId() + "'");
+	}
+
+	// Getters and Setters ////////////////////////////////////////////////////////////////
+
+	public boolean isCompact() {
+		return compact;
+	}
+
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * Thrown when the definitions contain something this writer can't produce.
+	 */
+	public static class UnsupportedContentException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedContentException(String content) {
+			super("Not supported by the streaming writer: " + content);
+		}
+
+	}
+
+}
@@ -1,7 +1,5 @@
 package org.activiti.kickstart.bpmn20.util;
 
-import java.util.HashSet;
-
 import javax.xml.bind.annotation.adapters.XmlAdapter;
 
 /**
@@ -13,7 +11,9 @@ import javax.xml.bind.annotation.adapters.XmlAdapter;
 public class EscapingStringAdapter extends XmlAdapter<String, String> {
 
 //	public static final char substitute = '\uFFFD';
-	private static final HashSet<Character> illegalChars;
+	
+	/** Bit c is set when the control character c is not allowed in xml */
+	private static final long illegalControlChars;
 
 	static {
 		final String escapeString = "\u0000\u0001\u0002\u0003\u0004\u0005"
@@ -21,40 +21,67 @@ public class EscapingStringAdapter extends XmlAdapter<String, String> {
 				+ "\u0013\u0014\u0015\u0016\u0017\u0018\u0019\u001A\u001B\u001C"
 				+ "\u001D\u001E\u001F\uFFFE\uFFFF";
 
-		illegalChars = new HashSet<Character>();
+		long mask = 0L;
 		for (int i = 0; i < escapeString.length(); i++) {
-			illegalChars.add(escapeString.charAt(i));
+			char c = escapeString.charAt(i);
+			if (c < 64) {
+				mask |= 1L << c;
+			}
 		}
+		illegalControlChars = mask;
 	}
 
-	private boolean isIllegal(char c) {
-		return illegalChars.contains(c);
+	/**
+	 * Besides the control characters, only the non-characters \uFFFE and \uFFFF are illegal.
+	 */
+	public static boolean isIllegal(char c) {
+		if (c < 64) {
+			return (illegalControlChars & (1L << c)) != 0;
+		}
+		return c >= '\uFFFE';
+	}
+
+	/**
+	 * Returns the index of the first illegal character in the given string, or -1.
+	 */
+	public static int indexOfIllegalCharacter(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (isIllegal(string.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	/**
 	 * Deletes all illegal characters in the given string. If no illegal characters were
-	 * found, no copy is made and the given string is returned.
+	 * found, no copy is made and the given string is returned. Otherwise the legal 
+	 * characters are copied in a single pass into one new array.
 	 * 
 	 * @param string
 	 * @return
 	 */
-	private String escapeCharacters(String string) {
+	public static String escapeCharacters(String string) {
 		if(string == null) {
 			return string;
 		}
 		
-		StringBuffer copyBuffer = null;
-		boolean copied = false;
-		for (int i = 0; i < string.length(); i++) {
-			if (isIllegal(string.charAt(i))) {
-				if (!copied) {
-					copyBuffer = new StringBuffer(string);
-					copied = true;
-				}
-				copyBuffer.deleteCharAt(i);
+		int firstIllegal = indexOfIllegalCharacter(string);
+		if (firstIllegal == -1) {
+			return string;
+		}
+		
+		int length = string.length();
+		char[] copy = new char[length - 1];
+		string.getChars(0, firstIllegal, copy, 0);
+		int copyLength = firstIllegal;
+		for (int i = firstIllegal + 1; i < length; i++) {
+			char c = string.charAt(i);
+			if (!isIllegal(c)) {
+				copy[copyLength++] = c;
 			}
 		}
-		return copied ? copyBuffer.toString() : string;
+		return new String(copy, 0, copyLength);
 	}
 
 	/*
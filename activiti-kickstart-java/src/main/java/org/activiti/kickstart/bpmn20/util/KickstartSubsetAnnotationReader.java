@@ -0,0 +1,168 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlElementRefs;
+import javax.xml.bind.annotation.XmlSeeAlso;
+
+import com.sun.xml.bind.v2.model.annotation.Locatable;
+import com.sun.xml.bind.v2.model.annotation.RuntimeAnnotationReader;
+import com.sun.xml.bind.v2.model.annotation.RuntimeInlineAnnotationReader;
+import com.sun.xml.bind.v2.model.core.ErrorHandler;
+
+/**
+ * JAXB RI annotation reader that restricts the polymorphic expansion of the
+ * BPMN 2.0 model to a given set of classes.
+ *
+ * The model declares every BPMN construct through {@link XmlSeeAlso} and
+ * {@link XmlElementRefs}, which drags choreographies, conversations, the
+ * Signavio extensions etc. into any context created for {@code Definitions}.
+ * This reader hides all classes outside the allowed set from those two
+ * annotations; everything else is read as-is from the classes.
+ *
+ * @author jbarrez
+ */
+public class KickstartSubsetAnnotationReader implements RuntimeAnnotationReader {
+
+	protected final RuntimeAnnotationReader delegate = new RuntimeInlineAnnotationReader();
+	protected final Set<Class<?>> allowedClasses;
+
+	public KickstartSubsetAnnotationReader(Collection<Class<?>> allowedClasses) {
+		this.allowedClasses = new HashSet<Class<?>>(allowedClasses);
+	}
+
+	public Type[] getClassArrayValue(Annotation annotation, String name) {
+		Type[] value = delegate.getClassArrayValue(annotation, name);
+		if (annotation instanceof XmlSeeAlso) {
+			List<Type> filtered = new ArrayList<Type>(value.length);
+			for (Type type : value) {
+				if (allowedClasses.contains(type)) {
+					filtered.add(type);
+				}
+			}
+			return filtered.toArray(new Type[filtered.size()]);
+		}
+		return value;
+	}
+
+	public <A extends Annotation> A getFieldAnnotation(Class<A> annotationType, Field field, Locatable srcPos) {
+		A annotation = delegate.getFieldAnnotation(annotationType, field, srcPos);
+		if (annotation instanceof XmlElementRefs) {
+			return annotationType.cast(filter((XmlElementRefs) annotation));
+		}
+		return annotation;
+	}
+
+	protected XmlElementRefs filter(final XmlElementRefs elementRefs) {
+		final List<XmlElementRef> filtered = new ArrayList<XmlElementRef>();
+		for (XmlElementRef elementRef : elementRefs.value()) {
+			if (allowedClasses.contains(elementRef.type())) {
+				filtered.add(elementRef);
+			}
+		}
+
+		// Nothing left or nothing removed: the original annotation is kept, an empty
+		// reference property is not something JAXB handles well
+		if (filtered.isEmpty() || filtered.size() == elementRefs.value().length) {
+			return elementRefs;
+		}
+
+		// The proxy must stay Locatable, JAXB uses the annotation as source position in error reports
+		return (XmlElementRefs) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { XmlElementRefs.class, Locatable.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("value".equals(method.getName()) && method.getDeclaringClass() == XmlElementRefs.class) {
+							return filtered.toArray(new XmlElementRef[filtered.size()]);
+						}
+						try {
+							return method.invoke(elementRefs, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	// Plain delegation ////////////////////////////////////////////////////////////////////
+
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		delegate.setErrorHandler(errorHandler);
+	}
+
+	public boolean hasFieldAnnotation(Class<? extends Annotation> annotationType, Field field) {
+		return delegate.hasFieldAnnotation(annotationType, field);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean hasClassAnnotation(Class clazz, Class<? extends Annotation> annotationType) {
+		return delegate.hasClassAnnotation(clazz, annotationType);
+	}
+
+	public Annotation[] getAllFieldAnnotations(Field field, Locatable srcPos) {
+		return delegate.getAllFieldAnnotations(field, srcPos);
+	}
+
+	public <A extends Annotation> A getMethodAnnotation(Class<A> annotation, Method getter, Method setter, Locatable srcpos) {
+		return delegate.getMethodAnnotation(annotation, getter, setter, srcpos);
+	}
+
+	public boolean hasMethodAnnotation(Class<? extends Annotation> annotation, String propertyName, Method getter, Method setter, Locatable srcPos) {
+		return delegate.hasMethodAnnotation(annotation, propertyName, getter, setter, srcPos);
+	}
+
+	public Annotation[] getAllMethodAnnotations(Method method, Locatable srcPos) {
+		return delegate.getAllMethodAnnotations(method, srcPos);
+	}
+
+	public <A extends Annotation> A getMethodAnnotation(Class<A> annotation, Method method, Locatable srcpos) {
+		return delegate.getMethodAnnotation(annotation, method, srcpos);
+	}
+
+	public boolean hasMethodAnnotation(Class<? extends Annotation> annotation, Method method) {
+		return delegate.hasMethodAnnotation(annotation, method);
+	}
+
+	public <A extends Annotation> A getMethodParameterAnnotation(Class<A> annotation, Method method, int paramIndex, Locatable srcPos) {
+		return delegate.getMethodParameterAnnotation(annotation, method, paramIndex, srcPos);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public <A extends Annotation> A getClassAnnotation(Class<A> annotation, Class clazz, Locatable srcpos) {
+		return delegate.getClassAnnotation(annotation, clazz, srcpos);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public <A extends Annotation> A getPackageAnnotation(Class<A> annotation, Class clazz, Locatable srcpos) {
+		return delegate.getPackageAnnotation(annotation, clazz, srcpos);
+	}
+
+	public Type getClassValue(Annotation annotation, String name) {
+		return delegate.getClassValue(annotation, name);
+	}
+
+}
@@ -0,0 +1,86 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.bpmn20.util;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes element text to an {@link XMLStreamWriter}, stripped from the characters
+ * xml doesn't allow (see {@link EscapingStringAdapter}).
+ *
+ * Free text that users type, like documentation, scripts and mail bodies, is
+ * written as CDATA as soon as it contains markup characters: the text stays
+ * readable in the deployed xml instead of turning into a sequence of entities.
+ * A ']]>' in the text, which would end the section, splits it in two.
+ *
+ * Every method does a single pass over the text.
+ *
+ * @author jbarrez
+ */
+public class XmlTextWriter {
+
+	protected static final String CDATA_END = "]]>";
+
+	/**
+	 * Writes the text as escaped characters. Nothing is written for null or empty text.
+	 */
+	public static void writeText(XMLStreamWriter xtw, String text) throws XMLStreamException {
+		if (text != null && text.length() > 0) {
+			xtw.writeCharacters(EscapingStringAdapter.escapeCharacters(text));
+		}
+	}
+
+	/**
+	 * Writes the text as CDATA if it contains markup characters, as escaped
+	 * characters otherwise. Nothing is written for null or empty text.
+	 */
+	public static void writeFreeText(XMLStreamWriter xtw, String text) throws XMLStreamException {
+		if (text == null || text.length() == 0) {
+			return;
+		}
+
+		String sanitized = EscapingStringAdapter.escapeCharacters(text);
+		if (containsMarkup(sanitized)) {
+			writeCData(xtw, sanitized);
+		} else {
+			xtw.writeCharacters(sanitized);
+		}
+	}
+
+	/**
+	 * Writes the given, already sanitized, text as one or more CDATA sections.
+	 */
+	public static void writeCData(XMLStreamWriter xtw, String text) throws XMLStreamException {
+		int start = 0;
+		int end = text.indexOf(CDATA_END);
+		while (end != -1) {
+			// The section ends after ']]', the next one starts with '>'
+			xtw.writeCData(text.substring(start, end + 2));
+			start = end + 2;
+			end = text.indexOf(CDATA_END, start);
+		}
+		xtw.writeCData(text.substring(start));
+	}
+
+	protected static boolean containsMarkup(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '<' || c == '&' || c == '>') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
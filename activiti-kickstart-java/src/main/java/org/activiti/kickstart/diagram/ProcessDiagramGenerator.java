@@ -13,11 +13,8 @@
 package org.activiti.kickstart.diagram;
 
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.activiti.engine.impl.bpmn.diagram.ProcessDiagramCanvas;
@@ -25,6 +22,7 @@ import org.activiti.kickstart.bpmn20.model.BaseElement;
 import org.activiti.kickstart.bpmn20.model.Definitions;
 import org.activiti.kickstart.bpmn20.model.FlowElement;
 import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.ProcessGraphIndex;
 import org.activiti.kickstart.bpmn20.model.activity.Task;
 import org.activiti.kickstart.bpmn20.model.activity.type.ScriptTask;
 import org.activiti.kickstart.bpmn20.model.activity.type.ServiceTask;
@@ -76,8 +74,7 @@ public class ProcessDiagramGenerator {
   protected int currentWidth;
   protected ProcessDiagramCanvas processDiagramCanvas;
   protected BPMNPlane plane;
-  protected Map<String, List<SequenceFlow>> outgoingSequenceFlowMapping;
-  protected Map<String, List<SequenceFlow>> incomingSequenceFlowMapping;
+  protected ProcessGraphIndex graph;
   protected Set<String> handledElements;
 
   public ProcessDiagramGenerator(KickstartWorkflow kickstartWorkflow, Bpmn20MarshallingService marshallingService) {
@@ -93,7 +90,21 @@ public class ProcessDiagramGenerator {
 		this.marshallingService = marshallingService;
 	}
 
+  /**
+   * Converts the workflow to BPMN 2.0 and draws it.
+   */
   public InputStream execute() {
+    return execute(marshallingService.convertToBpmn(kickstartWorkflow));
+  }
+
+  /**
+   * Draws the given BPMN 2.0 graph, which must be the conversion of the workflow 
+   * of this generator. The DI shapes and edges are added to the plane of these
+   * definitions, so marshalling them afterwards gives xml with the diagram layout.
+   * Any DI already on the plane is replaced, so drawing the same definitions
+   * twice doesn't duplicate the shapes.
+   */
+  public InputStream execute(Definitions definitions) {
 
     this.startX = 0;
     this.startY = calculateMaximumHeight() / 2 + 10;
@@ -103,12 +114,12 @@ public class ProcessDiagramGenerator {
     int height = calculateMaximumHeight() + 50;
     processDiagramCanvas = new ProcessDiagramCanvas(width, height);
 
-    Definitions definitions = marshallingService.convertToBpmn(kickstartWorkflow);
     Process process = getProcess(definitions);
     this.plane = getPlane(definitions);
+    plane.getDiagramElement().clear();
 
     List<FlowElement> flowElements = process.getFlowElement();
-    generateSequenceflowMappings(flowElements);
+    this.graph = process.getGraphIndex();
     this.handledElements = new HashSet<String>();
 
     for (FlowElement flowElement : flowElements) {
@@ -121,22 +132,22 @@ public class ProcessDiagramGenerator {
 
         } else if (flowElement instanceof EndEvent) {
 
-          drawSequenceFlow(incomingSequenceFlowMapping.get(flowElement.getId()).get(0), 
+          drawSequenceFlow(graph.getIncoming(flowElement).get(0), 
                   currentWidth, startY + EVENT_WIDTH / 2, currentWidth
                   + SEQUENCE_FLOW_WIDTH, startY + EVENT_WIDTH / 2);
           drawEndEvent(flowElement, currentWidth, startY, EVENT_WIDTH, EVENT_WIDTH);
 
         } else if (flowElement instanceof ParallelGateway 
-                && outgoingSequenceFlowMapping.get(flowElement.getId()).size() > 1) { // fork
+                && graph.getOutgoing(flowElement).size() > 1) { // fork
 
           ParallelGateway parallelGateway = (ParallelGateway) flowElement;
-          drawSequenceFlow(incomingSequenceFlowMapping.get(flowElement.getId()).get(0), 
+          drawSequenceFlow(graph.getIncoming(flowElement).get(0), 
                   currentWidth, startY + EVENT_WIDTH / 2, currentWidth
                   + SEQUENCE_FLOW_WIDTH, startY + EVENT_WIDTH / 2);
           drawParallelBlock(currentWidth, startY - EVENT_WIDTH / 2, parallelGateway);
 
         } else if (flowElement instanceof Task) {
-          drawSequenceFlow(incomingSequenceFlowMapping.get(flowElement.getId()).get(0), 
+          drawSequenceFlow(graph.getIncoming(flowElement).get(0), 
                   currentWidth, startY + EVENT_WIDTH / 2, currentWidth
                   + SEQUENCE_FLOW_WIDTH, startY + EVENT_WIDTH / 2);
           drawTask(flowElement, currentWidth, startY - ((TASK_HEIGHT - EVENT_WIDTH) / 2), 
@@ -161,28 +172,6 @@ public class ProcessDiagramGenerator {
     return definitions.getDiagram().get(0).getBPMNPlane();
   }
 
-  protected void generateSequenceflowMappings(List<FlowElement> flowElements) {
-    this.outgoingSequenceFlowMapping = new HashMap<String, List<SequenceFlow>>();
-    this.incomingSequenceFlowMapping = new HashMap<String, List<SequenceFlow>>();
-    for (FlowElement flowElement : flowElements) {
-      if (flowElement instanceof SequenceFlow) {
-        SequenceFlow sequenceFlow = (SequenceFlow) flowElement;
-        String srcId = sequenceFlow.getSourceRef().getId();
-        String targetId = sequenceFlow.getTargetRef().getId();
-
-        if (outgoingSequenceFlowMapping.get(srcId) == null) {
-          outgoingSequenceFlowMapping.put(srcId, new ArrayList<SequenceFlow>());
-        }
-        outgoingSequenceFlowMapping.get(srcId).add(sequenceFlow);
-
-        if (incomingSequenceFlowMapping.get(targetId) == null) {
-          incomingSequenceFlowMapping.put(targetId, new ArrayList<SequenceFlow>());
-        }
-        incomingSequenceFlowMapping.get(targetId).add(sequenceFlow);
-      }
-    }
-  }
-
   protected int calculateMaximumWidth() {
     int width = 0;
     for (KickstartTaskBlock taskBlock : kickstartWorkflow.getTaskBlocks()) {
@@ -217,7 +206,7 @@ public class ProcessDiagramGenerator {
   protected void drawParallelBlock(int x, int y, ParallelGateway parallelGateway) {
 
     int originalCurrentWidth = currentWidth;
-    List<SequenceFlow> sequenceFlows = outgoingSequenceFlowMapping.get(parallelGateway.getId());
+    List<SequenceFlow> sequenceFlows = graph.getOutgoing(parallelGateway);
     int nrOfTasks = sequenceFlows.size();
 
     // First parallel gateway
@@ -242,7 +231,7 @@ public class ProcessDiagramGenerator {
       handledElements.add(sequenceFlow1.getTargetRef().getId());
 
       int seqFlowX = centerOfRhombus + SEQUENCE_FLOW_WIDTH + TASK_WIDTH;
-      SequenceFlow sequenceFlow2 = outgoingSequenceFlowMapping.get(userTask.getId()).get(0);
+      SequenceFlow sequenceFlow2 = graph.getOutgoing(userTask).get(0);
       drawSequenceFlow(sequenceFlow2, seqFlowX, currentHeight, 
               seqFlowX + LONG_SEQUENCE_FLOW_WITHOUT_ARROW_WIDTH, currentHeight, 
               seqFlowX + LONG_SEQUENCE_FLOW_WITHOUT_ARROW_WIDTH, y);
@@ -263,7 +252,7 @@ public class ProcessDiagramGenerator {
       handledElements.add(sequenceFlow1.getTargetRef().getId());
 
       int seqflowX = centerOfRhombus + GATEWAY_WIDTH / 2 + (SEQUENCE_FLOW_WIDTH - GATEWAY_WIDTH / 2) + TASK_WIDTH;
-      SequenceFlow sequenceFlow2 = outgoingSequenceFlowMapping.get(userTask.getId()).get(0);
+      SequenceFlow sequenceFlow2 = graph.getOutgoing(userTask).get(0);
       drawSequenceFlow(sequenceFlow2, seqflowX, startY + EVENT_WIDTH / 2, 
               seqflowX + LONG_SEQUENCE_FLOW_WIDTH - GATEWAY_WIDTH / 2 - ARROW_WIDTH, startY
               + EVENT_WIDTH / 2);
@@ -283,7 +272,7 @@ public class ProcessDiagramGenerator {
               TASK_HEIGHT);
 
       int seqFlowX = centerOfRhombus + SEQUENCE_FLOW_WIDTH + TASK_WIDTH;
-      SequenceFlow sequenceFlow2 = outgoingSequenceFlowMapping.get(userTask.getId()).get(0);
+      SequenceFlow sequenceFlow2 = graph.getOutgoing(userTask).get(0);
       drawSequenceFlow(sequenceFlow2, seqFlowX, currentHeight, 
               seqFlowX + LONG_SEQUENCE_FLOW_WITHOUT_ARROW_WIDTH, currentHeight, seqFlowX
               + LONG_SEQUENCE_FLOW_WITHOUT_ARROW_WIDTH, y + GATEWAY_HEIGHT);
@@ -293,8 +282,8 @@ public class ProcessDiagramGenerator {
     }
 
     // Second parallel gateway
-    String someTaskId = sequenceFlows.get(0).getTargetRef().getId();
-    FlowElement join = outgoingSequenceFlowMapping.get(someTaskId).get(0).getTargetRef();
+    FlowElement someTask = sequenceFlows.get(0).getTargetRef();
+    FlowElement join = graph.getOutgoing(someTask).get(0).getTargetRef();
     centerOfRhombus = centerOfRhombus + SEQUENCE_FLOW_WIDTH + TASK_WIDTH + LONG_SEQUENCE_FLOW_WITHOUT_ARROW_WIDTH;
     drawParallelGateway(join, centerOfRhombus - GATEWAY_WIDTH / 2, y, GATEWAY_WIDTH, GATEWAY_HEIGHT);
     handledElements.add(join.getId());
@@ -0,0 +1,175 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.dto;
+
+/**
+ * 128-bit content hash of a workflow or task, see {@link KickstartWorkflow#getFingerprint()}.
+ *
+ * Fingerprints only depend on the content that was hashed, so they can be
+ * compared between jvms and stored, eg. as key of a diagram image cache.
+ *
+ * @author jbarrez
+ */
+public class Fingerprint {
+
+  protected final long high;
+  protected final long low;
+
+  public Fingerprint(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  public long getHigh() {
+    return high;
+  }
+
+  public long getLow() {
+    return low;
+  }
+
+  /**
+   * Returns the fingerprint as 32 hexadecimal characters.
+   */
+  public String toString() {
+    return toHex(high) + toHex(low);
+  }
+
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof Fingerprint)) {
+      return false;
+    }
+    Fingerprint fingerprint = (Fingerprint) other;
+    return high == fingerprint.high && low == fingerprint.low;
+  }
+
+  public int hashCode() {
+    return (int) (low ^ (low >>> 32));
+  }
+
+  protected static String toHex(long value) {
+    String hex = Long.toHexString(value);
+    return "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  /**
+   * Streaming version of the 128-bit MurmurHash3 (x64), fed with 64-bit words.
+   * Strings are prefixed with their length, so consecutive values can't run into
+   * each other.
+   */
+  public static class Builder {
+
+    protected static final long C1 = 0x87c37b91114253d5L;
+    protected static final long C2 = 0x4cf5ad432745937fL;
+
+    protected long h1;
+    protected long h2;
+    protected long pendingWord;
+    protected boolean pending;
+    protected long length;
+
+    public Builder putString(String value) {
+      if (value == null) {
+        return putLong(-1);
+      }
+      putLong(value.length());
+      int i = 0;
+      for (; i + 4 <= value.length(); i += 4) {
+        putLong(((long) value.charAt(i) << 48) | ((long) value.charAt(i + 1) << 32)
+                | ((long) value.charAt(i + 2) << 16) | value.charAt(i + 3));
+      }
+      if (i < value.length()) {
+        long word = 0;
+        for (; i < value.length(); i++) {
+          word = (word << 16) | value.charAt(i);
+        }
+        putLong(word);
+      }
+      return this;
+    }
+
+    public Builder putBoolean(boolean value) {
+      return putLong(value ? 1 : 0);
+    }
+
+    public Builder putFingerprint(Fingerprint fingerprint) {
+      putLong(fingerprint.high);
+      return putLong(fingerprint.low);
+    }
+
+    public Builder putLong(long word) {
+      length += 8;
+      if (!pending) {
+        pendingWord = word;
+        pending = true;
+      } else {
+        mixBlock(pendingWord, word);
+        pending = false;
+      }
+      return this;
+    }
+
+    public Fingerprint build() {
+      long k1 = h1;
+      long k2 = h2;
+      if (pending) {
+        long k = pendingWord * C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        k1 ^= k;
+      }
+
+      k1 ^= length;
+      k2 ^= length;
+      k1 += k2;
+      k2 += k1;
+      k1 = fmix(k1);
+      k2 = fmix(k2);
+      k1 += k2;
+      k2 += k1;
+      return new Fingerprint(k1, k2);
+    }
+
+    protected void mixBlock(long k1, long k2) {
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 *= C2;
+      h1 ^= k1;
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 *= C1;
+      h2 ^= k2;
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    protected static long fmix(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+    }
+
+  }
+
+}
@@ -13,6 +13,7 @@
 package org.activiti.kickstart.dto;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,16 +25,36 @@ public class KickstartForm {
 
 	protected List<KickstartFormProperty> formProperties = new ArrayList<KickstartFormProperty>();
 
+	// Set when the form belongs to a task of a workflow snapshot
+	protected boolean frozen;
+
+	// The task this form belongs to, told about every change of the form
+	protected KickstartUserTask task;
+
+	/**
+	 * Returns the form properties, which can't be added or removed through this list: 
+	 * use {@link #addFormProperty(KickstartFormProperty)} or {@link #setFormProperties(List)},
+	 * so the task of this form knows about the change.
+	 */
 	public List<KickstartFormProperty> getFormProperties() {
-		return formProperties;
+		// The properties of a frozen form are stored as unmodifiable list already
+		return frozen ? formProperties : Collections.unmodifiableList(formProperties);
 	}
 
 	public void setFormProperties(List<KickstartFormProperty> formProperties) {
-		this.formProperties = formProperties;
+		checkModifiable();
+		this.formProperties = new ArrayList<KickstartFormProperty>(formProperties);
+		for (KickstartFormProperty formProperty : formProperties) {
+			formProperty.form = this;
+		}
+		changed();
 	}
 
 	public void addFormProperty(KickstartFormProperty formProperty) {
+		checkModifiable();
 		formProperties.add(formProperty);
+		formProperty.form = this;
+		changed();
 	}
 
 	public String getFormKey() {
@@ -41,7 +62,47 @@ public class KickstartForm {
 	}
 
 	public void setFormKey(String formKey) {
+		checkModifiable();
 		this.formKey = formKey;
+		changed();
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Returns a deep copy of this form, which can be changed even when this form is frozen.
+	 */
+	public KickstartForm copy() {
+		KickstartForm form = new KickstartForm();
+		form.formKey = formKey;
+		for (KickstartFormProperty formProperty : formProperties) {
+			KickstartFormProperty copy = formProperty.copy();
+			copy.form = form;
+			form.formProperties.add(copy);
+		}
+		return form;
+	}
+
+	protected void changed() {
+		if (task != null) {
+			task.changed();
+		}
+	}
+
+	protected void markFrozen() {
+		frozen = true;
+		for (KickstartFormProperty formProperty : formProperties) {
+			formProperty.markFrozen();
+		}
+		formProperties = Collections.unmodifiableList(formProperties);
+	}
+
+	protected void checkModifiable() {
+		if (frozen) {
+			throw new UnsupportedOperationException("Form of a workflow snapshot can't be changed");
+		}
 	}
 
 	public String toString() {
@@ -20,24 +20,61 @@ public class KickstartFormProperty {
   protected String property;
   protected String type;
   protected Boolean required = new Boolean(false);
+  // Set when the property belongs to a form of a workflow snapshot
+  protected boolean frozen;
+  // The form this property was added to, told about every change of the property
+  protected KickstartForm form;
 
   public String getProperty() {
     return property;
   }
   public void setProperty(String property) {
+    checkModifiable();
     this.property = property;
+    changed();
   }
   public String getType() {
     return type;
   }
   public void setType(String type) {
+    checkModifiable();
     this.type = type;
+    changed();
   }
   public Boolean isRequired() {
     return required;
   }
   public void setRequired(Boolean required) {
+    checkModifiable();
     this.required = required;
+    changed();
+  }
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  public KickstartFormProperty copy() {
+    KickstartFormProperty formProperty = new KickstartFormProperty();
+    formProperty.property = property;
+    formProperty.type = type;
+    formProperty.required = required;
+    return formProperty;
+  }
+
+  protected void changed() {
+    if (form != null) {
+      form.changed();
+    }
+  }
+
+  protected void markFrozen() {
+    frozen = true;
+  }
+
+  protected void checkModifiable() {
+    if (frozen) {
+      throw new UnsupportedOperationException("Form property of a workflow snapshot can't be changed");
+    }
   }
 
 }
\ No newline at end of file
@@ -9,6 +9,14 @@ public class KickstartMailTask extends KickstartTask {
       this.name = name;
     }
 
+    Field(String name, KickstartMailTask task) {
+      this.name = name;
+      this.task = task;
+    }
+
+    // The task that owns this field, it is told about every change of this field
+    private KickstartMailTask task;
+
     private String name;
 
     public String getName() {
@@ -21,7 +29,9 @@ public class KickstartMailTask extends KickstartTask {
       return stringValue;
     }
     public void setStringValue(String stringValue) {
+      checkModifiable();
       this.stringValue = stringValue;
+      fieldChanged();
     }
 
     private String expression;
@@ -30,17 +40,36 @@ public class KickstartMailTask extends KickstartTask {
       return expression;
     }
     public void setExpression(String expression) {
+      checkModifiable();
       this.expression = expression;
+      fieldChanged();
+    }
+
+    protected void checkModifiable() {
+      if (task != null) {
+        task.checkModifiable();
+      }
+    }
+
+    protected void copyTo(Field field) {
+      field.stringValue = stringValue;
+      field.expression = expression;
+    }
+
+    protected void fieldChanged() {
+      if (task != null) {
+        task.changed();
+      }
     }
   }
 
-  private Field to = new Field("to");
-  private Field from = new Field("from");
-  private Field cc = new Field("cc");
-  private Field subject = new Field("subject");
-  private Field bcc = new Field("bcc");
-  private Field html = new Field("html");
-  private Field text = new Field("text");
+  private Field to = new Field("to", this);
+  private Field from = new Field("from", this);
+  private Field cc = new Field("cc", this);
+  private Field subject = new Field("subject", this);
+  private Field bcc = new Field("bcc", this);
+  private Field html = new Field("html", this);
+  private Field text = new Field("text", this);
 
   public Field getTo() {
     return to;
@@ -64,4 +93,33 @@ public class KickstartMailTask extends KickstartTask {
     return text;
   }
 
+  public KickstartMailTask copy() {
+    KickstartMailTask task = new KickstartMailTask();
+    copyTo(task);
+    to.copyTo(task.to);
+    from.copyTo(task.from);
+    cc.copyTo(task.cc);
+    subject.copyTo(task.subject);
+    bcc.copyTo(task.bcc);
+    html.copyTo(task.html);
+    text.copyTo(task.text);
+    return task;
+  }
+
+  protected void hashContent(Fingerprint.Builder builder) {
+    super.hashContent(builder);
+    hashField(builder, to);
+    hashField(builder, from);
+    hashField(builder, cc);
+    hashField(builder, subject);
+    hashField(builder, bcc);
+    hashField(builder, html);
+    hashField(builder, text);
+  }
+
+  protected void hashField(Fingerprint.Builder builder, Field field) {
+    builder.putString(field.getStringValue());
+    builder.putString(field.getExpression());
+  }
+
 }
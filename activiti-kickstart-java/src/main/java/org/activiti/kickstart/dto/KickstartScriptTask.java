@@ -9,7 +9,9 @@ public class KickstartScriptTask extends KickstartTask {
     return scriptFormat;
   }
   public void setScriptFormat(String scriptFormat) {
+    checkModifiable();
     this.scriptFormat = scriptFormat;
+    changed();
   }
 
   private String resultVariableName;
@@ -18,7 +20,9 @@ public class KickstartScriptTask extends KickstartTask {
     return resultVariableName;
   }
   public void setResultVariableName(String resultVariableName) {
+    checkModifiable();
     this.resultVariableName = resultVariableName;
+    changed();
   }
 
   private String script;
@@ -27,7 +31,25 @@ public class KickstartScriptTask extends KickstartTask {
     return script;
   }
   public void setScript(String script) {
+    checkModifiable();
     this.script = script;
+    changed();
+  }
+
+  public KickstartScriptTask copy() {
+    KickstartScriptTask task = new KickstartScriptTask();
+    copyTo(task);
+    task.scriptFormat = scriptFormat;
+    task.resultVariableName = resultVariableName;
+    task.script = script;
+    return task;
+  }
+
+  protected void hashContent(Fingerprint.Builder builder) {
+    super.hashContent(builder);
+    builder.putString(scriptFormat);
+    builder.putString(resultVariableName);
+    builder.putString(script);
   }
 
 }
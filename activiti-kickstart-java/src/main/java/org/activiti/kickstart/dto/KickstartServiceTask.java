@@ -9,7 +9,9 @@ public class KickstartServiceTask extends KickstartTask {
     return className;
   }
   public void setClassName(String className) {
+    checkModifiable();
     this.className = className;
+    changed();
   }
 
   private String delegateExpression;
@@ -18,7 +20,9 @@ public class KickstartServiceTask extends KickstartTask {
     return delegateExpression;
   }
   public void setDelegateExpression(String delegateExpression) {
+    checkModifiable();
     this.delegateExpression = delegateExpression;
+    changed();
   }
 
   private String expression;
@@ -27,7 +31,25 @@ public class KickstartServiceTask extends KickstartTask {
     return expression;
   }
   public void setExpression(String expression) {
+    checkModifiable();
     this.expression = expression;
+    changed();
+  }
+
+  public KickstartServiceTask copy() {
+    KickstartServiceTask task = new KickstartServiceTask();
+    copyTo(task);
+    task.className = className;
+    task.delegateExpression = delegateExpression;
+    task.expression = expression;
+    return task;
+  }
+
+  protected void hashContent(Fingerprint.Builder builder) {
+    super.hashContent(builder);
+    builder.putString(className);
+    builder.putString(delegateExpression);
+    builder.putString(expression);
   }
 
 }
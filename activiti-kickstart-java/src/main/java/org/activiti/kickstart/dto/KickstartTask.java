@@ -11,6 +11,15 @@ public abstract class KickstartTask {
 
   protected boolean startWithPrevious;
 
+  // Content hash, reset by every setter of this task
+  protected volatile Fingerprint fingerprint;
+
+  // Frozen tasks belong to workflow snapshots and can't be changed, see freeze()
+  protected boolean frozen;
+
+  // The (mutable) workflow this task belongs to, told about every change
+  protected KickstartWorkflow workflow;
+
   public KickstartTask() {
     super();
   }
@@ -20,6 +29,7 @@ public abstract class KickstartTask {
   }
 
   public void setId(String id) {
+    checkModifiable();
     this.id = id;
   }
 
@@ -28,7 +38,9 @@ public abstract class KickstartTask {
   }
 
   public void setName(String name) {
+    checkModifiable();
     this.name = name;
+    changed();
   }
 
   public String getDescription() {
@@ -36,7 +48,9 @@ public abstract class KickstartTask {
   }
 
   public void setDescription(String description) {
+    checkModifiable();
     this.description = description;
+    changed();
   }
 
   public boolean getStartsWithPrevious() {
@@ -44,7 +58,91 @@ public abstract class KickstartTask {
   }
 
   public void setStartWithPrevious(boolean startWithPrevious) {
+    checkModifiable();
     this.startWithPrevious = startWithPrevious;
+    changed();
+  }
+
+  /**
+   * Returns the hash of the content of this task. The id is not part of it,
+   * it is only assigned when the task is deployed. The hash is computed when 
+   * it's first needed and kept until the task is changed.
+   */
+  public Fingerprint getFingerprint() {
+    if (fingerprint == null) {
+      Fingerprint.Builder builder = new Fingerprint.Builder();
+      hashContent(builder);
+      fingerprint = builder.build();
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Adds the properties of this task to the fingerprint. Subclasses add theirs 
+   * after calling this method, and call {@link #changed()} in their setters.
+   */
+  protected void hashContent(Fingerprint.Builder builder) {
+    builder.putString(getClass().getName());
+    builder.putString(name);
+    builder.putString(description);
+    builder.putBoolean(startWithPrevious);
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Returns this task if it is frozen already, or else a frozen deep copy of it.
+   * Frozen tasks can't be changed, so workflow snapshots can share them between threads.
+   */
+  public KickstartTask freeze() {
+    if (frozen) {
+      return this;
+    }
+    KickstartTask task = copy();
+    task.markFrozen();
+    return task;
+  }
+
+  /**
+   * Returns a deep copy of this task, which can be changed even when this task is frozen.
+   */
+  public abstract KickstartTask copy();
+
+  /**
+   * Copies the properties of this task to the given copy. Subclasses copy theirs 
+   * after calling this method.
+   */
+  protected void copyTo(KickstartTask task) {
+    task.id = id;
+    task.name = name;
+    task.description = description;
+    task.startWithPrevious = startWithPrevious;
+    task.fingerprint = fingerprint; // same content
+  }
+
+  /**
+   * Resets the fingerprint of this task and of the workflow it belongs to.
+   */
+  protected void changed() {
+    fingerprint = null;
+    if (workflow != null) {
+      workflow.taskChanged();
+    }
+  }
+
+  /**
+   * Freezes this task and everything it owns, like its form.
+   */
+  protected void markFrozen() {
+    frozen = true;
+  }
+
+  protected void checkModifiable() {
+    if (frozen) {
+      throw new UnsupportedOperationException("Task of a workflow snapshot can't be changed, use copy() to create a new one");
+    }
   }
   
 }
@@ -30,7 +30,9 @@ public class KickstartUserTask extends KickstartTask {
   }
 
   public void setAssignee(String assignee) {
+    checkModifiable();
     this.assignee = assignee;
+    changed();
   }
 
   public String getGroups() {
@@ -38,7 +40,9 @@ public class KickstartUserTask extends KickstartTask {
   }
 
   public void setGroups(String groups) {
+    checkModifiable();
     this.groups = groups;
+    changed();
   }
 
   public KickstartForm getForm() {
@@ -46,7 +50,15 @@ public class KickstartUserTask extends KickstartTask {
   }
 
   public void setForm(KickstartForm formDto) {
+    checkModifiable();
+    if (form != null && form.task == this) {
+      form.task = null;
+    }
     this.form = formDto;
+    if (formDto != null) {
+      formDto.task = this;
+    }
+    changed();
   }
   
   public boolean isAssigneeInitiator() {
@@ -54,7 +66,48 @@ public class KickstartUserTask extends KickstartTask {
   }
   
   public void setAssigneeInitiator(boolean isAssigneeInitiator) {
+    checkModifiable();
     this.isAssigneeInitiator = isAssigneeInitiator;
+    changed();
+  }
+
+  public KickstartUserTask copy() {
+    KickstartUserTask task = new KickstartUserTask();
+    copyTo(task);
+    task.isAssigneeInitiator = isAssigneeInitiator;
+    task.assignee = assignee;
+    task.groups = groups;
+    if (form != null) {
+      task.form = form.copy();
+      task.form.task = task;
+    }
+    return task;
+  }
+
+  protected void markFrozen() {
+    super.markFrozen();
+    if (form != null) {
+      form.markFrozen();
+    }
+  }
+
+  protected void hashContent(Fingerprint.Builder builder) {
+    super.hashContent(builder);
+    builder.putBoolean(isAssigneeInitiator);
+    builder.putString(assignee);
+    builder.putString(groups);
+    if (form != null) { // changes to the form reset the fingerprint of this task
+      builder.putBoolean(true);
+      builder.putString(form.getFormKey());
+      builder.putLong(form.getFormProperties().size());
+      for (KickstartFormProperty formProperty : form.getFormProperties()) {
+        builder.putString(formProperty.getProperty());
+        builder.putString(formProperty.getType());
+        builder.putString(String.valueOf(formProperty.isRequired()));
+      }
+    } else {
+      builder.putBoolean(false);
+    }
   }
 
   public String generateDefaultFormName() {
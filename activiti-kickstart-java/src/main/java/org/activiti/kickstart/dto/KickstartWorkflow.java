@@ -14,11 +14,20 @@ package org.activiti.kickstart.dto;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-
-import org.activiti.kickstart.bpmn20.model.Definitions;
+import java.util.Map;
 
 /**
+ * A workflow as it is edited in the kickstart ui.
+ * 
+ * A workflow is either mutable, or a snapshot created by a {@link Builder}. 
+ * Snapshots can't be changed, so they can be cached and shared between threads 
+ * without copying. A snapshot holds frozen copies of the tasks it was built with 
+ * (see {@link KickstartTask#freeze()}), so changing those tasks afterwards doesn't 
+ * change the snapshot. Tasks that are frozen already, and the task blocks they 
+ * form, are shared with the snapshot they come from.
+ * 
  * @author Joram Barrez
  */
 public class KickstartWorkflow {
@@ -31,19 +40,60 @@ public class KickstartWorkflow {
   protected String description;
   protected List<KickstartTask> tasks = new ArrayList<KickstartTask>();
   protected List<KickstartTaskBlock> taskBlocks;
+  protected boolean snapshot;
 
-  // Cached version of the BPMN JAXB counterpart
-  protected Definitions cachedDefinitions;
+  // Content hash, reset by every change to the workflow or its tasks
+  protected volatile Fingerprint fingerprint;
+
+  // Marshalled BPMN 2.0 xml, reset by every change to the workflow or its tasks
+  protected volatile CachedXml cachedXml;
 
   public KickstartWorkflow() {
   }
   
-  public Definitions getCachedDefinitions() {
-	  return cachedDefinitions;
+  /**
+   * Returns a builder for a new workflow snapshot.
+   */
+  public static Builder builder() {
+    return new Builder(null);
+  }
+  
+  /**
+   * Returns a builder that starts from the current state of this workflow.
+   */
+  public Builder toBuilder() {
+    return new Builder(this);
   }
   
-  public void setCachedDefinitions(Definitions definitions) {
-	  this.cachedDefinitions = definitions;
+  /**
+   * Returns an immutable snapshot of this workflow, or the workflow itself 
+   * if it is a snapshot already.
+   */
+  public KickstartWorkflow snapshot() {
+    return snapshot ? this : toBuilder().build();
+  }
+  
+  public boolean isSnapshot() {
+    return snapshot;
+  }
+  
+  /**
+   * Returns the xml this workflow was last marshalled to with the given output profile 
+   * (see {@link #setCachedXml(String, String)}), or null if the workflow or one of its 
+   * tasks was changed since.
+   */
+  public String getCachedXml(String profile) {
+    CachedXml cachedXml = this.cachedXml;
+    return cachedXml != null && cachedXml.profile.equals(profile) ? cachedXml.xml : null;
+  }
+  
+  /**
+   * Keeps the marshalled xml of this workflow, for the marshalling service that made it. 
+   * The profile identifies the marshaller and its settings. Strings can't be changed, 
+   * so snapshots cache their xml as well.
+   */
+  public void setCachedXml(String profile, String xml) {
+    this.cachedXml = new CachedXml(profile, xml);
   }
   
   public String getId() {
@@ -51,7 +101,9 @@ public class KickstartWorkflow {
   }
   
   public void setId(String id) {
+    checkModifiable();
     this.id = id;
+    this.cachedXml = null;
   }
 
   public String getName() {
@@ -59,8 +111,10 @@ public class KickstartWorkflow {
   }
 
   public void setName(String name) {
+    checkModifiable();
     this.name = name;
-    this.cachedDefinitions = null;
+    this.cachedXml = null;
+    this.fingerprint = null;
   }
 
   public String getDescription() {
@@ -68,26 +122,74 @@ public class KickstartWorkflow {
   }
 
   public void setDescription(String description) {
+    checkModifiable();
     this.description = description;
-    this.cachedDefinitions = null;
+    this.cachedXml = null;
+    this.fingerprint = null;
   }
 
   public List<KickstartTask> getTasks() {
-    return Collections.unmodifiableList(tasks);
+    // The tasks of a snapshot are stored as unmodifiable list already
+    return snapshot ? tasks : Collections.unmodifiableList(tasks);
   }
 
+  /**
+   * Replaces the tasks of this workflow, see {@link #addTask(KickstartTask)}.
+   */
   public void setTasks(List<KickstartTask> tasks) {
-    this.tasks = tasks;
+    checkModifiable();
+    for (KickstartTask task : this.tasks) {
+      release(task);
+    }
+    this.tasks = new ArrayList<KickstartTask>(tasks.size());
+    for (KickstartTask task : tasks) {
+      this.tasks.add(adopt(task));
+    }
     this.taskBlocks = null;
-    this.cachedDefinitions = null;
+    this.cachedXml = null;
+    this.fingerprint = null;
   }
 
+  /**
+   * Adds the task to this workflow. A task that belongs to another (mutable) workflow
+   * already is copied, since a task can only tell one workflow about its changes.
+   */
   public void addTask(KickstartTask task) {
-    tasks.add(task);
+    checkModifiable();
+    tasks.add(adopt(task));
     
     // Reset any previously generated taskblocks
-    this.taskBlocks = null;
-    this.cachedDefinitions = null;
+    taskChanged();
+  }
+  
+  /**
+   * Returns the task to add to this workflow: the task itself, or a copy of it when it belongs 
+   * to another workflow. Frozen tasks don't change, and can be shared by snapshots.
+   */
+  protected KickstartTask adopt(KickstartTask task) {
+    if (task.isFrozen()) {
+      return task;
+    }
+    if (task.workflow != null && task.workflow != this) {
+      task = task.copy();
+    }
+    task.workflow = this;
+    return task;
+  }
+  
+  protected void release(KickstartTask task) {
+    if (task.workflow == this) {
+      task.workflow = null;
+    }
+  }
+  
+  /**
+   * Called by the tasks of this workflow when they are changed, see {@link KickstartTask#changed()}.
+   */
+  protected void taskChanged() {
+    this.taskBlocks = null; // a task may have been made parallel
+    this.cachedXml = null;
+    this.fingerprint = null;
   }
 
   public List<KickstartTaskBlock> getTaskBlocks() {
@@ -97,8 +199,37 @@ public class KickstartWorkflow {
     return taskBlocks;
   }
 
+  /**
+   * Returns a hash of the content of this workflow: name, description and the 
+   * tasks in order, which includes the task blocks they form. Ids are left out, 
+   * so a deployed workflow has the same fingerprint as before its deployment.
+   * 
+   * The fingerprint is kept until the workflow or one of its tasks is changed, 
+   * tasks tell the workflow they were added to about their changes. After a change 
+   * only the changed task is rehashed, the fingerprints of the others are reused.
+   */
+  public Fingerprint getFingerprint() {
+    Fingerprint fingerprint = this.fingerprint;
+    if (fingerprint == null) {
+      Fingerprint.Builder builder = new Fingerprint.Builder();
+      builder.putString(name);
+      builder.putString(description);
+      builder.putLong(tasks.size());
+      for (int i = 0; i < tasks.size(); i++) {
+        builder.putFingerprint(tasks.get(i).getFingerprint());
+      }
+      fingerprint = builder.build();
+      this.fingerprint = fingerprint; // a snapshot can compute it concurrently, the result is the same
+    }
+    return fingerprint;
+  }
+
   protected void generateTaskBlocks() {
-    taskBlocks = new ArrayList<KickstartTaskBlock>();
+    taskBlocks = generateTaskBlocks(tasks);
+  }
+
+  protected static List<KickstartTaskBlock> generateTaskBlocks(List<KickstartTask> tasks) {
+    List<KickstartTaskBlock> taskBlocks = new ArrayList<KickstartTaskBlock>();
     for (int i = 0; i < tasks.size(); i++) {
       KickstartTask task = tasks.get(i);
       // Parallel tasks are grouped in the same task block
@@ -110,6 +241,154 @@ public class KickstartWorkflow {
         taskBlocks.add(taskBlock);
       }
     }
+    return taskBlocks;
+  }
+
+  protected void checkModifiable() {
+    if (snapshot) {
+      throw new UnsupportedOperationException("Workflow snapshot can't be changed, use toBuilder() to create a new one");
+    }
+  }
+
+  protected static class CachedXml {
+    
+    protected final String profile;
+    protected final String xml;
+    
+    protected CachedXml(String profile, String xml) {
+      this.profile = profile;
+      this.xml = xml;
+    }
+    
+  }
+
+  /**
+   * Creates immutable workflow snapshots. A builder created from an existing 
+   * workflow starts from its properties and tasks; the new snapshot reuses 
+   * the task blocks of that workflow that contain exactly the same tasks.
+   * Tasks that aren't frozen yet are copied when the snapshot is built.
+   */
+  public static class Builder {
+
+    protected final KickstartWorkflow base;
+    protected String id;
+    protected String name;
+    protected String description;
+    protected List<KickstartTask> tasks;
+
+    protected Builder(KickstartWorkflow base) {
+      this.base = base;
+      if (base != null) {
+        this.id = base.id;
+        this.name = base.name;
+        this.description = base.description;
+        this.tasks = new ArrayList<KickstartTask>(base.tasks);
+      } else {
+        this.tasks = new ArrayList<KickstartTask>();
+      }
+    }
+
+    public Builder id(String id) {
+      this.id = id;
+      return this;
+    }
+
+    public Builder name(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public Builder description(String description) {
+      this.description = description;
+      return this;
+    }
+
+    public Builder addTask(KickstartTask task) {
+      tasks.add(task);
+      return this;
+    }
+
+    public Builder setTask(int index, KickstartTask task) {
+      tasks.set(index, task);
+      return this;
+    }
+
+    public Builder removeTask(int index) {
+      tasks.remove(index);
+      return this;
+    }
+
+    public Builder tasks(List<KickstartTask> tasks) {
+      this.tasks = new ArrayList<KickstartTask>(tasks);
+      return this;
+    }
+
+    public KickstartWorkflow build() {
+      if (base != null && base.snapshot && isUnchanged()) {
+        return base;
+      }
+
+      List<KickstartTask> frozenTasks = new ArrayList<KickstartTask>(tasks.size());
+      for (KickstartTask task : tasks) {
+        frozenTasks.add(task.freeze());
+      }
+
+      KickstartWorkflow workflow = new KickstartWorkflow();
+      workflow.id = id;
+      workflow.name = name;
+      workflow.description = description;
+      workflow.tasks = Collections.unmodifiableList(frozenTasks);
+      // Generated eagerly, so reading a shared snapshot never writes to it
+      workflow.taskBlocks = Collections.unmodifiableList(shareTaskBlocks(generateTaskBlocks(frozenTasks)));
+      workflow.snapshot = true;
+      return workflow;
+    }
+
+    protected boolean isUnchanged() {
+      return equal(id, base.id) && equal(name, base.name) && equal(description, base.description) 
+              && sameTasks(tasks, base.tasks);
+    }
+
+    /**
+     * Replaces every generated task block by the block of the base workflow with the 
+     * same tasks, if there is one. Other blocks are made read-only.
+     */
+    protected List<KickstartTaskBlock> shareTaskBlocks(List<KickstartTaskBlock> taskBlocks) {
+      Map<KickstartTask, KickstartTaskBlock> baseTaskBlocks = new IdentityHashMap<KickstartTask, KickstartTaskBlock>();
+      if (base != null && base.snapshot) {
+        for (KickstartTaskBlock taskBlock : base.taskBlocks) {
+          baseTaskBlocks.put(taskBlock.get(0), taskBlock);
+        }
+      }
+
+      for (int i = 0; i < taskBlocks.size(); i++) {
+        KickstartTaskBlock taskBlock = taskBlocks.get(i);
+        KickstartTaskBlock baseTaskBlock = baseTaskBlocks.get(taskBlock.get(0));
+        if (baseTaskBlock != null && sameTasks(taskBlock.getTasks(), baseTaskBlock.getTasks())) {
+          taskBlocks.set(i, baseTaskBlock);
+        } else {
+          taskBlocks.set(i, new KickstartTaskBlock(Collections.unmodifiableList(taskBlock.getTasks())));
+        }
+      }
+      return taskBlocks;
+    }
+
+    protected static boolean sameTasks(List<KickstartTask> tasks, List<KickstartTask> otherTasks) {
+      if (tasks.size() != otherTasks.size()) {
+        return false;
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        if (tasks.get(i) != otherTasks.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    protected static boolean equal(String value, String otherValue) {
+      return value == null ? otherValue == null : value.equals(otherValue);
+    }
+
   }
 
 }
@@ -0,0 +1,387 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.dto;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a {@link KickstartWorkflow} and its tasks, meant for
+ * caches and session replication where the json source or the BPMN 2.0 xml of a
+ * workflow are needlessly large and slow to read.
+ *
+ * Layout: a magic byte and a format version, followed by the workflow properties
+ * and its tasks. Every task starts with a type byte and a byte of boolean flags.
+ * Numbers are written as variable length ints. Strings are written once, with
+ * their UTF-8 length, and referenced by their index when they appear again.
+ *
+ * The version is increased when the layout changes. Decoding data of a newer
+ * version fails, data of older versions stays readable.
+ *
+ * @author jbarrez
+ */
+public class KickstartWorkflowCodec {
+
+  public static final int MAGIC = 0x4B;
+  public static final int VERSION = 1;
+
+  protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  protected static final int TYPE_USER_TASK = 1;
+  protected static final int TYPE_SERVICE_TASK = 2;
+  protected static final int TYPE_SCRIPT_TASK = 3;
+  protected static final int TYPE_MAIL_TASK = 4;
+
+  protected static final int FLAG_START_WITH_PREVIOUS = 1;
+  protected static final int FLAG_ASSIGNEE_INITIATOR = 2;
+  protected static final int FLAG_FORM = 4;
+
+  // String references: 0 is null, 1 is a new string, n > 1 is the string at index n - 2
+  protected static final int STRING_NULL = 0;
+  protected static final int STRING_NEW = 1;
+  protected static final int STRING_REFERENCE_OFFSET = 2;
+
+  protected static final int REQUIRED_NULL = 0;
+  protected static final int REQUIRED_FALSE = 1;
+  protected static final int REQUIRED_TRUE = 2;
+
+  /**
+   * Encodes the workflow and all of its tasks.
+   */
+  public static byte[] encode(KickstartWorkflow workflow) {
+    Output output = new Output();
+    output.writeByte(MAGIC);
+    output.writeByte(VERSION);
+
+    output.writeString(workflow.getId());
+    output.writeString(workflow.getName());
+    output.writeString(workflow.getDescription());
+
+    List<KickstartTask> tasks = workflow.getTasks();
+    output.writeInt(tasks.size());
+    for (KickstartTask task : tasks) {
+      writeTask(output, task);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Decodes a workflow encoded by {@link #encode(KickstartWorkflow)}. The result
+   * is a mutable workflow, use {@link KickstartWorkflow#snapshot()} to share it.
+   */
+  public static KickstartWorkflow decode(byte[] bytes) {
+    Input input = new Input(bytes);
+    if (bytes.length < 2 || input.readByte() != MAGIC) {
+      throw new RuntimeException("Data is not an encoded workflow");
+    }
+    int version = input.readByte();
+    if (version > VERSION) {
+      throw new RuntimeException("Unsupported workflow encoding version " + version
+              + ", only versions up to " + VERSION + " are supported");
+    }
+
+    KickstartWorkflow workflow = new KickstartWorkflow();
+    workflow.setId(input.readString());
+    workflow.setName(input.readString());
+    workflow.setDescription(input.readString());
+
+    int nrOfTasks = input.readCount();
+    List<KickstartTask> tasks = new ArrayList<KickstartTask>(nrOfTasks);
+    for (int i = 0; i < nrOfTasks; i++) {
+      tasks.add(readTask(input));
+    }
+    workflow.setTasks(tasks);
+    return workflow;
+  }
+
+  // Tasks ////////////////////////////////////////////////////////////////////////
+
+  protected static void writeTask(Output output, KickstartTask task) {
+    int flags = task.getStartsWithPrevious() ? FLAG_START_WITH_PREVIOUS : 0;
+    if (task instanceof KickstartUserTask) {
+      KickstartUserTask userTask = (KickstartUserTask) task;
+      flags |= userTask.isAssigneeInitiator() ? FLAG_ASSIGNEE_INITIATOR : 0;
+      flags |= userTask.getForm() != null ? FLAG_FORM : 0;
+      writeTaskHeader(output, TYPE_USER_TASK, flags, task);
+      output.writeString(userTask.getAssignee());
+      output.writeString(userTask.getGroups());
+      if (userTask.getForm() != null) {
+        writeForm(output, userTask.getForm());
+      }
+
+    } else if (task instanceof KickstartServiceTask) {
+      KickstartServiceTask serviceTask = (KickstartServiceTask) task;
+      writeTaskHeader(output, TYPE_SERVICE_TASK, flags, task);
+      output.writeString(serviceTask.getClassName());
+      output.writeString(serviceTask.getDelegateExpression());
+      output.writeString(serviceTask.getExpression());
+
+    } else if (task instanceof KickstartScriptTask) {
+      KickstartScriptTask scriptTask = (KickstartScriptTask) task;
+      writeTaskHeader(output, TYPE_SCRIPT_TASK, flags, task);
+      output.writeString(scriptTask.getScriptFormat());
+      output.writeString(scriptTask.getResultVariableName());
+      output.writeString(scriptTask.getScript());
+
+    } else if (task instanceof KickstartMailTask) {
+      KickstartMailTask mailTask = (KickstartMailTask) task;
+      writeTaskHeader(output, TYPE_MAIL_TASK, flags, task);
+      writeField(output, mailTask.getTo());
+      writeField(output, mailTask.getFrom());
+      writeField(output, mailTask.getCc());
+      writeField(output, mailTask.getSubject());
+      writeField(output, mailTask.getBcc());
+      writeField(output, mailTask.getHtml());
+      writeField(output, mailTask.getText());
+
+    } else {
+      throw new RuntimeException("Unsupported task type " + task.getClass().getName());
+    }
+  }
+
+  protected static void writeTaskHeader(Output output, int type, int flags, KickstartTask task) {
+    output.writeByte(type);
+    output.writeByte(flags);
+    output.writeString(task.getId());
+    output.writeString(task.getName());
+    output.writeString(task.getDescription());
+  }
+
+  protected static void writeForm(Output output, KickstartForm form) {
+    output.writeString(form.getFormKey());
+    List<KickstartFormProperty> formProperties = form.getFormProperties();
+    output.writeInt(formProperties.size());
+    for (KickstartFormProperty formProperty : formProperties) {
+      output.writeString(formProperty.getProperty());
+      output.writeString(formProperty.getType());
+      Boolean required = formProperty.isRequired();
+      output.writeByte(required == null ? REQUIRED_NULL : (required ? REQUIRED_TRUE : REQUIRED_FALSE));
+    }
+  }
+
+  protected static void writeField(Output output, KickstartMailTask.Field field) {
+    output.writeString(field.getStringValue());
+    output.writeString(field.getExpression());
+  }
+
+  protected static KickstartTask readTask(Input input) {
+    int type = input.readByte();
+    int flags = input.readByte();
+
+    KickstartTask task = null;
+    switch (type) {
+      case TYPE_USER_TASK:
+        task = new KickstartUserTask();
+        break;
+      case TYPE_SERVICE_TASK:
+        task = new KickstartServiceTask();
+        break;
+      case TYPE_SCRIPT_TASK:
+        task = new KickstartScriptTask();
+        break;
+      case TYPE_MAIL_TASK:
+        task = new KickstartMailTask();
+        break;
+      default:
+        throw new RuntimeException("Unknown task type " + type + " in encoded workflow");
+    }
+
+    task.setId(input.readString());
+    task.setName(input.readString());
+    task.setDescription(input.readString());
+    task.setStartWithPrevious((flags & FLAG_START_WITH_PREVIOUS) != 0);
+
+    if (task instanceof KickstartUserTask) {
+      KickstartUserTask userTask = (KickstartUserTask) task;
+      userTask.setAssigneeInitiator((flags & FLAG_ASSIGNEE_INITIATOR) != 0);
+      userTask.setAssignee(input.readString());
+      userTask.setGroups(input.readString());
+      if ((flags & FLAG_FORM) != 0) {
+        userTask.setForm(readForm(input));
+      }
+
+    } else if (task instanceof KickstartServiceTask) {
+      KickstartServiceTask serviceTask = (KickstartServiceTask) task;
+      serviceTask.setClassName(input.readString());
+      serviceTask.setDelegateExpression(input.readString());
+      serviceTask.setExpression(input.readString());
+
+    } else if (task instanceof KickstartScriptTask) {
+      KickstartScriptTask scriptTask = (KickstartScriptTask) task;
+      scriptTask.setScriptFormat(input.readString());
+      scriptTask.setResultVariableName(input.readString());
+      scriptTask.setScript(input.readString());
+
+    } else {
+      KickstartMailTask mailTask = (KickstartMailTask) task;
+      readField(input, mailTask.getTo());
+      readField(input, mailTask.getFrom());
+      readField(input, mailTask.getCc());
+      readField(input, mailTask.getSubject());
+      readField(input, mailTask.getBcc());
+      readField(input, mailTask.getHtml());
+      readField(input, mailTask.getText());
+    }
+    return task;
+  }
+
+  protected static KickstartForm readForm(Input input) {
+    KickstartForm form = new KickstartForm();
+    form.setFormKey(input.readString());
+    int nrOfFormProperties = input.readCount();
+    List<KickstartFormProperty> formProperties = new ArrayList<KickstartFormProperty>(nrOfFormProperties);
+    for (int i = 0; i < nrOfFormProperties; i++) {
+      KickstartFormProperty formProperty = new KickstartFormProperty();
+      formProperty.setProperty(input.readString());
+      formProperty.setType(input.readString());
+      int required = input.readByte();
+      formProperty.setRequired(required == REQUIRED_NULL ? null : Boolean.valueOf(required == REQUIRED_TRUE));
+      formProperties.add(formProperty);
+    }
+    form.setFormProperties(formProperties);
+    return form;
+  }
+
+  protected static void readField(Input input, KickstartMailTask.Field field) {
+    field.setStringValue(input.readString());
+    field.setExpression(input.readString());
+  }
+
+  // Helper classes ////////////////////////////////////////////////////////////////
+
+  /**
+   * Growing byte array with a table of the strings written so far.
+   */
+  protected static class Output {
+
+    protected byte[] bytes = new byte[256];
+    protected int size;
+    protected Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    public void writeByte(int value) {
+      ensureCapacity(1);
+      bytes[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    public void writeString(String value) {
+      if (value == null) {
+        writeInt(STRING_NULL);
+        return;
+      }
+
+      Integer index = strings.get(value);
+      if (index != null) {
+        writeInt(index + STRING_REFERENCE_OFFSET);
+        return;
+      }
+      strings.put(value, strings.size());
+
+      byte[] utf8 = value.getBytes(UTF_8);
+      writeInt(STRING_NEW);
+      writeInt(utf8.length);
+      ensureCapacity(utf8.length);
+      System.arraycopy(utf8, 0, bytes, size, utf8.length);
+      size += utf8.length;
+    }
+
+    public byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+    protected void ensureCapacity(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+  }
+
+  protected static class Input {
+
+    protected final byte[] bytes;
+    protected int position;
+    protected List<String> strings = new ArrayList<String>();
+
+    public Input(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    public int readByte() {
+      checkAvailable(1);
+      return bytes[position++] & 0xFF;
+    }
+
+    public int readInt() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = readByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new RuntimeException("Malformed number in encoded workflow");
+    }
+
+    /**
+     * Reads the number of elements that follow, every element takes at least one byte.
+     */
+    public int readCount() {
+      int count = readInt();
+      checkAvailable(count);
+      return count;
+    }
+
+    public String readString() {
+      int reference = readInt();
+      if (reference == STRING_NULL) {
+        return null;
+      }
+      if (reference != STRING_NEW) {
+        int index = reference - STRING_REFERENCE_OFFSET;
+        if (index >= strings.size()) {
+          throw new RuntimeException("Unknown string reference " + index + " in encoded workflow");
+        }
+        return strings.get(index);
+      }
+
+      int length = readInt();
+      checkAvailable(length);
+      String value = new String(bytes, position, length, UTF_8);
+      position += length;
+      strings.add(value);
+      return value;
+    }
+
+    protected void checkAvailable(int length) {
+      if (length < 0 || length > bytes.length - position) {
+        throw new RuntimeException("Unexpected end of encoded workflow");
+      }
+    }
+
+  }
+
+}
@@ -27,6 +27,7 @@ public class KickstartWorkflowInfo {
   protected long nrOfRuntimeInstances;
   protected long nrOfHistoricInstances;
   protected String deploymentId;
+  protected KickstartWorkflowSummary summary;
 
   public String getId() {
     return id;
@@ -76,5 +77,15 @@ public class KickstartWorkflowInfo {
   public void setDeploymentId(String deploymentId) {
     this.deploymentId = deploymentId;
   }
+  /**
+   * The summary that was stored when the workflow was deployed, or null for workflows
+   * that were deployed without a summary.
+   */
+  public KickstartWorkflowSummary getSummary() {
+    return summary;
+  }
+  public void setSummary(KickstartWorkflowSummary summary) {
+    this.summary = summary;
+  }
 
 }
@@ -0,0 +1,103 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.dto;
+
+/**
+ * Selects one page of {@link KickstartWorkflowInfo} instances when listing workflows,
+ * see {@link org.activiti.kickstart.service.KickstartService#findWorkflowInformation(KickstartWorkflowInfoCriteria, boolean)}.
+ *
+ * By default the first {@link #DEFAULT_SIZE} workflows are returned, sorted by name.
+ *
+ * @author Joram Barrez
+ */
+public class KickstartWorkflowInfoCriteria {
+
+  public static final int DEFAULT_SIZE = 25;
+  public static final int MAX_SIZE = 1000;
+
+  public enum Sort {
+    /** The display name of the workflow, newest version first within the same name */
+    NAME,
+    /** The key (or id in the repository) of the workflow, newest version first within the same key */
+    KEY
+  }
+
+  protected int start;
+  protected int size = DEFAULT_SIZE;
+  protected String nameFilter;
+  protected Sort sort = Sort.NAME;
+  protected boolean ascending = true;
+  protected boolean latestVersionOnly;
+
+  public KickstartWorkflowInfoCriteria() {
+  }
+
+  public KickstartWorkflowInfoCriteria(int start, int size) {
+    setStart(start);
+    setSize(size);
+  }
+
+  public int getStart() {
+    return start;
+  }
+  public void setStart(int start) {
+    if (start < 0) {
+      throw new IllegalArgumentException("Start of the page can't be negative: " + start);
+    }
+    this.start = start;
+  }
+  public int getSize() {
+    return size;
+  }
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Size of the page must be at least 1: " + size);
+    }
+    if (size > MAX_SIZE) {
+      throw new IllegalArgumentException("Size of the page can't be more than " + MAX_SIZE + ": " + size);
+    }
+    this.size = size;
+  }
+  /**
+   * Only workflows of which the name starts with this prefix are returned, all workflows when null.
+   */
+  public String getNameFilter() {
+    return nameFilter;
+  }
+  public void setNameFilter(String nameFilter) {
+    this.nameFilter = nameFilter;
+  }
+  public Sort getSort() {
+    return sort;
+  }
+  public void setSort(Sort sort) {
+    this.sort = sort != null ? sort : Sort.NAME;
+  }
+  public boolean isAscending() {
+    return ascending;
+  }
+  public void setAscending(boolean ascending) {
+    this.ascending = ascending;
+  }
+  /**
+   * When true, only the latest deployed version of each workflow is returned,
+   * instead of every version that was ever deployed.
+   */
+  public boolean isLatestVersionOnly() {
+    return latestVersionOnly;
+  }
+  public void setLatestVersionOnly(boolean latestVersionOnly) {
+    this.latestVersionOnly = latestVersionOnly;
+  }
+
+}
@@ -0,0 +1,210 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.dto;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Summary of a {@link KickstartWorkflow}, stored next to the process xml when the workflow
+ * is deployed, so workflow listings can show it without parsing the xml.
+ *
+ * The summary is stored as a single line of text, see {@link #format()}.
+ *
+ * @author Joram Barrez
+ */
+public class KickstartWorkflowSummary {
+
+  /** Suffix of the summary resource, which has the same base name as the process xml */
+  public static final String RESOURCE_SUFFIX = ".summary";
+
+  protected static final String ENCODING = "UTF-8";
+
+  protected static final String PROCESS_RESOURCE_SUFFIX = ".bpmn20.xml";
+
+  protected int nrOfTasks;
+  protected int nrOfParallelBlocks;
+  protected int nrOfFormProperties;
+  protected boolean initiatorAssigned;
+  protected Set<String> assignees = new TreeSet<String>();
+  protected Set<String> groups = new TreeSet<String>();
+
+  public static KickstartWorkflowSummary create(KickstartWorkflow workflow) {
+    KickstartWorkflowSummary summary = new KickstartWorkflowSummary();
+    summary.nrOfTasks = workflow.getTasks().size();
+    for (KickstartTaskBlock taskBlock : workflow.getTaskBlocks()) {
+      if (taskBlock.getNrOfTasks() > 1) {
+        summary.nrOfParallelBlocks++;
+      }
+    }
+
+    for (KickstartTask task : workflow.getTasks()) {
+      if (task instanceof KickstartUserTask) {
+        KickstartUserTask userTask = (KickstartUserTask) task;
+        if (userTask.isAssigneeInitiator()) {
+          summary.initiatorAssigned = true; // the assignee is then an expression, added when marshalling
+        } else if (userTask.getAssignee() != null && userTask.getAssignee().length() > 0) {
+          summary.assignees.add(userTask.getAssignee());
+        }
+        if (userTask.getGroups() != null) {
+          for (String group : userTask.getGroups().split(",")) {
+            if (group.trim().length() > 0) {
+              summary.groups.add(group.trim());
+            }
+          }
+        }
+        if (userTask.getForm() != null && userTask.getForm().getFormProperties() != null) {
+          summary.nrOfFormProperties += userTask.getForm().getFormProperties().size();
+        }
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Returns the name of the summary resource of the given process xml resource,
+   * or null when it isn't a .bpmn20.xml resource as deployed by KickStart.
+   */
+  public static String getResourceName(String processResourceName) {
+    if (processResourceName == null || !processResourceName.endsWith(PROCESS_RESOURCE_SUFFIX)) {
+      return null;
+    }
+    return processResourceName.substring(0, processResourceName.length() - PROCESS_RESOURCE_SUFFIX.length()) + RESOURCE_SUFFIX;
+  }
+
+  /**
+   * Parses a summary that was created with {@link #format()}. Unknown entries, 
+   * and entries of which the value can't be parsed, are ignored.
+   */
+  public static KickstartWorkflowSummary parse(String text) {
+    KickstartWorkflowSummary summary = new KickstartWorkflowSummary();
+    for (String entry : text.trim().split(";")) {
+      int index = entry.indexOf('=');
+      if (index < 0) {
+        continue;
+      }
+      String key = entry.substring(0, index);
+      String value = entry.substring(index + 1);
+      if ("tasks".equals(key)) {
+        summary.nrOfTasks = parseCount(value, summary.nrOfTasks);
+      } else if ("parallelBlocks".equals(key)) {
+        summary.nrOfParallelBlocks = parseCount(value, summary.nrOfParallelBlocks);
+      } else if ("formProperties".equals(key)) {
+        summary.nrOfFormProperties = parseCount(value, summary.nrOfFormProperties);
+      } else if ("initiator".equals(key)) {
+        summary.initiatorAssigned = Boolean.parseBoolean(value);
+      } else if ("assignees".equals(key)) {
+        parseValues(value, summary.assignees);
+      } else if ("groups".equals(key)) {
+        parseValues(value, summary.groups);
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Returns the summary as one line of 'key=value' entries, separated by ';'.
+   * Assignees and groups are url encoded and separated by ','.
+   */
+  public String format() {
+    StringBuilder strb = new StringBuilder();
+    strb.append("tasks=").append(nrOfTasks)
+        .append(";parallelBlocks=").append(nrOfParallelBlocks)
+        .append(";formProperties=").append(nrOfFormProperties)
+        .append(";initiator=").append(initiatorAssigned);
+    strb.append(";assignees=");
+    formatValues(assignees, strb);
+    strb.append(";groups=");
+    formatValues(groups, strb);
+    return strb.toString();
+  }
+
+  protected static int parseCount(String value, int defaultValue) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  protected static void formatValues(Set<String> values, StringBuilder strb) {
+    try {
+      boolean first = true;
+      for (String value : values) {
+        if (!first) {
+          strb.append(',');
+        }
+        strb.append(URLEncoder.encode(value, ENCODING));
+        first = false;
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  protected static void parseValues(String text, Set<String> values) {
+    try {
+      for (String value : text.split(",")) {
+        if (value.length() > 0) {
+          values.add(URLDecoder.decode(value, ENCODING));
+        }
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int getNrOfTasks() {
+    return nrOfTasks;
+  }
+  public void setNrOfTasks(int nrOfTasks) {
+    this.nrOfTasks = nrOfTasks;
+  }
+  public int getNrOfParallelBlocks() {
+    return nrOfParallelBlocks;
+  }
+  public void setNrOfParallelBlocks(int nrOfParallelBlocks) {
+    this.nrOfParallelBlocks = nrOfParallelBlocks;
+  }
+  public int getNrOfFormProperties() {
+    return nrOfFormProperties;
+  }
+  public void setNrOfFormProperties(int nrOfFormProperties) {
+    this.nrOfFormProperties = nrOfFormProperties;
+  }
+  /**
+   * True when at least one user task is assigned to the initiator of the process.
+   */
+  public boolean isInitiatorAssigned() {
+    return initiatorAssigned;
+  }
+  public void setInitiatorAssigned(boolean initiatorAssigned) {
+    this.initiatorAssigned = initiatorAssigned;
+  }
+  public Set<String> getAssignees() {
+    return assignees;
+  }
+  public void setAssignees(Set<String> assignees) {
+    this.assignees = assignees;
+  }
+  public Set<String> getGroups() {
+    return groups;
+  }
+  public void setGroups(Set<String> groups) {
+    this.groups = groups;
+  }
+
+}
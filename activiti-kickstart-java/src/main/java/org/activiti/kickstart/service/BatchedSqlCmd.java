@@ -0,0 +1,112 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+
+/**
+ * Base class for commands that query the engine tables for a set of ids at once.
+ *
+ * The query api of the engine can only filter on a single id, which costs one query per id.
+ * Hence the plain sql on the connection of the command context. Ids are passed in batches
+ * of {@link #MAX_IDS_PER_QUERY}, to stay below the parameter limits of the databases.
+ * Like in the mapping files of the engine, table names are written as ${prefix}ACT_...
+ * and get the databaseTablePrefix of the process engine configuration.
+ *
+ * @author jbarrez
+ */
+public abstract class BatchedSqlCmd<T> implements Command<T> {
+
+	protected static final int MAX_IDS_PER_QUERY = 250;
+	protected static final String TABLE_PREFIX_PLACEHOLDER = "${prefix}";
+
+	/**
+	 * Returns the connection of the session of the command context, it must not be closed.
+	 */
+	protected Connection getConnection(CommandContext commandContext) {
+		return commandContext.getDbSqlSession().getSqlSession().getConnection();
+	}
+
+	/**
+	 * Prepares the given sql, followed by an 'in' list with a parameter per id, followed by the suffix.
+	 */
+	protected PreparedStatement prepare(Connection connection, String sql, String suffix, List<String> ids) throws SQLException {
+		StringBuilder strb = new StringBuilder(withTablePrefix(sql));
+		appendParameterList(strb, ids.size());
+		strb.append(suffix);
+
+		PreparedStatement statement = connection.prepareStatement(strb.toString());
+		setParameters(statement, 0, ids);
+		return statement;
+	}
+
+	/**
+	 * Prepares the given sql, followed by an 'in' list for the ids, the infix and an 'in' list for the other ids.
+	 */
+	protected PreparedStatement prepare(Connection connection, String sql, List<String> ids, String infix, List<String> otherIds) throws SQLException {
+		StringBuilder strb = new StringBuilder(withTablePrefix(sql));
+		appendParameterList(strb, ids.size());
+		strb.append(infix);
+		appendParameterList(strb, otherIds.size());
+
+		PreparedStatement statement = connection.prepareStatement(strb.toString());
+		setParameters(statement, 0, ids);
+		setParameters(statement, ids.size(), otherIds);
+		return statement;
+	}
+
+	protected void appendParameterList(StringBuilder strb, int nrOfParameters) {
+		strb.append('(');
+		for (int i = 0; i < nrOfParameters; i++) {
+			strb.append(i > 0 ? ", ?" : "?");
+		}
+		strb.append(')');
+	}
+
+	protected void setParameters(PreparedStatement statement, int offset, List<String> values) throws SQLException {
+		for (int i = 0; i < values.size(); i++) {
+			statement.setString(offset + i + 1, values.get(i));
+		}
+	}
+
+	/**
+	 * Replaces the ${prefix} placeholders in the sql by the databaseTablePrefix of the engine.
+	 */
+	protected String withTablePrefix(String sql) {
+		String tablePrefix = Context.getProcessEngineConfiguration().getDatabaseTablePrefix();
+		return sql.replace(TABLE_PREFIX_PLACEHOLDER, tablePrefix != null ? tablePrefix : "");
+	}
+
+	protected List<List<String>> batches(Collection<String> ids) {
+		List<List<String>> batches = new ArrayList<List<String>>();
+		List<String> batch = null;
+		for (String id : ids) {
+			if (batch == null || batch.size() == MAX_IDS_PER_QUERY) {
+				batch = new ArrayList<String>(Math.min(MAX_IDS_PER_QUERY, ids.size()));
+				batches.add(batch);
+			}
+			batch.add(id);
+		}
+		return batches;
+	}
+
+}
@@ -12,6 +12,10 @@
  */
 package org.activiti.kickstart.service;
 
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
 import org.activiti.kickstart.bpmn20.model.Definitions;
 import org.activiti.kickstart.bpmn20.model.FlowElement;
 import org.activiti.kickstart.bpmn20.model.activity.type.ScriptTask;
@@ -36,6 +40,24 @@ public interface Bpmn20MarshallingService {
 	 */
 	String marshallWorkflow(KickstartWorkflow kickstartWorkflowDto);
 	
+	/**
+	 * Marshalls the given {@link KickstartWorkflow} to BPMN 2.0 XML, written as UTF-8 to the given stream.
+	 * The stream is not closed.
+	 */
+	void marshallWorkflow(KickstartWorkflow kickstartWorkflowDto, OutputStream outputStream);
+	
+	/**
+	 * Marshalls all given workflows, in parallel where possible. The returned list contains
+	 * the BPMN 2.0 XML of every workflow, in the iteration order of the given collection.
+	 */
+	List<String> marshallWorkflows(Collection<KickstartWorkflow> kickstartWorkflowDtos);
+	
+	/**
+	 * Marshalls an already converted BPMN 2.0 graph (eg. enriched with DI by the diagram generator), 
+	 * written as UTF-8 to the given stream. The stream is not closed.
+	 */
+	void marshallDefinitions(Definitions definitions, OutputStream outputStream);
+	
 	/**
 	 * Converts the given {@link KickstartWorkflow} into a JAXB representation of the BPMN 2.0 business process.
 	 */
@@ -0,0 +1,64 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.activiti.engine.impl.interceptor.CommandContext;
+
+/**
+ * Looks up the latest deployed version of each of the given process definition keys,
+ * with one aggregate query per batch of keys. Keys without a deployed process definition
+ * are not part of the result.
+ *
+ * @author jbarrez
+ */
+public class FetchLatestVersionsCmd extends BatchedSqlCmd<Map<String, Integer>> {
+
+	protected static final String LATEST_VERSIONS_SQL = "select KEY_, max(VERSION_) from ${prefix}ACT_RE_PROCDEF where KEY_ in ";
+	protected static final String LATEST_VERSIONS_GROUP_BY = " group by KEY_";
+
+	protected Collection<String> processDefinitionKeys;
+
+	public FetchLatestVersionsCmd(Collection<String> processDefinitionKeys) {
+		this.processDefinitionKeys = processDefinitionKeys;
+	}
+
+	public Map<String, Integer> execute(CommandContext commandContext) {
+		Map<String, Integer> latestVersions = new HashMap<String, Integer>();
+		try {
+			for (List<String> batch : batches(processDefinitionKeys)) {
+				PreparedStatement statement = prepare(getConnection(commandContext), LATEST_VERSIONS_SQL, LATEST_VERSIONS_GROUP_BY, batch);
+				try {
+					ResultSet resultSet = statement.executeQuery();
+					while (resultSet.next()) {
+						latestVersions.put(resultSet.getString(1), resultSet.getInt(2));
+					}
+					resultSet.close();
+				} finally {
+					statement.close();
+				}
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException("Could not fetch latest process definition versions", e);
+		}
+		return latestVersions;
+	}
+
+}
@@ -18,6 +18,7 @@ import java.util.Map;
 
 import org.activiti.kickstart.dto.KickstartWorkflow;
 import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowInfoCriteria;
 
 /**
  * This is the service you'll use if you want to integrate the Activiti Kickstart functionality. 
@@ -45,8 +46,18 @@ public interface KickstartService {
 	 */
 	List<KickstartWorkflowInfo> findWorkflowInformation(boolean includeCounts);
 	
+	/**
+	 * Same as {@link #findWorkflowInformation(boolean)}, but only returns the page
+	 * of workflows that is selected by the given criteria. The paging, filtering and 
+	 * sorting is done by the underlying repository, so the time this takes depends on 
+	 * the size of the page and not on the number of deployed workflows.
+	 */
+	List<KickstartWorkflowInfo> findWorkflowInformation(KickstartWorkflowInfoCriteria criteria, boolean includeCounts);
+	
 	/**
 	 * Find the {@link KickstartWorkflowInfo} of one specific kickstart workflow.
+	 * 
+	 * @throws IllegalArgumentException when processDefinitionId is null
 	 */
 	KickstartWorkflowInfo findWorkflowInformation(String processDefinitionId, boolean includeCounts);
 
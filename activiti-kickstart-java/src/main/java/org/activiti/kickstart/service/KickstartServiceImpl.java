@@ -13,31 +13,41 @@
 package org.activiti.kickstart.service;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import java.util.Set;
 
 import org.activiti.engine.RepositoryService;
+import org.activiti.engine.impl.ServiceImpl;
 import org.activiti.engine.impl.util.IoUtil;
 import org.activiti.engine.repository.Deployment;
 import org.activiti.engine.repository.DeploymentBuilder;
 import org.activiti.engine.repository.ProcessDefinition;
+import org.activiti.engine.repository.ProcessDefinitionQuery;
 import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
 import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
 import org.activiti.kickstart.dto.KickstartWorkflow;
 import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowInfoCriteria;
+import org.activiti.kickstart.dto.KickstartWorkflowSummary;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 
 /**
  * @author Joram Barrez
  */
 public class KickstartServiceImpl implements KickstartService {
 
+	protected static final int FILTER_PAGE_SIZE = 100;
+
 	protected RepositoryService repositoryService;
 	protected TransformationService transformationService;
 	protected Bpmn20MarshallingService marshallingService;
+	protected Bpmn20JaxbContext.Mode jaxbMode; // null: the transformation service's own setting
 	
 	// Kickstart operations //////////////////////////////////////////////////////////////
 
@@ -47,13 +57,21 @@ public class KickstartServiceImpl implements KickstartService {
 		String bpmn20XmlResourceName = generateBpmnResourceName(kickstartWorkflow.getName());
 		DeploymentBuilder deploymentBuilder = repositoryService.createDeployment().name(deploymentName);
 
+		// Converted only once: the image and the xml are generated from the same graph
+		Definitions definitions = marshallingService.convertToBpmn(kickstartWorkflow);
+
 		// png image (must go first, since it will add DI to the process xml)
 		ProcessDiagramGenerator diagramGenerator = new ProcessDiagramGenerator(kickstartWorkflow, marshallingService);
-		deploymentBuilder.addInputStream(bpmn20XmlResourceName.replace(".bpmn20.xml", ".png"), diagramGenerator.execute());
+		deploymentBuilder.addInputStream(bpmn20XmlResourceName.replace(".bpmn20.xml", ".png"), diagramGenerator.execute(definitions));
+
+		// bpmn 2.0 xml, marshalled as UTF-8 bytes straight into the buffer handed to the deployment
+		ByteArrayOutputStream workflowXml = new ByteArrayOutputStream();
+		marshallingService.marshallDefinitions(definitions, workflowXml);
+		deploymentBuilder.addInputStream(bpmn20XmlResourceName, workflowXml.toInputStream());
 
-		// bpmn 2.0 xml
-    	String workflowXml = marshallingService.marshallWorkflow(kickstartWorkflow);
-		deploymentBuilder.addString(bpmn20XmlResourceName,workflowXml);
+		// Summary, read when listing the workflows instead of the xml
+		deploymentBuilder.addString(KickstartWorkflowSummary.getResourceName(bpmn20XmlResourceName), 
+				KickstartWorkflowSummary.create(kickstartWorkflow).format());
 		Deployment deployment = deploymentBuilder.deploy();
 		return deployment.getId();
 	}
@@ -71,8 +89,74 @@ public class KickstartServiceImpl implements KickstartService {
 		return transformationService.convertToWorkflowInfoList(processDefinitions, includeCounts);
 	}
 	
+	public List<KickstartWorkflowInfo> findWorkflowInformation(KickstartWorkflowInfoCriteria criteria, boolean includeCounts) {
+		String nameFilter = criteria.getNameFilter() != null && criteria.getNameFilter().length() > 0 ? criteria.getNameFilter() : null;
+		boolean filterOnName = nameFilter != null;
+		ProcessDefinitionQuery query = repositoryService
+				.createProcessDefinitionQuery()
+				.processDefinitionKeyLike("adhoc_%");
+		if (filterOnName) {
+			// The query can't escape wildcards: the part of the filter before the first % or _
+			// narrows the query, the name filter itself is matched in code
+			query.processDefinitionNameLike(getLiteralPrefix(nameFilter) + "%");
+		} else if (criteria.isLatestVersionOnly()) {
+			query.latestVersion(); // one row per key
+		}
+
+		if (criteria.getSort() == KickstartWorkflowInfoCriteria.Sort.KEY) {
+			query.orderByProcessDefinitionKey();
+		} else {
+			query.orderByProcessDefinitionName();
+		}
+		if (criteria.isAscending()) {
+			query.asc();
+		} else {
+			query.desc();
+		}
+		query.orderByProcessDefinitionVersion().desc();
+
+		List<ProcessDefinition> processDefinitions = null;
+		boolean matchNamesInCode = filterOnName && !nameFilter.equals(getLiteralPrefix(nameFilter));
+		if (matchNamesInCode || (filterOnName && criteria.isLatestVersionOnly())) {
+			processDefinitions = filterPage(query, matchNamesInCode ? nameFilter : null, criteria.isLatestVersionOnly(), criteria.getStart(), criteria.getSize());
+		} else {
+			processDefinitions = query.listPage(criteria.getStart(), criteria.getSize());
+		}
+		return transformationService.convertToWorkflowInfoList(processDefinitions, includeCounts);
+	}
+	
+	/**
+	 * Accepts both a process definition id and a key, which returns the latest version of the workflow.
+	 * Either way it's one query on an indexed column, which makes this a cheap existence check:
+	 * without counts, the info is built from the process definition alone and has no
+	 * create time or summary.
+	 */
 	public KickstartWorkflowInfo findWorkflowInformation(String processDefinitionId, boolean includeCounts) {
-	  throw new UnsupportedOperationException();
+		if (processDefinitionId == null) {
+			throw new IllegalArgumentException("processDefinitionId is null");
+		}
+		
+		ProcessDefinitionQuery query = repositoryService.createProcessDefinitionQuery();
+		if (processDefinitionId.indexOf(':') > -1) { // ids are of the form key:version:uniqueId
+			query.processDefinitionId(processDefinitionId);
+		} else {
+			query.processDefinitionKey(processDefinitionId).latestVersion();
+		}
+		
+		ProcessDefinition processDefinition = query.singleResult();
+		if (processDefinition == null) {
+			return null;
+		}
+		if (!includeCounts) {
+			KickstartWorkflowInfo workflowInfo = new KickstartWorkflowInfo();
+			workflowInfo.setId(processDefinition.getId());
+			workflowInfo.setKey(processDefinition.getKey());
+			workflowInfo.setName(processDefinition.getName());
+			workflowInfo.setVersion(processDefinition.getVersion());
+			workflowInfo.setDeploymentId(processDefinition.getDeploymentId());
+			return workflowInfo;
+		}
+		return transformationService.convertToWorkflowInfoList(Collections.singletonList(processDefinition), includeCounts).get(0);
 	}
 
 	public KickstartWorkflow findWorkflowById(String id) {
@@ -81,24 +165,14 @@ public class KickstartServiceImpl implements KickstartService {
 				.createProcessDefinitionQuery().processDefinitionId(id)
 				.singleResult();
 
-		// Get BPMN 2.0 XML file from database and parse it with JAXB
+		// Get BPMN 2.0 XML file from database and convert it to the internal model
 		InputStream is = null;
-		Definitions definitions = null;
 		try {
 			is = repositoryService.getResourceAsStream(processDefinition.getDeploymentId(), processDefinition.getResourceName());
-
-			JAXBContext jc = JAXBContext.newInstance(Definitions.class);
-			Unmarshaller um = jc.createUnmarshaller();
-			definitions = (Definitions) um.unmarshal(is);
-			
-		} catch (JAXBException e) {
-			throw new RuntimeException("Could not unmarshall workflow xml", e);
+			return transformationService.convertToKickstartWorkflow(is);
 		} finally {
 			IoUtil.closeSilently(is);
 		}
-
-		// Convert JAXB to internal model
-		return transformationService.convertToKickstartWorkflow( definitions);
 	}
 
 	public InputStream getProcessImage(String processDefinitionId) {
@@ -137,6 +211,95 @@ public class KickstartServiceImpl implements KickstartService {
 		return processName.replace(" ", "_") + ".bpmn20.xml";
 	}
 	
+	/**
+	 * Returns the part of the name filter before its first LIKE wildcard.
+	 */
+	protected String getLiteralPrefix(String nameFilter) {
+		int end = nameFilter.length();
+		for (int i = 0; i < nameFilter.length(); i++) {
+			char c = nameFilter.charAt(i);
+			if (c == '%' || c == '_') {
+				end = i;
+				break;
+			}
+		}
+		return nameFilter.substring(0, end);
+	}
+	
+	/**
+	 * Keeps the requested page of the process definitions whose name starts with the name filter
+	 * (taken literally, also when it contains % or _) and, when asked, that are the latest version
+	 * of their key.
+	 * 
+	 * Needed when filtering on name, since latestVersion() can't be combined with a name filter
+	 * in the process definition query. The query is read a page at a time, until the requested
+	 * page is filled, and the latest versions of the keys of each page are looked up at once.
+	 */
+	protected List<ProcessDefinition> filterPage(ProcessDefinitionQuery query, String nameFilter, 
+			boolean latestVersionOnly, int start, int size) {
+		List<ProcessDefinition> page = new ArrayList<ProcessDefinition>(Math.min(size, FILTER_PAGE_SIZE));
+		int nrOfSkipped = 0;
+		int firstResult = 0;
+		while (page.size() < size) {
+			List<ProcessDefinition> processDefinitions = query.listPage(firstResult, FILTER_PAGE_SIZE);
+			
+			Map<String, Integer> latestVersions = null;
+			if (latestVersionOnly) {
+				Set<String> keys = new HashSet<String>();
+				for (ProcessDefinition processDefinition : processDefinitions) {
+					keys.add(processDefinition.getKey());
+				}
+				latestVersions = fetchLatestVersions(keys);
+			}
+			
+			for (ProcessDefinition processDefinition : processDefinitions) {
+				if (matches(processDefinition, nameFilter, latestVersions)) {
+					if (nrOfSkipped < start) {
+						nrOfSkipped++;
+					} else if (page.size() < size) {
+						page.add(processDefinition);
+					} else {
+						break;
+					}
+				}
+			}
+			
+			if (processDefinitions.size() < FILTER_PAGE_SIZE || firstResult > Integer.MAX_VALUE - FILTER_PAGE_SIZE) {
+				break; // last page of the query
+			}
+			firstResult += FILTER_PAGE_SIZE;
+		}
+		return page;
+	}
+	
+	protected boolean matches(ProcessDefinition processDefinition, String nameFilter, Map<String, Integer> latestVersions) {
+		if (nameFilter != null && (processDefinition.getName() == null || !processDefinition.getName().startsWith(nameFilter))) {
+			return false;
+		}
+		if (latestVersions != null) {
+			Integer latestVersion = latestVersions.get(processDefinition.getKey());
+			return latestVersion != null && latestVersion.intValue() == processDefinition.getVersion();
+		}
+		return true;
+	}
+	
+	protected Map<String, Integer> fetchLatestVersions(Set<String> keys) {
+		if (repositoryService instanceof ServiceImpl) {
+			return ((ServiceImpl) repositoryService).getCommandExecutor().execute(new FetchLatestVersionsCmd(keys));
+		}
+		
+		// Not running against an engine: one query per key
+		Map<String, Integer> latestVersions = new HashMap<String, Integer>();
+		for (String key : keys) {
+			ProcessDefinition latest = repositoryService.createProcessDefinitionQuery()
+					.processDefinitionKey(key).latestVersion().singleResult();
+			if (latest != null) {
+				latestVersions.put(key, latest.getVersion());
+			}
+		}
+		return latestVersions;
+	}
+	
 	// Getters and Setters //////////////////////////////////////////////////////////////
 	
 	public RepositoryService getRepositoryService() {
@@ -153,6 +316,7 @@ public class KickstartServiceImpl implements KickstartService {
 
 	public void setTransformationService(TransformationService transformationService) {
 		this.transformationService = transformationService;
+		applyJaxbMode();
 	}
 	
 	public Bpmn20MarshallingService getMarshallingService() {
@@ -162,5 +326,27 @@ public class KickstartServiceImpl implements KickstartService {
 	public void setMarshallingService(Bpmn20MarshallingService marshallingService) {
 		this.marshallingService = marshallingService;
 	}
+	
+	public Bpmn20JaxbContext.Mode getJaxbMode() {
+		if (jaxbMode == null && transformationService instanceof TransformationServiceImpl) {
+			return ((TransformationServiceImpl) transformationService).getJaxbMode();
+		}
+		return jaxbMode;
+	}
+	
+	/**
+	 * Selects the JAXB binding used to read stored BPMN 2.0 xml, see {@link Bpmn20JaxbContext.Mode}.
+	 * The xml is read by the transformation service, so the mode is passed on to it.
+	 */
+	public void setJaxbMode(Bpmn20JaxbContext.Mode jaxbMode) {
+		this.jaxbMode = jaxbMode;
+		applyJaxbMode();
+	}
+	
+	protected void applyJaxbMode() {
+		if (jaxbMode != null && transformationService instanceof TransformationServiceImpl) {
+			((TransformationServiceImpl) transformationService).setJaxbMode(jaxbMode);
+		}
+	}
 
 }
\ No newline at end of file
@@ -12,14 +12,26 @@
  */
 package org.activiti.kickstart.service;
 
-import java.io.StringWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLStreamException;
 
 import org.activiti.kickstart.bpmn20.model.Definitions;
 import org.activiti.kickstart.bpmn20.model.Documentation;
@@ -41,6 +53,8 @@ import org.activiti.kickstart.bpmn20.model.extension.ExtensionElements;
 import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
 import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitiFormProperty;
 import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.activiti.kickstart.bpmn20.util.Bpmn20StaxWriter;
 import org.activiti.kickstart.dto.KickstartFormProperty;
 import org.activiti.kickstart.dto.KickstartMailTask;
 import org.activiti.kickstart.dto.KickstartMailTask.Field;
@@ -51,6 +65,7 @@ import org.activiti.kickstart.dto.KickstartTaskBlock;
 import org.activiti.kickstart.dto.KickstartUserTask;
 import org.activiti.kickstart.dto.KickstartWorkflow;
 import org.activiti.kickstart.util.ExpressionUtil;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 
 /**
  * 
@@ -58,25 +73,159 @@ import org.activiti.kickstart.util.ExpressionUtil;
  */
 public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 	
+	private static final Logger LOGGER = Logger.getLogger(MarshallingServiceImpl.class.getName());
+	
+	/** Process variable that holds the user that started the process, see {@link KickstartUserTask#isAssigneeInitiator()} */
+	protected static final String INITIATOR_NAME = "ks_initiator";
+	
+	protected Bpmn20JaxbContext.Mode jaxbMode = Bpmn20JaxbContext.Mode.FULL;
+	protected Bpmn20StaxWriter definitionsWriter = new Bpmn20StaxWriter();
+	protected int bulkThreads = Runtime.getRuntime().availableProcessors();
+	protected ExecutorService bulkExecutor;
+	protected boolean bulkExecutorCreated;
+	
+	/**
+	 * The xml is cached on the workflow, which drops it as soon as the workflow or one of its
+	 * tasks is changed: previewing an unchanged workflow again converts and marshals nothing.
+	 */
 	public String marshallWorkflow(KickstartWorkflow kickstartWorkflow) {
+		String profile = getOutputProfile();
+		String xml = kickstartWorkflow.getCachedXml(profile);
+		if (xml == null) {
+			xml = createXml(kickstartWorkflow);
+			kickstartWorkflow.setCachedXml(profile, xml);
+		}
+		return xml;
+	}
+	
+	protected String createXml(KickstartWorkflow kickstartWorkflow) {
+		if (isCompact()) {
+			ByteArrayOutputStream xml = new ByteArrayOutputStream();
+			marshallWorkflow(kickstartWorkflow, xml);
+			try {
+				return xml.toString("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException("Could not marshal workflow", e);
+			}
+		}
+		
+		try {
+			return Bpmn20JaxbContext.getInstance(jaxbMode).marshal(convertToBpmn(kickstartWorkflow));
+		} catch (JAXBException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		}
+	}
+	
+	public void marshallWorkflow(KickstartWorkflow kickstartWorkflow, OutputStream outputStream) {
+		marshallDefinitions(convertToBpmn(kickstartWorkflow), outputStream);
+	}
+	
+	/**
+	 * Marshals the workflows on the {@link #getBulkExecutor() bulk executor}, which lives as long 
+	 * as this service. Every thread uses its own JAXB marshaller (see {@link Bpmn20JaxbContext}).
+	 * 
+	 * The same workflow instance occurring multiple times is marshalled only once.
+	 */
+	public List<String> marshallWorkflows(Collection<KickstartWorkflow> kickstartWorkflows) {
+		List<String> workflowXmls = new ArrayList<String>(kickstartWorkflows.size());
+		if (bulkThreads <= 1 || kickstartWorkflows.size() <= 1) {
+			for (KickstartWorkflow kickstartWorkflow : kickstartWorkflows) {
+				workflowXmls.add(marshallWorkflow(kickstartWorkflow));
+			}
+			return workflowXmls;
+		}
+		
+		ExecutorService executorService = getBulkExecutor();
+		List<Future<String>> futures = new ArrayList<Future<String>>(kickstartWorkflows.size());
+		try {
+			Map<KickstartWorkflow, Future<String>> submitted = new IdentityHashMap<KickstartWorkflow, Future<String>>();
+			for (final KickstartWorkflow kickstartWorkflow : kickstartWorkflows) {
+				Future<String> future = submitted.get(kickstartWorkflow);
+				if (future == null) {
+					future = executorService.submit(new Callable<String>() {
+						public String call() throws Exception {
+							return marshallWorkflow(kickstartWorkflow);
+						}
+					});
+					submitted.put(kickstartWorkflow, future);
+				}
+				futures.add(future);
+			}
+			
+			for (Future<String> future : futures) {
+				workflowXmls.add(future.get());
+			}
+			return workflowXmls;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while marshalling workflows", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("Could not marshal workflow", e.getCause());
+		} finally {
+			// Nothing is left running for a failed call, the executor itself stays available
+			for (Future<String> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+	
+	public void marshallDefinitions(Definitions definitions, OutputStream outputStream) {
+		if (!isCompact() || !writeDefinitions(definitions, outputStream)) {
+			marshalWithJaxb(definitions, outputStream);
+		}
+	}
+	
+	protected void marshalWithJaxb(Definitions definitions, OutputStream outputStream) {
 		try {
-			JAXBContext jaxbContext = JAXBContext.newInstance(Definitions.class);
-			Marshaller marshaller = jaxbContext.createMarshaller();
-			StringWriter writer = new StringWriter();
-			marshaller.marshal(convertToBpmn(kickstartWorkflow), writer);
-			return writer.toString();
+			Bpmn20JaxbContext.getInstance(jaxbMode).marshal(definitions, outputStream);
 		} catch (JAXBException e) {
 			throw new RuntimeException("Could not marshal workflow", e);
 		}
 	}
 	
+	/**
+	 * Writes the definitions with the {@link Bpmn20StaxWriter}. Returns false, without
+	 * writing anything, if the definitions contain elements the writer doesn't support.
+	 */
+	protected boolean writeDefinitions(Definitions definitions, OutputStream outputStream) {
+		// Buffered first, so nothing reaches the stream when JAXB has to take over
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			definitionsWriter.write(definitions, buffer);
+		} catch (Bpmn20StaxWriter.UnsupportedContentException e) {
+			LOGGER.log(Level.FINE, "Definitions can't be written by the streaming writer, using JAXB", e);
+			return false;
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		}
+		
+		try {
+			buffer.writeTo(outputStream);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns a new JAXB version of this workflow, owned by the caller: drawing it 
+	 * (see ProcessDiagramGenerator) adds the diagram interchange to it. Only the 
+	 * marshalled xml is cached, see {@link #marshallWorkflow(KickstartWorkflow)}.
+	 */
+	public Definitions convertToBpmn(KickstartWorkflow kickstartWorkflow) {
+		return createDefinitions(kickstartWorkflow);
+	}
+	
 	/**
 	 * Generate the JAXB version of this workflow.
 	 * 
 	 * Extremely important: the flowelements are added in topological order,
 	 * from left to right and top to bottom.
 	 */
-	public Definitions convertToBpmn(KickstartWorkflow kickstartWorkflow) {
+	protected Definitions createDefinitions(KickstartWorkflow kickstartWorkflow) {
 
 		Definitions definitions = new Definitions();
 		definitions.setTargetNamespace("kickstart");
@@ -107,19 +256,8 @@ public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 		StartEvent startEvent = new StartEvent();
 		startEvent.setId(KickstartWorkflow.START_NAME);
 		
-		// Initiator
-		String initiatorName = "ks_initiator";
-		startEvent.setInitiator(initiatorName);
-		
-		// Give all user tasks that use 'initiator' the same assignee 
-    for (KickstartTask kickstartTask : kickstartWorkflow.getTasks()) {
-      if (kickstartTask instanceof KickstartUserTask) {
-        KickstartUserTask kickstartUserTask = (KickstartUserTask) kickstartTask;
-        if (kickstartUserTask.isAssigneeInitiator()) {
-          kickstartUserTask.setAssignee("${" + initiatorName + "}");
-        }
-      }
-    }
+		// Initiator, user tasks that use 'initiator' get it as assignee (see convertToBPMN(KickstartUserTask))
+		startEvent.setInitiator(INITIATOR_NAME);
 		
 		// TODO: For now, fixed start-task is used instead of adhoc-created one. 
 		startEvent.setFormKey("wf:submitAdhocTask"); // used to be ks:genericStartTask (joram)
@@ -143,13 +281,12 @@ public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 				generatedTask.setId("task_" + index++);
 				generatedTask.setName(kickstartTask.getName());
 
-				// TODO: disabled until I figure out how to do CDATA with JaxB
-//				// Description
-//				if (kickstartTask.getDescription() != null) {
-//					Documentation taskDocumentation = new Documentation(ExpressionUtil.replaceWhiteSpaces(kickstartTask.getDescription()));
-//					taskDocumentation.setId(generatedTask.getId() + "_documentation");
-//					generatedTask.getDocumentation().add(taskDocumentation);
-//				}
+				// Description
+				if (kickstartTask.getDescription() != null) {
+					Documentation taskDocumentation = new Documentation(ExpressionUtil.replaceWhiteSpaces(kickstartTask.getDescription()));
+					taskDocumentation.setId(generatedTask.getId() + "_documentation");
+					generatedTask.getDocumentation().add(taskDocumentation);
+				}
 				// process.getFlowElement().add(userTask);
 				TaskBlock.add(generatedTask);
 			}
@@ -194,13 +331,14 @@ public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 	public UserTask convertToBPMN(KickstartUserTask kickstartUserTask) {
 		UserTask userTask = new UserTask();
 
-		// assignee
-		if (kickstartUserTask.getAssignee() != null && !"".equals(kickstartUserTask.getAssignee())) {
+		// assignee, the workflow itself is never changed by the conversion
+		String assignee = kickstartUserTask.isAssigneeInitiator() ? "${" + INITIATOR_NAME + "}" : kickstartUserTask.getAssignee();
+		if (assignee != null && !"".equals(assignee)) {
 			HumanPerformer humanPerformer = new HumanPerformer();
 			humanPerformer.setId(userTask.getId() + "_humanPerformer");
 			ResourceAssignmentExpression assignmentExpression = new ResourceAssignmentExpression();
 			assignmentExpression.setId(userTask.getId() + "_humanPerformer_assignmentExpression");
-			FormalExpression formalExpression = new FormalExpression(kickstartUserTask.getAssignee());
+			FormalExpression formalExpression = new FormalExpression(assignee);
 			formalExpression.setId(userTask.getId() + "_humanPerformer_formalExpressions");
 			assignmentExpression.setExpression(formalExpression);
 			humanPerformer.setResourceAssignmentExpression(assignmentExpression);
@@ -236,15 +374,7 @@ public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 				formProperty.setId(formPropertyDto.getProperty());
 				formProperty.setName(formPropertyDto.getProperty());
 				formProperty.setRequired(formPropertyDto.isRequired() ? "true" : "false");
-
-				String dtoType = formPropertyDto.getType();
-				String type = "string";
-				if ("number".equals(dtoType)) {
-					type = "long";
-				} else if ("date".equals(dtoType)) {
-					type = "date";
-				}
-				formProperty.setType(type);
+				formProperty.setType(getFormPropertyType(formPropertyDto));
 
 				formProperties.add(formProperty);
 			}
@@ -364,4 +494,114 @@ public class MarshallingServiceImpl implements Bpmn20MarshallingService {
 		return sequenceFlow;
 	}
 
+	/**
+	 * Maps the type of a KickStart form property on the Activiti form property type.
+	 */
+	protected String getFormPropertyType(KickstartFormProperty formProperty) {
+		String dtoType = formProperty.getType();
+		if ("number".equals(dtoType)) {
+			return "long";
+		} else if ("date".equals(dtoType)) {
+			return "date";
+		}
+		return "string";
+	}
+	
+	// Getters and Setters //////////////////////////////////////////////////////////////
+	
+	public Bpmn20JaxbContext.Mode getJaxbMode() {
+		return jaxbMode;
+	}
+	
+	/**
+	 * Selects the JAXB binding used for marshalling, see {@link Bpmn20JaxbContext.Mode}.
+	 */
+	public void setJaxbMode(Bpmn20JaxbContext.Mode jaxbMode) {
+		this.jaxbMode = jaxbMode;
+	}
+	
+	public int getBulkThreads() {
+		return bulkThreads;
+	}
+	
+	/**
+	 * Maximum number of threads used by {@link #marshallWorkflows(Collection)}, 
+	 * the number of available processors by default. Only applies to the executor
+	 * this service creates itself, so it must be set before the first bulk marshalling.
+	 */
+	public void setBulkThreads(int bulkThreads) {
+		this.bulkThreads = bulkThreads;
+	}
+	
+	/**
+	 * Returns the executor used for bulk marshalling. Unless one was given through 
+	 * {@link #setBulkExecutor(ExecutorService)}, a pool of {@link #getBulkThreads()} daemon 
+	 * threads is created on first use. It is shared by all bulk calls until {@link #shutdown()}.
+	 */
+	public synchronized ExecutorService getBulkExecutor() {
+		if (bulkExecutor == null) {
+			bulkExecutor = Executors.newFixedThreadPool(bulkThreads, new MarshallerThreadFactory());
+			bulkExecutorCreated = true;
+		}
+		return bulkExecutor;
+	}
+	
+	/**
+	 * Uses the given executor for bulk marshalling, eg. one managed by the container.
+	 * Its lifecycle stays with the caller: this service never shuts it down.
+	 */
+	public synchronized void setBulkExecutor(ExecutorService bulkExecutor) {
+		shutdown();
+		this.bulkExecutor = bulkExecutor;
+	}
+	
+	/**
+	 * Shuts down the bulk executor this service created itself, an executor given through
+	 * {@link #setBulkExecutor(ExecutorService)} is left alone. To be called when the service 
+	 * is discarded (eg. as destroy-method of the spring bean), a later bulk call creates a new pool.
+	 */
+	public synchronized void shutdown() {
+		if (bulkExecutorCreated) {
+			bulkExecutor.shutdownNow();
+			bulkExecutorCreated = false;
+		}
+		bulkExecutor = null;
+	}
+	
+	/**
+	 * Identifies the xml this service produces, workflows cache one xml per profile.
+	 */
+	protected String getOutputProfile() {
+		return getClass().getName() + "/" + jaxbMode + (isCompact() ? "/compact" : "");
+	}
+	
+	public boolean isCompact() {
+		return definitionsWriter.isCompact();
+	}
+	
+	/**
+	 * Selects the compact output profile: the xml is written without empty
+	 * documentation, without the ids of elements nothing refers to and with only
+	 * the namespaces that are used. The converted definitions are the same in
+	 * both profiles, only their serialization differs.
+	 */
+	public void setCompact(boolean compact) {
+		definitionsWriter.setCompact(compact);
+	}
+	
+	/**
+	 * Daemon threads, a bulk pool that wasn't shut down never blocks the shutdown of the vm.
+	 */
+	protected static class MarshallerThreadFactory implements ThreadFactory {
+		
+		protected final AtomicInteger threadIndex = new AtomicInteger(1);
+		
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "kickstart-marshaller-" + threadIndex.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+		
+	}
+
 }
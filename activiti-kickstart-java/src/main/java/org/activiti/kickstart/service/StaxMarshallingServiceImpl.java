@@ -0,0 +1,364 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.util.Bpmn20StaxWriter;
+import org.activiti.kickstart.bpmn20.util.EscapingStringAdapter;
+import org.activiti.kickstart.bpmn20.util.XmlTextWriter;
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartMailTask;
+import org.activiti.kickstart.dto.KickstartMailTask.Field;
+import org.activiti.kickstart.dto.KickstartScriptTask;
+import org.activiti.kickstart.dto.KickstartServiceTask;
+import org.activiti.kickstart.dto.KickstartTask;
+import org.activiti.kickstart.dto.KickstartTaskBlock;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.util.ExpressionUtil;
+
+/**
+ * {@link Bpmn20MarshallingService} that streams the BPMN 2.0 xml of a workflow
+ * directly to an {@link XMLStreamWriter}, without building the JAXB object graph
+ * first.
+ *
+ * The produced xml contains the same elements, attributes and ids as the JAXB
+ * based {@link MarshallingServiceImpl#marshallWorkflow(KickstartWorkflow)}, only the
+ * namespace prefixes differ. The ids of the human performer and potential owner
+ * are derived from the task id, where the JAXB path uses the random id of the
+ * user task before it gets its final id.
+ *
+ * Already converted definitions (eg. enriched with DI by the diagram generator)
+ * are written by the {@link Bpmn20StaxWriter}, which doesn't use reflection either.
+ * Definitions it doesn't support are marshalled with JAXB.
+ *
+ * The {@link #setCompact(boolean) compact} profile applies to both paths. The
+ * namespaces, ids, fields, form properties and scripts are written by the element
+ * writers of the {@link Bpmn20StaxWriter} on both paths as well.
+ *
+ * All other operations ({@link #convertToBpmn(KickstartWorkflow)} etc.) are
+ * inherited from the JAXB implementation.
+ *
+ * @author jbarrez
+ */
+public class StaxMarshallingServiceImpl extends MarshallingServiceImpl {
+
+	public static final String BPMN_NAMESPACE = Bpmn20StaxWriter.BPMN_NAMESPACE;
+	public static final String BPMNDI_NAMESPACE = Bpmn20StaxWriter.BPMNDI_NAMESPACE;
+	public static final String ACTIVITI_NAMESPACE = Bpmn20StaxWriter.ACTIVITI_NAMESPACE;
+
+	protected static final String XML_DECLARATION = Bpmn20StaxWriter.XML_DECLARATION;
+
+	protected XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+	protected String createXml(KickstartWorkflow kickstartWorkflow) {
+		StringWriter writer = new StringWriter();
+		writer.write(XML_DECLARATION);
+		try {
+			XMLStreamWriter xtw = xmlOutputFactory.createXMLStreamWriter(writer);
+			writeWorkflow(kickstartWorkflow, xtw);
+			xtw.close();
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		}
+		return writer.toString();
+	}
+	
+	public void marshallWorkflow(KickstartWorkflow kickstartWorkflow, OutputStream outputStream) {
+		try {
+			outputStream.write(XML_DECLARATION.getBytes("UTF-8"));
+			XMLStreamWriter xtw = xmlOutputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+			writeWorkflow(kickstartWorkflow, xtw);
+			xtw.close(); // flushes, but doesn't close the underlying stream
+		} catch (IOException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not marshal workflow", e);
+		}
+	}
+
+	public void marshallDefinitions(Definitions definitions, OutputStream outputStream) {
+		if (!writeDefinitions(definitions, outputStream)) {
+			marshalWithJaxb(definitions, outputStream);
+		}
+	}
+
+	/**
+	 * Writes the complete definitions element. Elements are written in the same
+	 * (topological) order as {@link #convertToBpmn(KickstartWorkflow)} adds them to the process.
+	 */
+	protected void writeWorkflow(KickstartWorkflow kickstartWorkflow, XMLStreamWriter xtw) throws XMLStreamException {
+		String processId = kickstartWorkflow.getId();
+		String processName = kickstartWorkflow.getName().replace(" ", "_");
+
+		// The workflow always gets a BPMNDiagram, but no diagram elements
+		definitionsWriter.writeDefinitionsStart(xtw, true, false);
+		xtw.writeAttribute("targetNamespace", "kickstart");
+
+		// Process
+		xtw.writeStartElement(BPMN_NAMESPACE, "process");
+		writeAttribute(xtw, "id", processId);
+		writeAttribute(xtw, "name", kickstartWorkflow.getName());
+		xtw.writeAttribute("isExecutable", "true");
+		writeDocumentation(xtw, processId + "_documentation", kickstartWorkflow.getDescription());
+
+		// Start
+		xtw.writeEmptyElement(BPMN_NAMESPACE, "startEvent");
+		xtw.writeAttribute("id", KickstartWorkflow.START_NAME);
+		xtw.writeAttribute(ACTIVITI_NAMESPACE, "initiator", INITIATOR_NAME);
+		xtw.writeAttribute(ACTIVITI_NAMESPACE, "formKey", "wf:submitAdhocTask");
+
+		// All task blocks
+		FlowCounters counters = new FlowCounters();
+		String last = KickstartWorkflow.START_NAME;
+		for (KickstartTaskBlock taskBlock : kickstartWorkflow.getTaskBlocks()) {
+			last = writeTaskBlock(xtw, taskBlock, counters, last);
+		}
+
+		// End
+		xtw.writeEmptyElement(BPMN_NAMESPACE, "endEvent");
+		xtw.writeAttribute("id", KickstartWorkflow.END_NAME);
+		writeSequenceFlow(xtw, counters, last, KickstartWorkflow.END_NAME);
+
+		xtw.writeEndElement(); // process
+
+		// BPMNDiagram
+		xtw.writeStartElement(BPMNDI_NAMESPACE, "BPMNDiagram");
+		xtw.writeAttribute("id", processName + "_diagram");
+		xtw.writeEmptyElement(BPMNDI_NAMESPACE, "BPMNPlane");
+		writeAttribute(xtw, "bpmnElement", processId);
+		xtw.writeAttribute("id", processName + "_plane");
+		xtw.writeEndElement(); // BPMNDiagram
+
+		xtw.writeEndElement(); // definitions
+		xtw.writeEndDocument();
+	}
+
+	/**
+	 * Writes the tasks of one block, including the parallel gateways if needed.
+	 * Returns the id of the last flow node of the block.
+	 */
+	protected String writeTaskBlock(XMLStreamWriter xtw, KickstartTaskBlock taskBlock, FlowCounters counters, String last) throws XMLStreamException {
+		List<KickstartTask> tasks = taskBlock.getTasks();
+		if (tasks.size() == 1) {
+			String taskId = "task_" + counters.taskIndex++;
+			writeSequenceFlow(xtw, counters, last, taskId);
+			writeTask(xtw, tasks.get(0), taskId);
+			return taskId;
+		}
+
+		String forkId = "parallel_gateway_fork_" + counters.gatewayIndex++;
+		String joinId = "parallel_gateway_join" + counters.gatewayIndex++;
+
+		writeSequenceFlow(xtw, counters, last, forkId);
+		xtw.writeEmptyElement(BPMN_NAMESPACE, "parallelGateway");
+		xtw.writeAttribute("id", forkId);
+
+		// sequence flow to each task of the task block from the parallel gateway and back to the join
+		for (KickstartTask task : tasks) {
+			String taskId = "task_" + counters.taskIndex++;
+			writeSequenceFlow(xtw, counters, forkId, taskId);
+			writeSequenceFlow(xtw, counters, taskId, joinId);
+			writeTask(xtw, task, taskId);
+		}
+
+		xtw.writeEmptyElement(BPMN_NAMESPACE, "parallelGateway");
+		xtw.writeAttribute("id", joinId);
+		return joinId;
+	}
+
+	protected void writeTask(XMLStreamWriter xtw, KickstartTask kickstartTask, String taskId) throws XMLStreamException {
+		if (kickstartTask instanceof KickstartUserTask) {
+			writeUserTask(xtw, (KickstartUserTask) kickstartTask, taskId);
+		} else if (kickstartTask instanceof KickstartServiceTask) {
+			writeServiceTask(xtw, (KickstartServiceTask) kickstartTask, taskId);
+		} else if (kickstartTask instanceof KickstartScriptTask) {
+			writeScriptTask(xtw, (KickstartScriptTask) kickstartTask, taskId);
+		} else if (kickstartTask instanceof KickstartMailTask) {
+			writeMailTask(xtw, (KickstartMailTask) kickstartTask, taskId);
+		} else {
+			throw new RuntimeException("Unknown task type: " + kickstartTask.getClass());
+		}
+	}
+
+	protected void writeUserTask(XMLStreamWriter xtw, KickstartUserTask kickstartUserTask, String taskId) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "userTask");
+		xtw.writeAttribute("id", taskId);
+		writeAttribute(xtw, "name", kickstartUserTask.getName());
+		if (kickstartUserTask.getForm() != null) {
+			writeAttribute(xtw, ACTIVITI_NAMESPACE, "formKey", kickstartUserTask.getForm().getFormKey());
+		}
+		writeTaskDocumentation(xtw, kickstartUserTask, taskId);
+
+		// form
+		if (kickstartUserTask.getForm() != null && !kickstartUserTask.getForm().getFormProperties().isEmpty()) {
+			xtw.writeStartElement(BPMN_NAMESPACE, "extensionElements");
+			for (KickstartFormProperty formProperty : kickstartUserTask.getForm().getFormProperties()) {
+				definitionsWriter.writeFormProperty(xtw, formProperty.getProperty(), formProperty.getProperty(),
+						getFormPropertyType(formProperty), formProperty.isRequired() ? "true" : "false");
+			}
+			xtw.writeEndElement(); // extensionElements
+		}
+
+		// assignee
+		String assignee = kickstartUserTask.isAssigneeInitiator() ? "${" + INITIATOR_NAME + "}" : kickstartUserTask.getAssignee();
+		if (assignee != null && !"".equals(assignee)) {
+			writeResourceRole(xtw, "humanPerformer", taskId + "_humanPerformer", assignee);
+		}
+
+		// groups
+		if (kickstartUserTask.getGroups() != null && !"".equals(kickstartUserTask.getGroups())) {
+			StringBuilder groups = new StringBuilder();
+			for (String group : kickstartUserTask.getGroups().split(",")) {
+				groups.append(group + ",");
+			}
+			groups.deleteCharAt(groups.length() - 1);
+			writeResourceRole(xtw, "potentialOwner", taskId + "_potentialOwner", groups.toString());
+		}
+
+		xtw.writeEndElement(); // userTask
+	}
+
+	protected void writeResourceRole(XMLStreamWriter xtw, String elementName, String id, String expression) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, elementName);
+		writeOptionalId(xtw, id);
+		xtw.writeStartElement(BPMN_NAMESPACE, "resourceAssignmentExpression");
+		writeOptionalId(xtw, id + "_assignmentExpression");
+		xtw.writeStartElement(BPMN_NAMESPACE, "formalExpression");
+		writeOptionalId(xtw, id + "_formalExpressions");
+		xtw.writeCharacters(EscapingStringAdapter.escapeCharacters(expression));
+		xtw.writeEndElement(); // formalExpression
+		xtw.writeEndElement(); // resourceAssignmentExpression
+		xtw.writeEndElement(); // humanPerformer or potentialOwner
+	}
+
+	protected void writeServiceTask(XMLStreamWriter xtw, KickstartServiceTask kickstartServiceTask, String taskId) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "serviceTask");
+		xtw.writeAttribute("id", taskId);
+		writeAttribute(xtw, "name", kickstartServiceTask.getName());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "delegateExpression", kickstartServiceTask.getDelegateExpression());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "class", kickstartServiceTask.getClassName());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "expression", kickstartServiceTask.getExpression());
+		writeTaskDocumentation(xtw, kickstartServiceTask, taskId);
+		xtw.writeEndElement(); // serviceTask
+	}
+
+	protected void writeScriptTask(XMLStreamWriter xtw, KickstartScriptTask kickstartScriptTask, String taskId) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "scriptTask");
+		xtw.writeAttribute("id", taskId);
+		writeAttribute(xtw, "name", kickstartScriptTask.getName());
+		writeAttribute(xtw, "scriptFormat", kickstartScriptTask.getScriptFormat());
+		writeAttribute(xtw, ACTIVITI_NAMESPACE, "resultVariableName", kickstartScriptTask.getResultVariableName());
+		writeTaskDocumentation(xtw, kickstartScriptTask, taskId);
+		definitionsWriter.writeScript(xtw, kickstartScriptTask.getScript());
+		xtw.writeEndElement(); // scriptTask
+	}
+
+	protected void writeMailTask(XMLStreamWriter xtw, KickstartMailTask kickstartMailTask, String taskId) throws XMLStreamException {
+		xtw.writeStartElement(BPMN_NAMESPACE, "serviceTask");
+		xtw.writeAttribute("id", taskId);
+		writeAttribute(xtw, "name", kickstartMailTask.getName());
+		xtw.writeAttribute(ACTIVITI_NAMESPACE, "type", "mail");
+		writeTaskDocumentation(xtw, kickstartMailTask, taskId);
+
+		xtw.writeStartElement(BPMN_NAMESPACE, "extensionElements");
+		writeFieldIfFilled(xtw, kickstartMailTask.getTo());
+		writeFieldIfFilled(xtw, kickstartMailTask.getFrom());
+		writeFieldIfFilled(xtw, kickstartMailTask.getSubject());
+		writeFieldIfFilled(xtw, kickstartMailTask.getCc());
+		writeFieldIfFilled(xtw, kickstartMailTask.getBcc());
+		writeFieldIfFilled(xtw, kickstartMailTask.getHtml());
+		writeFieldIfFilled(xtw, kickstartMailTask.getText());
+		xtw.writeEndElement(); // extensionElements
+
+		xtw.writeEndElement(); // serviceTask
+	}
+
+	protected void writeFieldIfFilled(XMLStreamWriter xtw, Field field) throws XMLStreamException {
+		if (field.getStringValue() == null && field.getExpression() == null) {
+			return;
+		}
+
+		definitionsWriter.writeField(xtw, field.getName(), field.getStringValue(), field.getExpression());
+	}
+
+	// Helper methods ////////////////////////////////////////////////////////////////////////////////////
+
+	protected void writeDocumentation(XMLStreamWriter xtw, String id, String text) throws XMLStreamException {
+		if (isCompact() && (text == null || text.length() == 0)) {
+			return;
+		}
+		
+		if (text == null) {
+			xtw.writeEmptyElement(BPMN_NAMESPACE, "documentation");
+			xtw.writeAttribute("id", id);
+		} else {
+			xtw.writeStartElement(BPMN_NAMESPACE, "documentation");
+			writeOptionalId(xtw, id);
+			XmlTextWriter.writeFreeText(xtw, text);
+			xtw.writeEndElement();
+		}
+	}
+
+	protected void writeTaskDocumentation(XMLStreamWriter xtw, KickstartTask kickstartTask, String taskId) throws XMLStreamException {
+		if (kickstartTask.getDescription() != null) {
+			writeDocumentation(xtw, taskId + "_documentation", ExpressionUtil.replaceWhiteSpaces(kickstartTask.getDescription()));
+		}
+	}
+
+	protected void writeSequenceFlow(XMLStreamWriter xtw, FlowCounters counters, String sourceRef, String targetRef) throws XMLStreamException {
+		xtw.writeEmptyElement(BPMN_NAMESPACE, "sequenceFlow");
+		xtw.writeAttribute("id", "flow_" + counters.flowIndex++);
+		xtw.writeAttribute("sourceRef", sourceRef);
+		xtw.writeAttribute("targetRef", targetRef);
+	}
+
+	/**
+	 * Ids of elements nothing refers to, these are left out by the compact profile.
+	 */
+	protected void writeOptionalId(XMLStreamWriter xtw, String id) throws XMLStreamException {
+		definitionsWriter.writeId(xtw, id, false);
+	}
+
+	/**
+	 * Writes the attribute only when a value is given, like JAXB does for null properties.
+	 * Names are stripped from illegal xml characters, as the JAXB model does through
+	 * the {@link EscapingStringAdapter}.
+	 */
+	protected void writeAttribute(XMLStreamWriter xtw, String name, String value) throws XMLStreamException {
+		definitionsWriter.writeEscapedAttribute(xtw, name, value);
+	}
+
+	protected void writeAttribute(XMLStreamWriter xtw, String namespace, String name, String value) throws XMLStreamException {
+		definitionsWriter.writeAttribute(xtw, namespace, name, value);
+	}
+
+	/**
+	 * Counters for the generated ids, shared by all task blocks of one workflow.
+	 */
+	protected static class FlowCounters {
+		int taskIndex = 1;
+		int flowIndex = 1;
+		int gatewayIndex = 1;
+	}
+
+}
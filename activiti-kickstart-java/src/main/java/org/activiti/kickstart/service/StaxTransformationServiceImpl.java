@@ -0,0 +1,427 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartMailTask;
+import org.activiti.kickstart.dto.KickstartMailTask.Field;
+import org.activiti.kickstart.dto.KickstartScriptTask;
+import org.activiti.kickstart.dto.KickstartServiceTask;
+import org.activiti.kickstart.dto.KickstartTask;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+
+/**
+ * {@link TransformationService} that reads stored BPMN 2.0 xml with an {@link XMLStreamReader},
+ * straight into the {@link KickstartWorkflow}, without unmarshalling the JAXB object graph first.
+ *
+ * The tasks, the parallel gateways and the sequence flows between them are collected
+ * in one pass over the xml. The sequence flow is followed afterwards, exactly like
+ * {@link #convertToKickstartWorkflow(org.activiti.kickstart.bpmn20.model.Definitions)}
+ * does, so both conversions give the same workflow. Elements KickStart doesn't
+ * generate, like the diagram interchange, are skipped.
+ *
+ * Only the xml access lives here: how form properties, mail fields and parallel
+ * blocks map to the dto's is shared with the JAXB conversion, as are all other operations.
+ *
+ * @author jbarrez
+ */
+public class StaxTransformationServiceImpl extends TransformationServiceImpl {
+
+	protected static final String ACTIVITI_NAMESPACE = StaxMarshallingServiceImpl.ACTIVITI_NAMESPACE;
+
+	protected XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+	public KickstartWorkflow convertToKickstartWorkflow(InputStream bpmnXml) {
+		try {
+			XMLStreamReader xtr = xmlInputFactory.createXMLStreamReader(bpmnXml);
+			try {
+				return readWorkflow(xtr);
+			} finally {
+				xtr.close(); // doesn't close the underlying stream
+			}
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not read workflow xml", e);
+		}
+	}
+
+	protected XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	protected KickstartWorkflow readWorkflow(XMLStreamReader xtr) throws XMLStreamException {
+		KickstartWorkflow workflow = new KickstartWorkflow();
+		while (xtr.hasNext()) {
+			if (xtr.next() == XMLStreamConstants.START_ELEMENT && "process".equals(xtr.getLocalName())) {
+				readProcess(xtr, workflow);
+			}
+		}
+		return workflow;
+	}
+
+	/**
+	 * Reads the process element the reader is positioned on, up to and including its end element.
+	 */
+	protected void readProcess(XMLStreamReader xtr, KickstartWorkflow workflow) throws XMLStreamException {
+		workflow.setName(xtr.getAttributeValue(null, "name"));
+
+		ProcessGraph graph = new ProcessGraph();
+		boolean documentationRead = false;
+		while (nextChildElement(xtr)) {
+			String element = xtr.getLocalName();
+			if ("documentation".equals(element) && !documentationRead) {
+				workflow.setDescription(readText(xtr));
+				documentationRead = true;
+			} else if ("userTask".equals(element)) {
+				graph.addTask(xtr.getAttributeValue(null, "id"), readUserTask(xtr));
+			} else if ("serviceTask".equals(element)) {
+				graph.addTask(xtr.getAttributeValue(null, "id"), readServiceTask(xtr));
+			} else if ("scriptTask".equals(element)) {
+				graph.addTask(xtr.getAttributeValue(null, "id"), readScriptTask(xtr));
+			} else if ("parallelGateway".equals(element)) {
+				graph.parallelGateways.add(xtr.getAttributeValue(null, "id"));
+				skipElement(xtr);
+			} else if ("sequenceFlow".equals(element)) {
+				graph.addSequenceFlow(xtr.getAttributeValue(null, "sourceRef"), xtr.getAttributeValue(null, "targetRef"));
+				skipElement(xtr);
+			} else {
+				skipElement(xtr);
+			}
+		}
+
+		followSequenceFlow(graph, workflow);
+	}
+
+	/**
+	 * Follows the sequence flow from start to end, see {@link #convertToKickstartWorkflow(org.activiti.kickstart.bpmn20.model.Definitions)}.
+	 */
+	protected void followSequenceFlow(ProcessGraph graph, KickstartWorkflow workflow) {
+		String current = graph.getTarget(KickstartWorkflow.START_NAME); // Can be only one
+		while (!KickstartWorkflow.END_NAME.equals(current)) {
+
+			if (graph.tasks.containsKey(current)) {
+
+				workflow.addTask(graph.tasks.get(current));
+				current = graph.getTarget(current); // Can be only one
+
+			} else if (graph.parallelGateways.contains(current)) {
+
+				List<String> taskIdsOfBlock = graph.getTargets(current);
+				List<KickstartTask> tasksOfBlock = new ArrayList<KickstartTask>(taskIdsOfBlock.size());
+				for (String taskId : taskIdsOfBlock) {
+					tasksOfBlock.add(graph.tasks.get(taskId));
+				}
+				addParallelTasks(workflow, tasksOfBlock);
+
+				String parallelJoin = graph.getTarget(taskIdsOfBlock.get(taskIdsOfBlock.size() - 1)); // any seqflow is ok
+				current = graph.getTarget(parallelJoin); // can be only one
+
+			} else {
+				throw new RuntimeException("Unsupported element " + current + " in workflow xml");
+			}
+		}
+	}
+
+	// Tasks ////////////////////////////////////////////////////////////////////////
+
+	protected KickstartUserTask readUserTask(XMLStreamReader xtr) throws XMLStreamException {
+		KickstartUserTask task = new KickstartUserTask();
+		readTaskAttributes(xtr, task);
+
+		List<KickstartFormProperty> formProperties = new ArrayList<KickstartFormProperty>();
+		while (nextChildElement(xtr)) {
+			String element = xtr.getLocalName();
+			if ("documentation".equals(element)) {
+				readDocumentation(xtr, task);
+			} else if ("humanPerformer".equals(element)) {
+				String assignee = readResourceAssignment(xtr);
+				if (assignee != null) {
+					task.setAssignee(assignee);
+				}
+			} else if ("potentialOwner".equals(element)) {
+				String groups = readResourceAssignment(xtr);
+				if (groups != null) {
+					task.setGroups(groups);
+				}
+			} else if ("extensionElements".equals(element)) {
+				readFormProperties(xtr, formProperties);
+			} else {
+				skipElement(xtr);
+			}
+		}
+
+		setForm(task, formProperties);
+		return task;
+	}
+
+	protected KickstartTask readServiceTask(XMLStreamReader xtr) throws XMLStreamException {
+		if (isMailTask(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "type"))) {
+			return readMailTask(xtr);
+		}
+
+		KickstartServiceTask task = new KickstartServiceTask();
+		readTaskAttributes(xtr, task);
+		task.setClassName(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "class"));
+		task.setExpression(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "expression"));
+		task.setDelegateExpression(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "delegateExpression"));
+		readDocumentationOnly(xtr, task);
+		return task;
+	}
+
+	protected KickstartMailTask readMailTask(XMLStreamReader xtr) throws XMLStreamException {
+		KickstartMailTask task = new KickstartMailTask();
+		readTaskAttributes(xtr, task);
+
+		while (nextChildElement(xtr)) {
+			String element = xtr.getLocalName();
+			if ("documentation".equals(element)) {
+				readDocumentation(xtr, task);
+			} else if ("extensionElements".equals(element)) {
+				while (nextChildElement(xtr)) {
+					if ("field".equals(xtr.getLocalName())) {
+						readField(xtr, getMailField(task, xtr.getAttributeValue(null, "name")));
+					} else {
+						skipElement(xtr);
+					}
+				}
+			} else {
+				skipElement(xtr);
+			}
+		}
+		return task;
+	}
+
+	protected KickstartScriptTask readScriptTask(XMLStreamReader xtr) throws XMLStreamException {
+		KickstartScriptTask task = new KickstartScriptTask();
+		readTaskAttributes(xtr, task);
+		task.setScriptFormat(xtr.getAttributeValue(null, "scriptFormat"));
+		task.setResultVariableName(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "resultVariableName"));
+
+		while (nextChildElement(xtr)) {
+			String element = xtr.getLocalName();
+			if ("documentation".equals(element)) {
+				readDocumentation(xtr, task);
+			} else if ("script".equals(element)) {
+				task.setScript(readText(xtr));
+			} else {
+				skipElement(xtr);
+			}
+		}
+		return task;
+	}
+
+	protected void readTaskAttributes(XMLStreamReader xtr, KickstartTask task) {
+		task.setId(xtr.getAttributeValue(null, "id"));
+		task.setName(xtr.getAttributeValue(null, "name"));
+	}
+
+	/**
+	 * Only the first documentation element is the description, as in the JAXB conversion.
+	 */
+	protected void readDocumentation(XMLStreamReader xtr, KickstartTask task) throws XMLStreamException {
+		String text = readText(xtr);
+		if (task.getDescription() == null) {
+			task.setDescription(text);
+		}
+	}
+
+	protected void readDocumentationOnly(XMLStreamReader xtr, KickstartTask task) throws XMLStreamException {
+		while (nextChildElement(xtr)) {
+			if ("documentation".equals(xtr.getLocalName())) {
+				readDocumentation(xtr, task);
+			} else {
+				skipElement(xtr);
+			}
+		}
+	}
+
+	/**
+	 * Returns the content of the formal expression of a human performer or potential owner.
+	 */
+	protected String readResourceAssignment(XMLStreamReader xtr) throws XMLStreamException {
+		String content = null;
+		while (nextChildElement(xtr)) {
+			if ("resourceAssignmentExpression".equals(xtr.getLocalName())) {
+				while (nextChildElement(xtr)) {
+					String text = readText(xtr);
+					if (content == null && text.length() > 0) {
+						content = text;
+					}
+				}
+			} else {
+				skipElement(xtr);
+			}
+		}
+		return content;
+	}
+
+	protected void readFormProperties(XMLStreamReader xtr, List<KickstartFormProperty> formProperties) throws XMLStreamException {
+		while (nextChildElement(xtr)) {
+			if ("formProperty".equals(xtr.getLocalName()) && ACTIVITI_NAMESPACE.equals(xtr.getNamespaceURI())) {
+				formProperties.add(convertToKickstartFormProperty(xtr.getAttributeValue(null, "name"),
+						xtr.getAttributeValue(null, "type"), xtr.getAttributeValue(null, "required")));
+			}
+			skipElement(xtr);
+		}
+	}
+
+	/**
+	 * Reads the string or expression of a mail field. Unknown fields are skipped.
+	 */
+	protected void readField(XMLStreamReader xtr, Field field) throws XMLStreamException {
+		while (nextChildElement(xtr)) {
+			String element = xtr.getLocalName();
+			if (field != null && "string".equals(element)) {
+				field.setStringValue(readText(xtr));
+			} else if (field != null && "expression".equals(element)) {
+				field.setExpression(readText(xtr));
+			} else {
+				skipElement(xtr);
+			}
+		}
+	}
+
+	// Helper methods ////////////////////////////////////////////////////////////////
+
+	/**
+	 * Moves to the next child element of the current element. Returns false, positioned
+	 * on the end element of the current element, when there are no more children.
+	 */
+	protected boolean nextChildElement(XMLStreamReader xtr) throws XMLStreamException {
+		while (xtr.hasNext()) {
+			int event = xtr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the current element, including its children, up to its end element.
+	 */
+	protected void skipElement(XMLStreamReader xtr) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && xtr.hasNext()) {
+			int event = xtr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the text of the current element, up to its end element. Like the mixed
+	 * content of the JAXB model, only the text before the first child element is used.
+	 */
+	protected String readText(XMLStreamReader xtr) throws XMLStreamException {
+		String text = null;
+		StringBuilder strb = null;
+		while (xtr.hasNext()) {
+			int event = xtr.next();
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE) {
+				if (text == null) {
+					text = xtr.getText();
+				} else {
+					if (strb == null) {
+						strb = new StringBuilder(text);
+					}
+					strb.append(xtr.getText());
+				}
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				skipElement(xtr);
+				break;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return result(text, strb);
+			}
+		}
+
+		// Stopped at a child element: skip the rest of this element
+		skipRemainder(xtr);
+		return result(text, strb);
+	}
+
+	protected void skipRemainder(XMLStreamReader xtr) throws XMLStreamException {
+		while (nextChildElement(xtr)) {
+			skipElement(xtr);
+		}
+	}
+
+	protected String result(String text, StringBuilder strb) {
+		if (strb != null) {
+			return strb.toString();
+		}
+		return text != null ? text : "";
+	}
+
+	/**
+	 * Tasks, parallel gateways and sequence flows of a process, by id.
+	 */
+	protected static class ProcessGraph {
+
+		protected Map<String, KickstartTask> tasks = new HashMap<String, KickstartTask>();
+		protected Set<String> parallelGateways = new HashSet<String>();
+		protected Map<String, List<String>> targets = new HashMap<String, List<String>>();
+
+		public void addTask(String id, KickstartTask task) {
+			tasks.put(id, task);
+		}
+
+		public void addSequenceFlow(String sourceRef, String targetRef) {
+			List<String> targetsOfSource = targets.get(sourceRef);
+			if (targetsOfSource == null) {
+				targetsOfSource = new ArrayList<String>(1);
+				targets.put(sourceRef, targetsOfSource);
+			}
+			targetsOfSource.add(targetRef);
+		}
+
+		public List<String> getTargets(String sourceRef) {
+			List<String> targetsOfSource = targets.get(sourceRef);
+			return targetsOfSource != null ? targetsOfSource : Collections.<String>emptyList();
+		}
+
+		public String getTarget(String sourceRef) {
+			List<String> targetsOfSource = getTargets(sourceRef);
+			if (targetsOfSource.isEmpty()) {
+				throw new RuntimeException("No sequence flow leaving " + sourceRef + " in workflow xml");
+			}
+			return targetsOfSource.get(0);
+		}
+
+	}
+
+}
@@ -12,6 +12,7 @@
  */
 package org.activiti.kickstart.service;
 
+import java.io.InputStream;
 import java.util.List;
 
 import org.activiti.engine.repository.ProcessDefinition;
@@ -47,6 +48,13 @@ public interface TransformationService {
 	 * usable by the KickStart operations.
 	 */
 	KickstartWorkflow convertToKickstartWorkflow(Definitions definitions);
+	
+	/**
+	 * Reads the given BPMN 2.0 xml, as it was deployed by KickStart, and converts it to a 
+	 * {@link KickstartWorkflow}. The result is the same as converting the unmarshalled 
+	 * {@link Definitions}. The stream is not closed.
+	 */
+	KickstartWorkflow convertToKickstartWorkflow(InputStream bpmnXml);
 
 	/**
 	 * Converts the given JAXB {@link Task} to a {@link KickstartTask} which is usable
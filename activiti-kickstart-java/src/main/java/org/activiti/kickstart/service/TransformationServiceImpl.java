@@ -12,18 +12,23 @@
  */
 package org.activiti.kickstart.service;
 
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+
+import javax.xml.bind.JAXBException;
 
 import org.activiti.engine.HistoryService;
 import org.activiti.engine.RepositoryService;
+import org.activiti.engine.impl.ServiceImpl;
+import org.activiti.engine.impl.util.IoUtil;
 import org.activiti.engine.repository.ProcessDefinition;
 import org.activiti.kickstart.bpmn20.model.BaseElement;
 import org.activiti.kickstart.bpmn20.model.Definitions;
 import org.activiti.kickstart.bpmn20.model.FlowElement;
+import org.activiti.kickstart.bpmn20.model.ProcessGraphIndex;
 import org.activiti.kickstart.bpmn20.model.activity.Task;
 import org.activiti.kickstart.bpmn20.model.activity.resource.ActivityResource;
 import org.activiti.kickstart.bpmn20.model.activity.resource.HumanPerformer;
@@ -36,6 +41,7 @@ import org.activiti.kickstart.bpmn20.model.extension.AbstractExtensionElement;
 import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
 import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitiFormProperty;
 import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
 import org.activiti.kickstart.dto.KickstartForm;
 import org.activiti.kickstart.dto.KickstartFormProperty;
 import org.activiti.kickstart.dto.KickstartMailTask;
@@ -45,6 +51,7 @@ import org.activiti.kickstart.dto.KickstartTask;
 import org.activiti.kickstart.dto.KickstartUserTask;
 import org.activiti.kickstart.dto.KickstartWorkflow;
 import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowSummary;
 
 /**
  * 
@@ -55,6 +62,7 @@ public class TransformationServiceImpl implements TransformationService {
 	protected RepositoryService repositoryService;
 	protected HistoryService historyService;
 	protected FormTransformationService formTransformationService;
+	protected Bpmn20JaxbContext.Mode jaxbMode = Bpmn20JaxbContext.Mode.FULL;
 
 	public FormTransformationService getFormTransformationService() {
 		return formTransformationService;
@@ -80,12 +88,28 @@ public class TransformationServiceImpl implements TransformationService {
 		this.historyService = historyService;
 	}
 	
+	public Bpmn20JaxbContext.Mode getJaxbMode() {
+		return jaxbMode;
+	}
+	
+	/**
+	 * Selects the JAXB binding used to read stored BPMN 2.0 xml, see {@link Bpmn20JaxbContext.Mode}.
+	 */
+	public void setJaxbMode(Bpmn20JaxbContext.Mode jaxbMode) {
+		this.jaxbMode = jaxbMode;
+	}
+	
 	// -------------------------------------------------------------------------------
 	// BPMN 2.0 --> KICKSTART INTERNAL CLASSES ---------------------------------------
 	// -------------------------------------------------------------------------------
 
 	public List<KickstartWorkflowInfo> convertToWorkflowInfoList(List<ProcessDefinition> processDefinitions, boolean includeCounts) {
-		List<KickstartWorkflowInfo> infoList = new ArrayList<KickstartWorkflowInfo>();
+		List<KickstartWorkflowInfo> infoList = new ArrayList<KickstartWorkflowInfo>(processDefinitions.size());
+		if (processDefinitions.isEmpty()) {
+			return infoList;
+		}
+
+		WorkflowStatistics statistics = fetchWorkflowStatistics(processDefinitions, includeCounts);
 		for (ProcessDefinition processDefinition : processDefinitions) {
 			KickstartWorkflowInfo workflowInfo = new KickstartWorkflowInfo();
 			workflowInfo.setId(processDefinition.getId());
@@ -94,25 +118,74 @@ public class TransformationServiceImpl implements TransformationService {
 			workflowInfo.setVersion(processDefinition.getVersion());
 			workflowInfo.setDeploymentId(processDefinition.getDeploymentId());
 
+			workflowInfo.setCreateTime(statistics.getDeploymentTime(processDefinition.getDeploymentId()));
+			workflowInfo.setSummary(statistics.getSummary(processDefinition.getDeploymentId()));
+
+			if (includeCounts) {
+				workflowInfo.setNrOfRuntimeInstances(statistics.getNrOfRunningInstances(processDefinition.getId()));
+				workflowInfo.setNrOfHistoricInstances(statistics.getNrOfFinishedInstances(processDefinition.getId()));
+			}
+
+			infoList.add(workflowInfo);
+		}
+		return infoList;
+	}
+
+	/**
+	 * Fetches the deployment times, summaries and instance counts of all given process definitions at once,
+	 * see {@link FetchWorkflowStatisticsCmd}. Falls back to the query api, one query per
+	 * process definition, when the repository service doesn't belong to an engine.
+	 */
+	protected WorkflowStatistics fetchWorkflowStatistics(List<ProcessDefinition> processDefinitions, boolean includeCounts) {
+		if (repositoryService instanceof ServiceImpl) {
+			return ((ServiceImpl) repositoryService).getCommandExecutor()
+					.execute(new FetchWorkflowStatisticsCmd(processDefinitions, includeCounts));
+		}
+
+		WorkflowStatistics statistics = new WorkflowStatistics();
+		for (ProcessDefinition processDefinition : processDefinitions) {
 			Date deploymentTime = repositoryService.createDeploymentQuery()
 					.deploymentId(processDefinition.getDeploymentId())
 					.singleResult().getDeploymentTime();
-			workflowInfo.setCreateTime(deploymentTime);
+			statistics.setDeploymentTime(processDefinition.getDeploymentId(), deploymentTime);
+			statistics.setSummary(processDefinition.getDeploymentId(), readSummary(processDefinition));
 
 			if (includeCounts) {
-  			workflowInfo.setNrOfRuntimeInstances(historyService
-  					.createHistoricProcessInstanceQuery()
-  					.processDefinitionId(processDefinition.getId())
-  					.unfinished().count());
-  			workflowInfo.setNrOfHistoricInstances(historyService
-  					.createHistoricProcessInstanceQuery()
-  					.processDefinitionId(processDefinition.getId()).finished()
-  					.count());
+				statistics.setInstanceCounts(processDefinition.getId(),
+						historyService.createHistoricProcessInstanceQuery()
+								.processDefinitionId(processDefinition.getId()).unfinished().count(),
+						historyService.createHistoricProcessInstanceQuery()
+								.processDefinitionId(processDefinition.getId()).finished().count());
 			}
+		}
+		return statistics;
+	}
 
-			infoList.add(workflowInfo);
+	protected KickstartWorkflowSummary readSummary(ProcessDefinition processDefinition) {
+		String summaryResourceName = KickstartWorkflowSummary.getResourceName(processDefinition.getResourceName());
+		if (summaryResourceName == null 
+				|| !repositoryService.getDeploymentResourceNames(processDefinition.getDeploymentId()).contains(summaryResourceName)) {
+			return null;
+		}
+
+		InputStream is = repositoryService.getResourceAsStream(processDefinition.getDeploymentId(), summaryResourceName);
+		try {
+			return KickstartWorkflowSummary.parse(new String(IoUtil.readInputStream(is, summaryResourceName), "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		} finally {
+			IoUtil.closeSilently(is);
 		}
-		return infoList;
+	}
+
+	public KickstartWorkflow convertToKickstartWorkflow(InputStream bpmnXml) {
+		Definitions definitions = null;
+		try {
+			definitions = Bpmn20JaxbContext.getInstance(jaxbMode).unmarshal(IoUtil.readInputStream(bpmnXml, "bpmn20.xml"));
+		} catch (JAXBException e) {
+			throw new RuntimeException("Could not unmarshall workflow xml", e);
+		}
+		return convertToKickstartWorkflow(definitions);
 	}
 
 	public KickstartWorkflow convertToKickstartWorkflow(Definitions definitions) {
@@ -125,58 +198,35 @@ public class TransformationServiceImpl implements TransformationService {
 
 				// Process name and description
 				adhocWorkflow.setName(process.getName());
-				if (!process.getDocumentation().isEmpty()) {
+				if (process.isSetDocumentation()) {
 					adhocWorkflow.setDescription(process.getDocumentation().get(0).getText());
 				}
 
-				// user tasks
-				Map<String, Task> tasks = new HashMap<String, Task>();
-				Map<String, ParallelGateway> gateways = new HashMap<String, ParallelGateway>();
-				Map<String, List<SequenceFlow>> sequenceFlows = new HashMap<String, List<SequenceFlow>>();
-				for (FlowElement flowElement : process.getFlowElement()) {
-					if (flowElement instanceof Task) {
-						tasks.put(flowElement.getId(), (Task) flowElement);
-					}
-					if (flowElement instanceof ParallelGateway) {
-						gateways.put(flowElement.getId(),(ParallelGateway) flowElement);
-					}
-					if (flowElement instanceof SequenceFlow) {
-						SequenceFlow sequenceFlow = (SequenceFlow) flowElement;
-						String sourceRef = sequenceFlow.getSourceRef().getId();
-						if (!sequenceFlows.containsKey(sourceRef)) {
-							sequenceFlows.put(sourceRef, new ArrayList<SequenceFlow>());
-						}
-						sequenceFlows.get(sourceRef).add(sequenceFlow);
-					}
-				}
-
 				// Follow sequence flow to discover sequence of tasks
-				SequenceFlow currentSequenceFlow = sequenceFlows.get(KickstartWorkflow.START_NAME).get(0); // Can be only one
+				ProcessGraphIndex graph = process.getGraphIndex();
+				SequenceFlow currentSequenceFlow = graph.getOutgoing(KickstartWorkflow.START_NAME).get(0); // Can be only one
 				while (!currentSequenceFlow.getTargetRef().getId().equals(KickstartWorkflow.END_NAME)) {
 
-					String targetRef = currentSequenceFlow.getTargetRef().getId();
+					FlowElement target = currentSequenceFlow.getTargetRef();
 					KickstartTask taskDto = null;
-					if (tasks.containsKey(targetRef)) {
+					if (target instanceof Task) {
 
-						taskDto = convertToKickstartTask((Task) currentSequenceFlow.getTargetRef());
-						currentSequenceFlow = sequenceFlows.get(currentSequenceFlow.getTargetRef().getId()).get(0); // Can be only one
+						taskDto = convertToKickstartTask((Task) target);
+						currentSequenceFlow = graph.getOutgoing(target).get(0); // Can be only one
 						adhocWorkflow.addTask(taskDto);
 
-					} else if (gateways.containsKey(targetRef)) {
+					} else if (target instanceof ParallelGateway) {
 
 						Task task = null;
-						for (int i = 0; i < sequenceFlows.get(targetRef).size(); i++) {
-							SequenceFlow seqFlowOutOfGateway = sequenceFlows.get(targetRef).get(i);
+						List<KickstartTask> tasksOfBlock = new ArrayList<KickstartTask>();
+						for (SequenceFlow seqFlowOutOfGateway : graph.getOutgoing(target)) {
 							task = (Task) seqFlowOutOfGateway.getTargetRef();
-							taskDto = convertToKickstartTask(task);
-							if (i > 0) {
-								taskDto.setStartWithPrevious(true);
-							}
-							adhocWorkflow.addTask(taskDto);
+							tasksOfBlock.add(convertToKickstartTask(task));
 						}
+						addParallelTasks(adhocWorkflow, tasksOfBlock);
 
-						String parallelJoinId = sequenceFlows.get(task.getId()).get(0).getTargetRef().getId(); // any seqflow is ok
-						currentSequenceFlow = sequenceFlows.get(parallelJoinId).get(0); // can be only one
+						FlowElement parallelJoin = graph.getOutgoing(task).get(0).getTargetRef(); // any seqflow is ok
+						currentSequenceFlow = graph.getOutgoing(parallelJoin).get(0); // can be only one
 
 					}
 
@@ -194,7 +244,7 @@ public class TransformationServiceImpl implements TransformationService {
 		if (task instanceof UserTask) {
 			taskDto = convertToKickstartUserTask((UserTask) task);
 		} else if (task instanceof ServiceTask) {
-			if (((ServiceTask) task).getType() != null && ((ServiceTask) task).getType().equals("mail")) {
+			if (isMailTask(((ServiceTask) task).getType())) {
 				taskDto = convertToKickstartMailTask((ServiceTask) task);
 			} else {
 				taskDto = convertToKickstartServiceTask((ServiceTask) task);
@@ -215,9 +265,8 @@ public class TransformationServiceImpl implements TransformationService {
 		// task name
 		baseTaskDto.setName(task.getName());
 
-		// TODO: Disabled until I figure out how I can do CDATE with JaxB
 		// task description
-		if (!task.getDocumentation().isEmpty()) {
+		if (task.isSetDocumentation()) {
 			baseTaskDto.setDescription(task.getDocumentation().get(0).getText());
 		}
 	}
@@ -250,29 +299,12 @@ public class TransformationServiceImpl implements TransformationService {
 		// Task form
 		List<KickstartFormProperty> formPropertyDtos = new ArrayList<KickstartFormProperty>();
 		if (userTask.getExtensionElements() != null) {
-			for (AbstractExtensionElement extensionElement : userTask.getExtensionElements().getAllElementOfType(ActivitiFormProperty.class)) {
-				ActivitiFormProperty formProperty = (ActivitiFormProperty) extensionElement;
-				KickstartFormProperty formPropertyDto = new KickstartFormProperty();
-				formPropertyDto.setProperty(formProperty.getName());
-
-				String formType = formProperty.getType();
-				String type = "text";
-				if ("date".equals(formType)) {
-					type = "date";
-				} else if ("long".equals(formType)) {
-					type = "number";
-				}
-				formPropertyDto.setType(type);
-				formPropertyDto.setRequired("true".equals(formProperty.getRequired()));
-				formPropertyDtos.add(formPropertyDto);
+			for (ActivitiFormProperty formProperty : userTask.getExtensionElements().getAllElementOfType(ActivitiFormProperty.class)) {
+				formPropertyDtos.add(convertToKickstartFormProperty(
+						formProperty.getName(), formProperty.getType(), formProperty.getRequired()));
 			}
 		}
-
-		if (formPropertyDtos.size() > 0) {
-			KickstartForm formDto = new KickstartForm();
-			formDto.setFormProperties(formPropertyDtos);
-			task.setForm(formDto);
-		}
+		setForm(task, formPropertyDtos);
 		
 		return task;
 	}
@@ -292,28 +324,10 @@ public class TransformationServiceImpl implements TransformationService {
 		List<AbstractExtensionElement> extensionElements = serviceTask.getExtensionElements().getAny();
 		for (AbstractExtensionElement abstractExtensionElement : extensionElements) {
 			ActivitFieldExtensionElement field = (ActivitFieldExtensionElement) abstractExtensionElement;
-			String fieldName = field.getName();
-			if (fieldName.equals("to")) {
-				task.getTo().setStringValue(field.getStringValue());
-				task.getTo().setExpression(field.getExpression());
-			} else if (fieldName.equals("from")) {
-				task.getFrom().setStringValue(field.getStringValue());
-				task.getFrom().setExpression(field.getExpression());
-			} else if (fieldName.equals("subject")) {
-				task.getSubject().setStringValue(field.getStringValue());
-				task.getSubject().setExpression(field.getExpression());
-			} else if (fieldName.equals("cc")) {
-				task.getCc().setStringValue(field.getStringValue());
-				task.getCc().setExpression(field.getExpression());
-			} else if (fieldName.equals("bcc")) {
-				task.getBcc().setStringValue(field.getStringValue());
-				task.getBcc().setExpression(field.getExpression());
-			} else if (fieldName.equals("html")) {
-				task.getHtml().setStringValue(field.getStringValue());
-				task.getHtml().setExpression(field.getExpression());
-			} else if (fieldName.equals("text")) {
-				task.getText().setStringValue(field.getStringValue());
-				task.getText().setExpression(field.getExpression());
+			KickstartMailTask.Field mailField = getMailField(task, field.getName());
+			if (mailField != null) {
+				mailField.setStringValue(field.getStringValue());
+				mailField.setExpression(field.getExpression());
 			}
 		}
 		
@@ -328,4 +342,75 @@ public class TransformationServiceImpl implements TransformationService {
 		return task;
 	}
 
+	// Mapping rules, shared with the StaxTransformationServiceImpl ///////////////////////
+
+	/**
+	 * Adds the tasks that leave one parallel gateway: all but the first start with the previous one.
+	 */
+	protected void addParallelTasks(KickstartWorkflow workflow, List<KickstartTask> tasksOfBlock) {
+		for (int i = 0; i < tasksOfBlock.size(); i++) {
+			KickstartTask task = tasksOfBlock.get(i);
+			if (i > 0) {
+				task.setStartWithPrevious(true);
+			}
+			workflow.addTask(task);
+		}
+	}
+
+	protected boolean isMailTask(String serviceTaskType) {
+		return "mail".equals(serviceTaskType);
+	}
+
+	/**
+	 * Maps an activiti:formProperty back to its form property, the reverse of
+	 * {@link MarshallingServiceImpl#getFormPropertyType(KickstartFormProperty)}.
+	 */
+	protected KickstartFormProperty convertToKickstartFormProperty(String name, String formType, String required) {
+		KickstartFormProperty formPropertyDto = new KickstartFormProperty();
+		formPropertyDto.setProperty(name);
+
+		String type = "text";
+		if ("date".equals(formType)) {
+			type = "date";
+		} else if ("long".equals(formType)) {
+			type = "number";
+		}
+		formPropertyDto.setType(type);
+		formPropertyDto.setRequired("true".equals(required));
+		return formPropertyDto;
+	}
+
+	/**
+	 * Sets the form of the user task, only when it has form properties.
+	 */
+	protected void setForm(KickstartUserTask task, List<KickstartFormProperty> formProperties) {
+		if (formProperties.size() > 0) {
+			KickstartForm formDto = new KickstartForm();
+			formDto.setFormProperties(formProperties);
+			task.setForm(formDto);
+		}
+	}
+
+	/**
+	 * Returns the field of the mail task with the given activiti:field name, or null for unknown fields.
+	 */
+	protected KickstartMailTask.Field getMailField(KickstartMailTask task, String fieldName) {
+		if ("to".equals(fieldName)) {
+			return task.getTo();
+		} else if ("from".equals(fieldName)) {
+			return task.getFrom();
+		} else if ("subject".equals(fieldName)) {
+			return task.getSubject();
+		} else if ("cc".equals(fieldName)) {
+			return task.getCc();
+		} else if ("bcc".equals(fieldName)) {
+			return task.getBcc();
+		} else if ("html".equals(fieldName)) {
+			return task.getHtml();
+		} else if ("text".equals(fieldName)) {
+			return task.getText();
+		}
+		return null;
+	}
+
 }
@@ -0,0 +1,82 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link WorkflowImporter} run: the deployment of every file that was imported,
+ * the error of every file that wasn't, and how long the whole import took.
+ *
+ * @author jbarrez
+ */
+public class WorkflowImportResult {
+
+	protected Map<String, String> deploymentIds = new LinkedHashMap<String, String>();
+	protected Map<String, Throwable> errors = new LinkedHashMap<String, Throwable>();
+	protected long duration;
+
+	/**
+	 * Returns the deployment ids of the imported workflows, by file name, in the order of the import.
+	 */
+	public Map<String, String> getDeploymentIds() {
+		return deploymentIds;
+	}
+
+	public void addDeployment(String fileName, String deploymentId) {
+		deploymentIds.put(fileName, deploymentId);
+	}
+
+	/**
+	 * Returns the reason why a file couldn't be converted or deployed, by file name.
+	 */
+	public Map<String, Throwable> getErrors() {
+		return errors;
+	}
+
+	public void addError(String fileName, Throwable error) {
+		errors.put(fileName, error);
+	}
+
+	public int getNrOfFiles() {
+		return deploymentIds.size() + errors.size();
+	}
+
+	public int getNrOfDeployedWorkflows() {
+		return deploymentIds.size();
+	}
+
+	public int getNrOfErrors() {
+		return errors.size();
+	}
+
+	/**
+	 * Duration of the import in milliseconds, from reading the first file until the last deployment.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * Number of files that were handled per second, failed ones included.
+	 */
+	public double getThroughput() {
+		return duration > 0 ? getNrOfFiles() * 1000.0 / duration : 0;
+	}
+
+}
@@ -0,0 +1,271 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.impl.util.IoUtil;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+
+/**
+ * Imports BPMN 2.0 files that were made with other tooling, but that fit the KickStart
+ * shape (sequential tasks and parallel blocks), from a directory or a zip file.
+ *
+ * The files are converted with the {@link TransformationService} on a fixed size thread pool
+ * and deployed with the {@link KickstartService} in batches of {@link #getBatchSize()} files:
+ * while one batch is deployed, the next one is converted. A file that can't be converted or
+ * deployed is reported in the {@link WorkflowImportResult} and doesn't stop the import.
+ *
+ * Deployments are done one at a time by the calling thread, since the engine determines the
+ * version of a process by looking at the latest deployed one. The workflow id is derived from
+ * the process name: a file with the same name as an earlier file of the same import is reported
+ * as an error, instead of silently becoming a new version of that workflow.
+ *
+ * @author jbarrez
+ */
+public class WorkflowImporter {
+
+	public static final int DEFAULT_BATCH_SIZE = 50;
+
+	/** The standalone service only lists workflows of which the key starts with this prefix */
+	public static final String DEFAULT_WORKFLOW_ID_PREFIX = "adhoc_";
+
+	protected static final FileFilter BPMN_FILE_FILTER = new FileFilter() {
+		public boolean accept(File file) {
+			return file.isFile() && isBpmnFile(file.getName());
+		}
+	};
+
+	protected KickstartService kickstartService;
+	protected TransformationService transformationService;
+	protected int nrOfThreads = Runtime.getRuntime().availableProcessors();
+	protected int batchSize = DEFAULT_BATCH_SIZE;
+	protected String workflowIdPrefix = DEFAULT_WORKFLOW_ID_PREFIX;
+
+	public WorkflowImporter(KickstartService kickstartService, TransformationService transformationService) {
+		this.kickstartService = kickstartService;
+		this.transformationService = transformationService;
+	}
+
+	/**
+	 * Imports all .bpmn and .bpmn20.xml files of the given directory, sorted by file name.
+	 * Subdirectories are not imported.
+	 */
+	public WorkflowImportResult importDirectory(File directory) {
+		File[] files = directory.listFiles(BPMN_FILE_FILTER);
+		if (files == null) {
+			throw new RuntimeException("Could not read directory " + directory);
+		}
+		Arrays.sort(files);
+
+		ImportRun importRun = new ImportRun();
+		try {
+			for (final File file : files) {
+				importRun.submit(file.getName(), new Callable<KickstartWorkflow>() {
+					public KickstartWorkflow call() throws Exception {
+						InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+						try {
+							return convert(file.getName(), inputStream);
+						} finally {
+							IoUtil.closeSilently(inputStream);
+						}
+					}
+				});
+			}
+			return importRun.finish();
+		} finally {
+			importRun.close();
+		}
+	}
+
+	/**
+	 * Imports all .bpmn and .bpmn20.xml entries of the given zip stream, in the order of the zip.
+	 * The stream is read once, so only the entries of the batches that are being converted or deployed 
+	 * are kept in memory. The stream is not closed.
+	 */
+	public WorkflowImportResult importZip(InputStream zipStream) {
+		ZipInputStream zipInputStream = new ZipInputStream(zipStream);
+		ImportRun importRun = new ImportRun();
+		try {
+			ZipEntry entry = zipInputStream.getNextEntry();
+			while (entry != null) {
+				if (!entry.isDirectory() && isBpmnFile(entry.getName())) {
+					final String fileName = entry.getName();
+					final byte[] bpmnXml = IoUtil.readInputStream(zipInputStream, fileName); // stops at the end of the entry
+					importRun.submit(fileName, new Callable<KickstartWorkflow>() {
+						public KickstartWorkflow call() throws Exception {
+							return convert(fileName, new ByteArrayInputStream(bpmnXml));
+						}
+					});
+				}
+				entry = zipInputStream.getNextEntry();
+			}
+			return importRun.finish();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read zip file", e);
+		} finally {
+			importRun.close();
+		}
+	}
+
+	/**
+	 * Converts one file. Called concurrently by the threads of the pool.
+	 */
+	protected KickstartWorkflow convert(String fileName, InputStream bpmnXml) {
+		KickstartWorkflow workflow = transformationService.convertToKickstartWorkflow(bpmnXml);
+		if (workflow.getTasks().isEmpty()) {
+			throw new RuntimeException("No process with KickStart tasks found in " + fileName);
+		}
+		if (workflow.getName() == null || workflow.getName().length() == 0) {
+			workflow.setName(getBaseName(fileName));
+		}
+		workflow.setId(generateWorkflowId(workflow));
+		return workflow;
+	}
+
+	protected String generateWorkflowId(KickstartWorkflow workflow) {
+		return workflowIdPrefix + workflow.getName().toLowerCase().replace(" ", "_");
+	}
+
+	protected static boolean isBpmnFile(String fileName) {
+		String lowerCaseName = fileName.toLowerCase();
+		return lowerCaseName.endsWith(".bpmn") || lowerCaseName.endsWith(".bpmn20.xml");
+	}
+
+	protected static String getBaseName(String fileName) {
+		String baseName = fileName.substring(fileName.lastIndexOf('/') + 1);
+		int index = baseName.indexOf('.');
+		return index > 0 ? baseName.substring(0, index) : baseName;
+	}
+
+	/**
+	 * Keeps track of the batch that is being converted and the one that is waiting
+	 * to be deployed, so at most two batches of files are in memory at any time.
+	 */
+	protected class ImportRun {
+
+		protected ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+		protected WorkflowImportResult result = new WorkflowImportResult();
+		protected long startTime = System.currentTimeMillis();
+		protected Map<String, String> fileNamesByWorkflowId = new HashMap<String, String>();
+
+		protected List<String> fileNames = new ArrayList<String>();
+		protected List<Future<KickstartWorkflow>> conversions = new ArrayList<Future<KickstartWorkflow>>();
+		protected List<String> previousFileNames = new ArrayList<String>();
+		protected List<Future<KickstartWorkflow>> previousConversions = new ArrayList<Future<KickstartWorkflow>>();
+
+		public void submit(String fileName, Callable<KickstartWorkflow> conversion) {
+			fileNames.add(fileName);
+			conversions.add(executorService.submit(conversion));
+			if (conversions.size() >= batchSize) {
+				deploy(previousFileNames, previousConversions);
+				previousFileNames = fileNames;
+				previousConversions = conversions;
+				fileNames = new ArrayList<String>();
+				conversions = new ArrayList<Future<KickstartWorkflow>>();
+			}
+		}
+
+		public WorkflowImportResult finish() {
+			deploy(previousFileNames, previousConversions);
+			deploy(fileNames, conversions);
+			result.setDuration(System.currentTimeMillis() - startTime);
+			return result;
+		}
+
+		public void close() {
+			executorService.shutdownNow();
+		}
+
+		protected void deploy(List<String> batchFileNames, List<Future<KickstartWorkflow>> batchConversions) {
+			for (int i = 0; i < batchConversions.size(); i++) {
+				String fileName = batchFileNames.get(i);
+				try {
+					KickstartWorkflow workflow = batchConversions.get(i).get();
+					String otherFileName = fileNamesByWorkflowId.get(workflow.getId());
+					if (otherFileName != null) {
+						throw new ActivitiException("Workflow '" + workflow.getName() + "' of " + fileName 
+								+ " has the same id '" + workflow.getId() + "' as the one of " + otherFileName);
+					}
+					fileNamesByWorkflowId.put(workflow.getId(), fileName);
+					result.addDeployment(fileName, kickstartService.deployWorkflow(workflow, null));
+				} catch (ExecutionException e) {
+					result.addError(fileName, e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Import was interrupted", e);
+				} catch (RuntimeException e) {
+					result.addError(fileName, e);
+				}
+			}
+			batchFileNames.clear();
+			batchConversions.clear();
+		}
+
+	}
+
+	// Getters & Setters
+
+	public int getNrOfThreads() {
+		return nrOfThreads;
+	}
+
+	public void setNrOfThreads(int nrOfThreads) {
+		if (nrOfThreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed: " + nrOfThreads);
+		}
+		this.nrOfThreads = nrOfThreads;
+	}
+
+	/**
+	 * Number of files that are deployed together, after which the converted workflows are released.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	public String getWorkflowIdPrefix() {
+		return workflowIdPrefix;
+	}
+
+	public void setWorkflowIdPrefix(String workflowIdPrefix) {
+		this.workflowIdPrefix = workflowIdPrefix;
+	}
+
+}
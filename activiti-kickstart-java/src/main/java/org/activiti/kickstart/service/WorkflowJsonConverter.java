@@ -0,0 +1,122 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.activiti.kickstart.dto.KickstartForm;
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartTask;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converts the json source of a workflow, as it is posted to the rest api and stored
+ * as {@link MetaDataKeys#WORKFLOW_JSON_SOURCE} metadata, to a {@link KickstartWorkflow}.
+ *
+ * The json contains the workflow name and description, and its user tasks with their
+ * assignment and form properties.
+ *
+ * @author jbarrez
+ */
+public class WorkflowJsonConverter {
+
+	protected ObjectMapper objectMapper = new ObjectMapper();
+
+	public KickstartWorkflow convertFromJson(String jsonText) {
+		JsonNode json = null;
+		try {
+			json = objectMapper.readTree(jsonText);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not parse workflow json", e);
+		}
+
+		KickstartWorkflow workflow = new KickstartWorkflow();
+
+		// Workflow name
+		String name = json.path("name").textValue();
+		if (name == null) {
+			throw new RuntimeException("Missing parameter [name] in json body");
+		}
+		workflow.setName(name);
+		workflow.setId(generateBaseName(name));
+
+		// Workflow description
+		workflow.setDescription(json.path("description").textValue());
+
+		// Workflow tasks
+		JsonNode taskArray = json.path("tasks");
+		if (taskArray.isArray()) {
+			List<KickstartTask> workflowTasks = new ArrayList<KickstartTask>(taskArray.size());
+			Iterator<JsonNode> taskIterator = taskArray.iterator();
+			while (taskIterator.hasNext()) {
+				workflowTasks.add(convertUserTask(taskIterator.next()));
+			}
+			workflow.setTasks(workflowTasks);
+		}
+
+		return workflow;
+	}
+
+	protected KickstartUserTask convertUserTask(JsonNode taskNode) {
+		KickstartUserTask workflowTask = new KickstartUserTask();
+
+		// Task details
+		workflowTask.setName(taskNode.path("name").textValue());
+		workflowTask.setDescription(taskNode.path("description").textValue());
+		workflowTask.setStartWithPrevious(taskNode.path("startWithPrevious").asBoolean());
+
+		// Task assignee
+		String assigneeType = taskNode.path("assigneeType").textValue();
+		if ("user".equals(assigneeType)) {
+			workflowTask.setAssignee(taskNode.path("assignee").textValue());
+		} else if ("group".equals(assigneeType)) {
+			workflowTask.setGroups(taskNode.path("assignee").textValue());
+		} else if ("initiator".equals(assigneeType)) {
+			workflowTask.setAssigneeInitiator(true);
+		}
+
+		// Task form
+		JsonNode formArray = taskNode.path("form");
+		if (formArray.isArray()) {
+			KickstartForm kickstartForm = new KickstartForm();
+			workflowTask.setForm(kickstartForm);
+
+			Iterator<JsonNode> formIterator = formArray.iterator();
+			while (formIterator.hasNext()) {
+				JsonNode formEntry = formIterator.next();
+				KickstartFormProperty formProperty = new KickstartFormProperty();
+				formProperty.setProperty(formEntry.path("name").textValue());
+				formProperty.setType(formEntry.path("type").textValue());
+				formProperty.setRequired("true".equals(formEntry.path("isRequired").asText())); // string or boolean
+				kickstartForm.addFormProperty(formProperty);
+			}
+		}
+
+		return workflowTask;
+	}
+
+	/**
+	 * Generates the id of a workflow, which is also the base name of the files that are deployed.
+	 */
+	public String generateBaseName(String name) {
+		return name.toLowerCase().replace(" ", "_");
+	}
+
+}
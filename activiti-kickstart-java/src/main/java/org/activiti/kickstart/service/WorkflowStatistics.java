@@ -0,0 +1,66 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.kickstart.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.activiti.kickstart.dto.KickstartWorkflowSummary;
+
+/**
+ * Deployment times, summaries and process instance counts of a set of process definitions,
+ * fetched together when listing workflows, see {@link FetchWorkflowStatisticsCmd}.
+ *
+ * @author jbarrez
+ */
+public class WorkflowStatistics {
+
+	protected Map<String, Date> deploymentTimes = new HashMap<String, Date>();
+	protected Map<String, long[]> instanceCounts = new HashMap<String, long[]>();
+	protected Map<String, KickstartWorkflowSummary> summaries = new HashMap<String, KickstartWorkflowSummary>();
+
+	public Date getDeploymentTime(String deploymentId) {
+		return deploymentTimes.get(deploymentId);
+	}
+
+	public void setDeploymentTime(String deploymentId, Date deploymentTime) {
+		deploymentTimes.put(deploymentId, deploymentTime);
+	}
+
+	/**
+	 * Returns the summary that was deployed with the workflow, see {@link KickstartWorkflowSummary}.
+	 */
+	public KickstartWorkflowSummary getSummary(String deploymentId) {
+		return summaries.get(deploymentId);
+	}
+
+	public void setSummary(String deploymentId, KickstartWorkflowSummary summary) {
+		summaries.put(deploymentId, summary);
+	}
+
+	public long getNrOfRunningInstances(String processDefinitionId) {
+		long[] counts = instanceCounts.get(processDefinitionId);
+		return counts != null ? counts[0] : 0;
+	}
+
+	public long getNrOfFinishedInstances(String processDefinitionId) {
+		long[] counts = instanceCounts.get(processDefinitionId);
+		return counts != null ? counts[1] : 0;
+	}
+
+	public void setInstanceCounts(String processDefinitionId, long nrOfRunningInstances, long nrOfFinishedInstances) {
+		instanceCounts.put(processDefinitionId, new long[] { nrOfRunningInstances, nrOfFinishedInstances });
+	}
+
+}
@@ -19,11 +19,15 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.net.URLEncoder;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -37,18 +41,24 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.activiti.kickstart.bpmn20.model.Definitions;
 import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
 import org.activiti.kickstart.dto.KickstartFormProperty;
 import org.activiti.kickstart.dto.KickstartTask;
 import org.activiti.kickstart.dto.KickstartUserTask;
 import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.dto.KickstartWorkflowCodec;
 import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowInfoCriteria;
+import org.activiti.kickstart.dto.KickstartWorkflowSummary;
 import org.activiti.kickstart.service.Bpmn20MarshallingService;
 import org.activiti.kickstart.service.KickstartService;
 import org.activiti.kickstart.service.MetaDataKeys;
+import org.activiti.kickstart.service.WorkflowJsonConverter;
 import org.apache.chemistry.opencmis.client.api.Document;
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
 import org.apache.chemistry.opencmis.client.api.QueryResult;
 import org.apache.chemistry.opencmis.client.api.Repository;
 import org.apache.chemistry.opencmis.client.api.Session;
@@ -70,6 +80,7 @@ import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -101,6 +112,10 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
   private static final String WORKFLOW_DEFINITION_FOLDER = "/Data Dictionary/Workflow Definitions";
 
   private static final String DATA_DICTIONARY_FOLDER = "/Data Dictionary/Models";
+  
+  private static final int MAX_SUMMARIES_PER_QUERY = 100;
+  
+  private static final int DEFAULT_WORKFLOW_CACHE_SIZE = 100;
 
   private static final String FORM_CONFIG_UPLOAD_URL = SHARE_BASE_URL + "page/modules/module";
 
@@ -148,6 +163,8 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 
   protected Session cachedSession;
   protected Bpmn20MarshallingService marshallingService;
+  protected WorkflowJsonConverter workflowJsonConverter = new WorkflowJsonConverter();
+  protected WorkflowCache workflowCache = new WorkflowCache(DEFAULT_WORKFLOW_CACHE_SIZE);
 	
 	public AlfrescoKickstartServiceImpl(String cmisUser, String cmisPassword, String cmisAtompubUrl) {
 		this.cmisUser = cmisUser;
@@ -212,6 +229,7 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	  
     // Upload process
 		deployProcess(kickstartWorkflow, baseName, jsonSource); // Can't get the deployment id, so returning process definition id
+		workflowCache.evict(baseName);
 		return baseName;
 	}
 
@@ -219,15 +237,19 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 		Session cmisSession = getCmisSession();
 		Folder workflowDefinitionFolder = (Folder) cmisSession.getObjectByPath(WORKFLOW_DEFINITION_FOLDER);
 		
-		uploadDiagramFile(kickstartWorkflow, baseFileName, workflowDefinitionFolder); // Process image (must go first, since it will add DI to the process xml)
+		// Converted only once: the image and the xml are generated from the same graph
+		Definitions definitions = marshallingService.convertToBpmn(kickstartWorkflow);
+		
+		uploadDiagramFile(kickstartWorkflow, definitions, baseFileName, workflowDefinitionFolder); // Process image (must go first, since it will add DI to the process xml)
 		uploadJsonFile(baseFileName, jsonSource, workflowDefinitionFolder);
-		uploadProcessFile(kickstartWorkflow, baseFileName, workflowDefinitionFolder);
+		uploadSummaryFile(kickstartWorkflow, baseFileName, workflowDefinitionFolder);
+		uploadProcessFile(kickstartWorkflow, definitions, baseFileName, workflowDefinitionFolder);
 	}
 
-  private void uploadDiagramFile(KickstartWorkflow kickstartWorkflow, String baseFileName, Folder workflowDefinitionFolder) {
+  private void uploadDiagramFile(KickstartWorkflow kickstartWorkflow, Definitions definitions, String baseFileName, Folder workflowDefinitionFolder) {
     LOGGER.info("Generating process image...");
 		ProcessDiagramGenerator diagramGenerator = new ProcessDiagramGenerator(kickstartWorkflow, marshallingService);
-		InputStream diagramInputStream = diagramGenerator.execute();
+		InputStream diagramInputStream = diagramGenerator.execute(definitions);
 		
 		// Diagram is deployed next to the process xml
 		if (workflowDefinitionFolder == null) {
@@ -255,7 +277,7 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
   private void uploadJsonFile(String baseFileName, String jsonSource, Folder workflowDefinitionFolder) {
     LOGGER.info("Upload json source...");
 		String jsonSrcFileName = baseFileName + ".json"; 
-		ContentStream jsonSrcContentStream = new ContentStreamImpl(jsonSrcFileName, null, "application/json", new ByteArrayInputStream(jsonSource.getBytes()));
+		ContentStream jsonSrcContentStream = new ContentStreamImpl(jsonSrcFileName, null, "application/json", new ByteArrayInputStream(getUtf8Bytes(jsonSource)));
 		Document jsonDocument = getDocumentFromFolder(workflowDefinitionFolder.getPath(), jsonSrcFileName);
 		if (jsonDocument == null) {
 		
@@ -272,15 +294,41 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 		}
   }
 
-  private void uploadProcessFile(KickstartWorkflow kickstartWorkflow, String baseFileName, Folder workflowDefinitionFolder) {
+  private void uploadSummaryFile(KickstartWorkflow kickstartWorkflow, String baseFileName, Folder workflowDefinitionFolder) {
+    LOGGER.info("Upload workflow summary...");
+    String summary = KickstartWorkflowSummary.create(kickstartWorkflow).format();
+    String summaryFileName = baseFileName + KickstartWorkflowSummary.RESOURCE_SUFFIX;
+    ContentStream summaryContentStream = new ContentStreamImpl(summaryFileName, null, "text/plain", new ByteArrayInputStream(getUtf8Bytes(summary)));
+    Document summaryDocument = getDocumentFromFolder(workflowDefinitionFolder.getPath(), summaryFileName);
+    if (summaryDocument == null) {
+      
+      // The summary is also stored as description, so a listing can query all summaries of a page at once
+      HashMap<String, Object> summaryProperties = new HashMap<String, Object>();
+      summaryProperties.put(PropertyIds.NAME, summaryFileName);
+      summaryProperties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document,P:cm:titled");
+      summaryProperties.put("cm:description", summary);
+      
+      workflowDefinitionFolder.createDocument(summaryProperties, summaryContentStream, VersioningState.MAJOR);
+      
+    } else {
+      
+      summaryDocument.setContentStream(summaryContentStream, true);
+      summaryDocument.updateProperties(Collections.singletonMap("cm:description", summary));
+      
+    }
+  }
+
+  private void uploadProcessFile(KickstartWorkflow kickstartWorkflow, Definitions definitions, String baseFileName, Folder workflowDefinitionFolder) {
     String processFileName = baseFileName + ".bpmn20.xml";
 		
-    String workflowXML = marshallingService.marshallWorkflow(kickstartWorkflow);
+    // Marshalled as UTF-8 straight into the buffer that backs the content stream
+    ByteArrayOutputStream workflowXml = new ByteArrayOutputStream();
+    marshallingService.marshallDefinitions(definitions, workflowXml);
     
-    InputStream inputStream = new ByteArrayInputStream(workflowXML.getBytes()); 
     LOGGER.info("Uploading process definition xml...");
-    prettyLogXml(workflowXML);
-    ContentStream processContentStream = new ContentStreamImpl(processFileName, null, "application/xml", inputStream);
+    prettyLogXml(new StreamSource(workflowXml.toInputStream()));
+    ContentStream processContentStream = new ContentStreamImpl(processFileName, 
+            BigInteger.valueOf(workflowXml.size()), "application/xml", workflowXml.toInputStream());
     
     Document processDocument = getDocumentFromFolder(workflowDefinitionFolder.getPath(), processFileName);
     if (processDocument == null) {
@@ -571,18 +619,121 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	  // Transmorph them into the correct KickstartWorkflowInfo object
     ArrayList<KickstartWorkflowInfo> workflowInfos = new ArrayList<KickstartWorkflowInfo>();
     for (QueryResult result : results) {
-      // We're using only a fraction of the KickstartWorkflowInfo objects
-      KickstartWorkflowInfo kickstartWorkflowInfo = new KickstartWorkflowInfo();
-      kickstartWorkflowInfo.setName((String) result.getPropertyValueById("cm:description"));
-      kickstartWorkflowInfo.setId(processNameToBaseName((String) result.getPropertyValueById(PropertyIds.NAME)));  
-      GregorianCalendar createDate = result.getPropertyValueById(PropertyIds.CREATION_DATE); 
-      kickstartWorkflowInfo.setCreateTime(createDate.getTime()) ;
-      workflowInfos.add(kickstartWorkflowInfo);
+      workflowInfos.add(convertToWorkflowInfo(result));
+    }
+    fetchSummaries(cmisSession, workflowDefinitionFolder, workflowInfos);
+    
+    return workflowInfos;
+	}
+	
+	public List<KickstartWorkflowInfo> findWorkflowInformation(KickstartWorkflowInfoCriteria criteria, boolean includeCounts) {
+	  
+	  if (includeCounts) {
+	    // Not yet implemented, cause it would be an 1+n call ...
+	    throw new UnsupportedOperationException();
+	  }
+	  
+	  // Same query as above, but the filtering and sorting is done by the repository.
+	  // Redeploying overwrites the documents, so there is only ever one version (cfr. criteria.isLatestVersionOnly())
+	  Session cmisSession = getCmisSession();
+    Folder workflowDefinitionFolder = (Folder) cmisSession.getObjectByPath(WORKFLOW_DEFINITION_FOLDER);
+    StringBuilder query = new StringBuilder("select t.cm:description, d." + PropertyIds.NAME + ", d." + PropertyIds.CREATION_DATE +
+            " from cmis:document as d join cm:titled as t on d.cmis:objectId = t.cmis:objectId where in_folder(d, '" + workflowDefinitionFolder.getId() +
+            "') and d.cmis:name LIKE '%.bpmn20.xml'");
+    if (criteria.getNameFilter() != null && criteria.getNameFilter().length() > 0) {
+      query.append(" and t.cm:description LIKE '").append(escapeLikePattern(criteria.getNameFilter())).append("%'");
     }
+    query.append(" order by ").append(criteria.getSort() == KickstartWorkflowInfoCriteria.Sort.KEY ? "d.cmis:name" : "t.cm:description");
+    query.append(criteria.isAscending() ? " ASC" : " DESC");
+    LOGGER.info("Executing CMIS query '" + query + "'");
     
+    // skipTo and getPage are sent as the skipCount and maxItems of the query, only one page is fetched
+    OperationContext operationContext = cmisSession.createOperationContext();
+    operationContext.setMaxItemsPerPage(criteria.getSize());
+    ItemIterable<QueryResult> results = cmisSession.query(query.toString(), false, operationContext)
+            .skipTo(criteria.getStart()).getPage(criteria.getSize());
+    
+    ArrayList<KickstartWorkflowInfo> workflowInfos = new ArrayList<KickstartWorkflowInfo>(criteria.getSize());
+    for (QueryResult result : results) {
+      workflowInfos.add(convertToWorkflowInfo(result));
+    }
+    fetchSummaries(cmisSession, workflowDefinitionFolder, workflowInfos);
     return workflowInfos;
 	}
 	
+	/**
+	 * Sets the summaries that were uploaded when deploying, read from the description
+	 * of the summary documents with one query per {@link #MAX_SUMMARIES_PER_QUERY} workflows.
+	 */
+	protected void fetchSummaries(Session cmisSession, Folder workflowDefinitionFolder, List<KickstartWorkflowInfo> workflowInfos) {
+	  Map<String, KickstartWorkflowInfo> workflowInfosBySummaryName = new HashMap<String, KickstartWorkflowInfo>();
+	  for (int start = 0; start < workflowInfos.size(); start += MAX_SUMMARIES_PER_QUERY) {
+	    StringBuilder summaryNames = new StringBuilder();
+	    for (KickstartWorkflowInfo workflowInfo : workflowInfos.subList(start, Math.min(workflowInfos.size(), start + MAX_SUMMARIES_PER_QUERY))) {
+	      String summaryName = workflowInfo.getId() + KickstartWorkflowSummary.RESOURCE_SUFFIX;
+	      workflowInfosBySummaryName.put(summaryName, workflowInfo);
+	      summaryNames.append(summaryNames.length() > 0 ? ", '" : "'").append(escapeStringLiteral(summaryName)).append("'");
+	    }
+	    
+	    String query = "select d." + PropertyIds.NAME + ", t.cm:description from cmis:document as d join cm:titled as t on d.cmis:objectId = t.cmis:objectId" +
+	            " where in_folder(d, '" + workflowDefinitionFolder.getId() + "') and d.cmis:name in (" + summaryNames + ")";
+	    for (QueryResult result : cmisSession.query(query, false)) {
+	      KickstartWorkflowInfo workflowInfo = workflowInfosBySummaryName.get(result.getPropertyValueById(PropertyIds.NAME));
+	      String summary = result.getPropertyValueById("cm:description");
+	      if (workflowInfo != null && summary != null) {
+	        workflowInfo.setSummary(KickstartWorkflowSummary.parse(summary));
+	      }
+	    }
+	  }
+	}
+	
+	protected KickstartWorkflowInfo convertToWorkflowInfo(QueryResult result) {
+    // We're using only a fraction of the KickstartWorkflowInfo objects
+    KickstartWorkflowInfo kickstartWorkflowInfo = new KickstartWorkflowInfo();
+    kickstartWorkflowInfo.setName((String) result.getPropertyValueById("cm:description"));
+    kickstartWorkflowInfo.setId(processNameToBaseName((String) result.getPropertyValueById(PropertyIds.NAME)));  
+    GregorianCalendar createDate = result.getPropertyValueById(PropertyIds.CREATION_DATE); 
+    kickstartWorkflowInfo.setCreateTime(createDate.getTime()) ;
+    return kickstartWorkflowInfo;
+	}
+	
+	/**
+	 * Escapes the given text for use in a CMIS LIKE string literal.
+	 */
+	protected String escapeLikePattern(String text) {
+	  return escape(text, "\\'%_");
+	}
+	
+	/**
+	 * Escapes the given text for use in a CMIS string literal.
+	 */
+	protected String escapeStringLiteral(String text) {
+	  return escape(text, "\\'");
+	}
+	
+	protected String escape(String text, String charactersToEscape) {
+	  StringBuilder strb = new StringBuilder(text.length() + 8);
+	  for (int i = 0; i < text.length(); i++) {
+	    char c = text.charAt(i);
+	    if (charactersToEscape.indexOf(c) > -1) {
+	      strb.append('\\');
+	    }
+	    strb.append(c);
+	  }
+	  return strb.toString();
+	}
+	
+	/**
+	 * Content uploaded by KickStart is always UTF-8, whatever the platform charset is.
+	 */
+	protected byte[] getUtf8Bytes(String text) {
+	  try {
+	    return text.getBytes("UTF-8");
+	  } catch (UnsupportedEncodingException e) {
+	    throw new RuntimeException(e);
+	  }
+	}
+	
 	public KickstartWorkflowInfo findWorkflowInformation(String processDefinitionId, boolean includeCounts) {
 	  KickstartWorkflowInfo kickstartWorkflowInfo = new KickstartWorkflowInfo();
 	  
@@ -603,6 +754,8 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
       return null;
     }
 	  
+	  fetchSummaries(cmisSession, workflowDefinitionFolder, Collections.singletonList(kickstartWorkflowInfo));
+	  
 	  // Get counts
 	  if (includeCounts) {
 	    kickstartWorkflowInfo.setNrOfRuntimeInstances(retrieveWorkflowInstanceIds(kickstartWorkflowInfo.getName()).size());
@@ -611,8 +764,38 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	  return kickstartWorkflowInfo;
   }
 
+	/**
+	 * Rebuilds the workflow from the json source that was stored next to the process when it was deployed,
+	 * which is a lot smaller than the process xml. Parsed workflows are cached, encoded with the
+	 * {@link KickstartWorkflowCodec}, so every call returns a new workflow that can be changed freely.
+	 */
 	public KickstartWorkflow findWorkflowById(String id) {
-		throw new UnsupportedOperationException();
+	  byte[] encodedWorkflow = workflowCache.get(id);
+	  if (encodedWorkflow != null) {
+	    return KickstartWorkflowCodec.decode(encodedWorkflow);
+	  }
+	  
+	  long generation = workflowCache.getGeneration();
+	  KickstartWorkflow workflow = workflowJsonConverter.convertFromJson(readWorkflowJsonSource(id));
+	  workflow.setId(id);
+	  workflowCache.put(id, KickstartWorkflowCodec.encode(workflow), generation);
+	  return workflow;
+	}
+	
+	protected String readWorkflowJsonSource(String id) {
+	  Document jsonDocument = getDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, id + ".json");
+	  if (jsonDocument == null) {
+	    throw new RuntimeException("No json source found for workflow '" + id + "'");
+	  }
+	  
+	  InputStream inputStream = jsonDocument.getContentStream().getStream();
+	  try {
+	    return IOUtils.toString(inputStream, "UTF-8"); // same encoding as used by uploadJsonFile
+	  } catch (IOException e) {
+	    throw new RuntimeException("Could not read json source of workflow '" + id + "'", e);
+	  } finally {
+	    IOUtils.closeQuietly(inputStream);
+	  }
 	}
 	
 	public void deleteWorkflow(String processDefinitionId) {
@@ -625,6 +808,7 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + ".png");
 	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + "_image.png");
 	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + ".json");
+	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + KickstartWorkflowSummary.RESOURCE_SUFFIX);
 	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + ".bpmn20.xml");
 	  
 	  // Remove task model
@@ -633,6 +817,8 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	  // Remove form config
 	  deleteFormConfig(processDefinitionId);
 	  deleteDocumentFromFolder(WORKFLOW_DEFINITION_FOLDER, processDefinitionId + "-form-config.xml");
+	  
+	  workflowCache.evict(processDefinitionId);
   }
 
 	public InputStream getProcessImage(String processDefinitionId) {
@@ -866,6 +1052,13 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 		return marshallingService;
 	}
 
+	/**
+	 * Sets the maximum number of parsed workflows that are kept by {@link #findWorkflowById(String)}.
+	 */
+	public void setWorkflowCacheSize(int workflowCacheSize) {
+	  this.workflowCache = new WorkflowCache(workflowCacheSize);
+	}
+	
 	public void setMarshallingService(Bpmn20MarshallingService marshallingService) {
 		this.marshallingService = marshallingService;
 	}
@@ -945,13 +1138,15 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 	}
 	
 	protected void prettyLogXml(String xml) {
+		prettyLogXml(new StreamSource(new StringReader(xml)));
+	}
+	
+	protected void prettyLogXml(Source xmlInput) {
 		try {
 			Transformer transformer = TransformerFactory.newInstance().newTransformer(); 
 			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
 			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 			 
-			Source xmlInput = new StreamSource(new StringReader(xml));
-			 
 			StreamResult xmlOutput = new StreamResult(new StringWriter());
 			transformer.transform(xmlInput, xmlOutput);
 			LOGGER.info(xmlOutput.getWriter().toString());
@@ -960,4 +1155,44 @@ public class AlfrescoKickstartServiceImpl implements KickstartService {
 		}
 	}
 	
+	/**
+	 * Least recently used cache of encoded workflows, by id. Every eviction starts a new generation:
+	 * a workflow that was read before an eviction isn't cached anymore afterwards, since it might
+	 * be the version from before the redeploy.
+	 */
+	protected static class WorkflowCache {
+	  
+	  protected LinkedHashMap<String, byte[]> encodedWorkflows;
+	  protected long generation;
+	  
+	  public WorkflowCache(final int maxSize) {
+	    this.encodedWorkflows = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+	      private static final long serialVersionUID = 1L;
+	      protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+	        return size() > maxSize;
+	      }
+	    };
+	  }
+	  
+	  public synchronized byte[] get(String id) {
+	    return encodedWorkflows.get(id);
+	  }
+	  
+	  public synchronized long getGeneration() {
+	    return generation;
+	  }
+	  
+	  public synchronized void put(String id, byte[] encodedWorkflow, long readGeneration) {
+	    if (readGeneration == generation) {
+	      encodedWorkflows.put(id, encodedWorkflow);
+	    }
+	  }
+	  
+	  public synchronized void evict(String id) {
+	    encodedWorkflows.remove(id);
+	    generation++;
+	  }
+	  
+	}
+	
 }
\ No newline at end of file
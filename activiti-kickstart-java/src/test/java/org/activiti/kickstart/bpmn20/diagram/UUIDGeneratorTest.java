@@ -0,0 +1,82 @@
+package org.activiti.kickstart.bpmn20.diagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.junit.After;
+import org.junit.Test;
+
+
+public class UUIDGeneratorTest {
+
+    @After
+    public void resetIdGenerator() {
+        UUIDGenerator.setIdGenerator(UUIDGenerator.THREAD_LOCAL_RANDOM);
+    }
+
+    @Test
+    public void testGeneratedIdsAreUniqueVersion4Uuids() throws Exception {
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 10000; i++) {
+            String id = UUIDGenerator.generate();
+            assertTrue(id.startsWith("sid-"));
+            assertEquals(4, UUID.fromString(id.substring(4)).version());
+            ids.add(id);
+        }
+        assertEquals(10000, ids.size());
+    }
+
+    @Test
+    public void testPluggableIdGenerator() throws Exception {
+        UUIDGenerator.setIdGenerator(new IdGenerator() {
+            public String generateId() {
+                return "fixed";
+            }
+        });
+        assertEquals("fixed", new UserTask().getId());
+    }
+
+    @Test
+    public void testNoIdsWhileSuspended() throws Exception {
+        UUIDGenerator.suspend();
+        UUIDGenerator.suspend();
+        UUIDGenerator.resume();
+        assertNull(new UserTask().getId());
+        UUIDGenerator.resume();
+        assertNotNull(new UserTask().getId());
+    }
+
+    @Test
+    public void testUnmarshalledElementsOnlyGenerateMissingIds() throws Exception {
+        final AtomicInteger generatedIds = new AtomicInteger();
+        UUIDGenerator.setIdGenerator(new IdGenerator() {
+            public String generateId() {
+                return "generated-" + generatedIds.incrementAndGet();
+            }
+        });
+        String bpmnXml = "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"kickstart\">"
+                + "<process id=\"myProcess\"><documentation>No id</documentation><userTask id=\"myTask\"/></process>"
+                + "</definitions>";
+        Definitions definitions = Bpmn20JaxbContext.getInstance().unmarshal(bpmnXml.getBytes("UTF-8"));
+
+        assertNull(definitions.getId());
+        Process process = (Process) definitions.getRootElement().get(0);
+        assertEquals("myProcess", process.getId());
+        assertEquals("generated-1", process.getDocumentation().get(0).getId());
+        assertEquals("myTask", process.getFlowElement().get(0).getId());
+        assertEquals(1, generatedIds.get());
+        assertNotNull(new UserTask().getId());
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.activiti.kickstart.bpmn20.model;
+
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.model.connector.SequenceFlow;
+import org.activiti.kickstart.bpmn20.model.event.StartEvent;
+import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+
+
+/**
+ * Reports the retained heap, in bytes, of the model elements and of an unmarshalled
+ * 100 task workflow. Not a unit test: run the main method by hand. The numbers are the 
+ * growth of the used heap after a full gc, divided by the number of retained objects, 
+ * so run it with a fixed heap (eg. -Xms512m -Xmx512m) to keep them stable.
+ */
+public class ModelFootprintBenchmark {
+
+    protected static final int NR_OF_ELEMENTS = 10000;
+    protected static final int NR_OF_WORKFLOWS = 100;
+
+    public static void main(String[] args) throws Exception {
+        printFootprint(UserTask.class);
+        printFootprint(SequenceFlow.class);
+        printFootprint(StartEvent.class);
+        printFootprint(ParallelGateway.class);
+        printFootprint(Documentation.class);
+        printWorkflowFootprint();
+    }
+
+    protected static void printFootprint(Class<? extends BaseElement> elementType) throws Exception {
+        Object[] elements = new Object[NR_OF_ELEMENTS];
+        long before = usedMemory();
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = elementType.newInstance();
+        }
+        long retained = usedMemory() - before;
+        System.out.println(elementType.getSimpleName() + ": " + (retained / elements.length) 
+                + " bytes (" + elements[elements.length - 1].getClass().getSimpleName() + ")");
+    }
+
+    protected static void printWorkflowFootprint() throws Exception {
+        byte[] bpmnXml = new MarshallingServiceImpl().marshallWorkflow(createWorkflow(100)).getBytes("UTF-8");
+
+        Object[] workflows = new Object[NR_OF_WORKFLOWS];
+        long before = usedMemory();
+        for (int i = 0; i < workflows.length; i++) {
+            workflows[i] = Bpmn20JaxbContext.getInstance().unmarshal(bpmnXml);
+        }
+        long retained = usedMemory() - before;
+        System.out.println("Unmarshalled 100 task workflow: " + (retained / workflows.length) 
+                + " bytes (" + workflows[workflows.length - 1].getClass().getSimpleName() + ")");
+    }
+
+    protected static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    protected static KickstartWorkflow createWorkflow(int nrOfTasks) {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setId("footprint");
+        workflow.setName("Footprint workflow");
+        for (int i = 0; i < nrOfTasks; i++) {
+            KickstartUserTask task = new KickstartUserTask();
+            task.setName("Task " + i);
+            task.setAssignee("kermit");
+            task.setStartWithPrevious(i % 2 == 1);
+            workflow.addTask(task);
+        }
+        return workflow;
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.activiti.kickstart.bpmn20.model;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+
+import org.activiti.kickstart.bpmn20.util.Bpmn20StaxWriter;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+import org.junit.Test;
+
+
+/**
+ * Checks that the model elements stay lean: the lazy collections and maps are
+ * only allocated when something is stored in them.
+ */
+public class ModelFootprintTest {
+    
+    @Test
+    public void testReadingDoesNotAllocateCollections() throws Exception {
+        Definitions definitions = new MarshallingServiceImpl().convertToBpmn(createWorkflow(10));
+        new Bpmn20StaxWriter().write(definitions, new ByteArrayOutputStream());
+        
+        Process process = (Process) definitions.getRootElement().get(0);
+        for (FlowElement flowElement : process.getFlowElement()) {
+            assertNull(flowElement.any);
+            assertNull(flowElement.categoryValue);
+            assertFalse(flowElement.isSetOtherAttributes());
+        }
+    }
+    
+    protected KickstartWorkflow createWorkflow(int nrOfTasks) {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setId("footprint");
+        workflow.setName("Footprint workflow");
+        for (int i = 0; i < nrOfTasks; i++) {
+            KickstartUserTask task = new KickstartUserTask();
+            task.setName("Task " + i);
+            task.setAssignee("kermit");
+            task.setStartWithPrevious(i % 2 == 1);
+            workflow.addTask(task);
+        }
+        return workflow;
+    }
+    
+}
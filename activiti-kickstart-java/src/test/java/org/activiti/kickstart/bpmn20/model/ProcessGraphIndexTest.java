@@ -0,0 +1,218 @@
+package org.activiti.kickstart.bpmn20.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.model.connector.SequenceFlow;
+import org.activiti.kickstart.bpmn20.model.gateway.ParallelGateway;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+import org.junit.Test;
+
+
+public class ProcessGraphIndexTest {
+
+    @Test
+    public void testAdjacency() {
+        Process process = convert(createWorkflow());
+        ProcessGraphIndex graph = process.getGraphIndex();
+
+        FlowElement start = graph.getElement(KickstartWorkflow.START_NAME);
+        assertEquals(0, graph.getIncoming(start).size());
+        assertEquals(1, graph.getOutgoing(start).size());
+
+        FlowElement fork = graph.getOutgoing(start).get(0).getTargetRef();
+        assertTrue(fork instanceof ParallelGateway);
+        assertEquals(3, graph.getOutgoing(fork).size());
+        for (SequenceFlow sequenceFlow : graph.getOutgoing(fork)) {
+            assertSame(fork, sequenceFlow.getSourceRef());
+            assertTrue(sequenceFlow.getTargetRef() instanceof UserTask);
+            assertEquals(1, graph.getIncoming(sequenceFlow.getTargetRef()).size());
+        }
+
+        FlowElement end = graph.getElement(KickstartWorkflow.END_NAME);
+        assertEquals(1, graph.getIncoming(end).size());
+        assertEquals(0, graph.getOutgoing(KickstartWorkflow.END_NAME).size());
+        assertEquals(0, graph.getOutgoing("unknown").size());
+    }
+
+    @Test
+    public void testTopologicalOrder() {
+        Process process = convert(createWorkflow());
+        ProcessGraphIndex graph = process.getGraphIndex();
+
+        List<FlowNode> order = graph.getTopologicalOrder();
+        assertEquals(KickstartWorkflow.START_NAME, order.get(0).getId());
+        assertEquals(KickstartWorkflow.END_NAME, order.get(order.size() - 1).getId());
+        for (FlowElement flowElement : process.getFlowElement()) {
+            if (flowElement instanceof SequenceFlow) {
+                SequenceFlow sequenceFlow = (SequenceFlow) flowElement;
+                assertTrue(order.indexOf(sequenceFlow.getSourceRef()) < order.indexOf(sequenceFlow.getTargetRef()));
+            }
+        }
+    }
+
+    @Test
+    public void testCycleKeepsAllNodes() {
+        Process process = new Process();
+        UserTask first = createUserTask("first");
+        UserTask second = createUserTask("second");
+        process.addChild(first);
+        process.addChild(second);
+        process.addChild(createSequenceFlow("flow1", first, second));
+        process.addChild(createSequenceFlow("flow2", second, first));
+
+        List<FlowNode> order = process.getGraphIndex().getTopologicalOrder();
+        assertEquals(2, order.size());
+        assertSame(first, order.get(0));
+        assertSame(second, order.get(1));
+    }
+
+    @Test
+    public void testIndexIsSharedUntilProcessChanges() {
+        Process process = convert(createWorkflow());
+        ProcessGraphIndex graph = process.getGraphIndex();
+        assertSame(graph, process.getGraphIndex());
+
+        process.addChild(createUserTask("extra"));
+        ProcessGraphIndex rebuilt = process.getGraphIndex();
+        assertNotSame(graph, rebuilt);
+        assertSame(rebuilt, process.getGraphIndex());
+
+        process.invalidateGraphIndex();
+        assertNotSame(rebuilt, process.getGraphIndex());
+    }
+
+    @Test
+    public void testReplacingAnElementDropsTheIndex() {
+        Process process = new Process();
+        UserTask first = createUserTask("first");
+        UserTask second = createUserTask("second");
+        process.getFlowElement().add(first);
+        process.getFlowElement().add(second);
+        process.getFlowElement().add(createSequenceFlow("flow", first, second));
+        assertEquals(1, process.getGraphIndex().getIncoming("second").size());
+
+        UserTask replacement = createUserTask("replacement");
+        process.getFlowElement().set(1, replacement);
+        assertSame(replacement, process.getGraphIndex().getElement("replacement"));
+        assertEquals(0, process.getGraphIndex().getOutgoing("first").size());
+    }
+
+    @Test
+    public void testReplacingThroughAListIteratorDropsTheIndex() {
+        Process process = new Process();
+        process.getFlowElement().add(createUserTask("first"));
+        process.getFlowElement().add(createUserTask("second"));
+        process.getFlowElement().add(createUserTask("third"));
+        ProcessGraphIndex index = process.getGraphIndex();
+
+        ListIterator<FlowElement> iterator = process.getFlowElement().listIterator();
+        while (iterator.hasNext()) {
+            FlowElement flowElement = iterator.next();
+            if ("second".equals(flowElement.getId())) {
+                iterator.set(createUserTask("replacement"));
+            }
+        }
+        assertNotSame(index, process.getGraphIndex());
+        assertEquals("replacement", process.getGraphIndex().getElement("replacement").getId());
+
+        Collections.sort(process.getFlowElement(), new Comparator<FlowElement>() {
+            public int compare(FlowElement first, FlowElement second) {
+                return first.getId().compareTo(second.getId());
+            }
+        });
+        assertEquals("first", process.getFlowElement().get(0).getId());
+        assertEquals("third", process.getFlowElement().get(2).getId());
+    }
+
+    @Test
+    public void testRewiringAFlowDropsTheIndex() {
+        Process process = new Process();
+        UserTask first = createUserTask("first");
+        UserTask second = createUserTask("second");
+        UserTask third = createUserTask("third");
+        SequenceFlow sequenceFlow = createSequenceFlow("flow", first, second);
+        process.addChild(first);
+        process.addChild(second);
+        process.addChild(third);
+        process.addChild(sequenceFlow);
+        assertEquals(1, process.getGraphIndex().getIncoming("second").size());
+
+        sequenceFlow.setTargetRef(third);
+        assertEquals(0, process.getGraphIndex().getIncoming("second").size());
+        assertEquals(1, process.getGraphIndex().getIncoming("third").size());
+
+        third.setId("renamed");
+        assertSame(third, process.getGraphIndex().getElement("renamed"));
+    }
+
+    @Test
+    public void testFlowNodeSequenceFlowsComeFromTheIndex() {
+        Process process = convert(createWorkflow());
+        FlowNode start = (FlowNode) process.getGraphIndex().getElement(KickstartWorkflow.START_NAME);
+        assertSame(start.getOutgoingSequenceFlows(), start.getOutgoingSequenceFlows());
+        assertSame(process.getGraphIndex().getOutgoing(start), start.getOutgoingSequenceFlows());
+        assertEquals(0, start.getIncomingSequenceFlows().size());
+    }
+
+    @Test
+    public void testListsAreUnmodifiable() {
+        ProcessGraphIndex graph = convert(createWorkflow()).getGraphIndex();
+        try {
+            graph.getOutgoing(KickstartWorkflow.START_NAME).clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            graph.getTopologicalOrder().clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    protected Process convert(KickstartWorkflow workflow) {
+        Definitions definitions = new MarshallingServiceImpl().convertToBpmn(workflow);
+        return (Process) definitions.getRootElement().get(0);
+    }
+
+    protected KickstartWorkflow createWorkflow() {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setId("graph");
+        workflow.setName("Graph workflow");
+        for (int i = 0; i < 5; i++) {
+            KickstartUserTask task = new KickstartUserTask();
+            task.setName("Task " + i);
+            task.setStartWithPrevious(i == 1 || i == 2);
+            workflow.addTask(task);
+        }
+        return workflow;
+    }
+
+    protected UserTask createUserTask(String id) {
+        UserTask userTask = new UserTask();
+        userTask.setId(id);
+        return userTask;
+    }
+
+    protected SequenceFlow createSequenceFlow(String id, FlowElement source, FlowElement target) {
+        SequenceFlow sequenceFlow = new SequenceFlow();
+        sequenceFlow.setId(id);
+        sequenceFlow.setSourceRef(source);
+        sequenceFlow.setTargetRef(target);
+        return sequenceFlow;
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.activiti.kickstart.bpmn20.model.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.activiti.kickstart.bpmn20.model.BaseElement;
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.FlowElement;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
+import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitiFormProperty;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.activiti.kickstart.dto.KickstartForm;
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+import org.junit.Test;
+
+
+public class ExtensionElementsTest {
+
+    @Test
+    public void testLookupByType() {
+        ExtensionElements extensionElements = new ExtensionElements();
+        assertNull(extensionElements.getFirstExtensionElementOfType(ActivitiFormProperty.class));
+        assertTrue(extensionElements.getAllElementOfType(ActivitiFormProperty.class).isEmpty());
+
+        ActivitiFormProperty first = createFormProperty("first");
+        ActivitFieldExtensionElement field = new ActivitFieldExtensionElement();
+        ActivitiFormProperty second = createFormProperty("second");
+        extensionElements.add(first);
+        extensionElements.add(field);
+        extensionElements.add(second);
+
+        assertSame(first, extensionElements.getFirstExtensionElementOfType(ActivitiFormProperty.class));
+        assertSame(field, extensionElements.getFirstExtensionElementOfType(ActivitFieldExtensionElement.class));
+        List<ActivitiFormProperty> formProperties = extensionElements.getAllElementOfType(ActivitiFormProperty.class);
+        assertEquals(2, formProperties.size());
+        assertSame(first, formProperties.get(0));
+        assertSame(second, formProperties.get(1));
+
+        // Lookups on an unchanged index don't allocate
+        assertSame(formProperties, extensionElements.getAllElementOfType(ActivitiFormProperty.class));
+        try {
+            formProperties.clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testChangesToAnyListAreNoticed() {
+        ExtensionElements extensionElements = new ExtensionElements();
+        extensionElements.add(createFormProperty("first"));
+        assertEquals(1, extensionElements.getAllElementOfType(ActivitiFormProperty.class).size());
+
+        extensionElements.getAny().add(createFormProperty("second"));
+        assertEquals(2, extensionElements.getAllElementOfType(ActivitiFormProperty.class).size());
+
+        extensionElements.getAny().clear();
+        assertNull(extensionElements.getFirstExtensionElementOfType(ActivitiFormProperty.class));
+    }
+
+    @Test
+    public void testLookupAfterUnmarshal() throws Exception {
+        MarshallingServiceImpl marshallingService = new MarshallingServiceImpl();
+        String bpmn = marshallingService.marshallWorkflow(createFormWorkflow());
+        Definitions definitions = Bpmn20JaxbContext.getInstance().unmarshal(bpmn.getBytes("UTF-8"));
+
+        UserTask userTask = null;
+        for (BaseElement rootElement : definitions.getRootElement()) {
+            if (rootElement instanceof Process) {
+                for (FlowElement flowElement : ((Process) rootElement).getFlowElement()) {
+                    if (flowElement instanceof UserTask) {
+                        userTask = (UserTask) flowElement;
+                    }
+                }
+            }
+        }
+
+        List<ActivitiFormProperty> formProperties = userTask.getExtensionElements().getAllElementOfType(ActivitiFormProperty.class);
+        assertEquals(3, formProperties.size());
+        assertEquals("firstName", formProperties.get(0).getName());
+        assertEquals("birthDate", formProperties.get(2).getName());
+    }
+
+    protected ActivitiFormProperty createFormProperty(String name) {
+        ActivitiFormProperty formProperty = new ActivitiFormProperty();
+        formProperty.setId(name);
+        formProperty.setName(name);
+        return formProperty;
+    }
+
+    protected KickstartWorkflow createFormWorkflow() {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setName("Form workflow");
+
+        KickstartForm form = new KickstartForm();
+        form.addFormProperty(createKickstartFormProperty("firstName", "text"));
+        form.addFormProperty(createKickstartFormProperty("lastName", "text"));
+        form.addFormProperty(createKickstartFormProperty("birthDate", "date"));
+
+        KickstartUserTask task = new KickstartUserTask();
+        task.setName("Fill in form");
+        task.setForm(form);
+        workflow.addTask(task);
+        return workflow;
+    }
+
+    protected KickstartFormProperty createKickstartFormProperty(String property, String type) {
+        KickstartFormProperty formProperty = new KickstartFormProperty();
+        formProperty.setProperty(property);
+        formProperty.setType(type);
+        return formProperty;
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.activiti.kickstart.bpmn20.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+
+public class EscapingStringAdapterTest {
+
+    @Test
+    public void testLegalStringIsNotCopied() throws Exception {
+        String legal = "Tabs\t, newlines\r\n and \u00e9t\u00e9 are fine";
+        assertSame(legal, EscapingStringAdapter.escapeCharacters(legal));
+        assertNull(EscapingStringAdapter.escapeCharacters(null));
+    }
+
+    @Test
+    public void testAllIllegalCharactersAreRemoved() throws Exception {
+        // Consecutive illegal characters, at the start and at the end
+        assertEquals("abc", EscapingStringAdapter.escapeCharacters("\u0000a\u0001\u0002b\u001F\uFFFEc\uFFFF"));
+        assertEquals("", EscapingStringAdapter.escapeCharacters("\u0000\u0001\u0002"));
+    }
+
+    @Test
+    public void testLargeText() throws Exception {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append("line ").append(i).append('\u000B').append('\n');
+            expected.append("line ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), EscapingStringAdapter.escapeCharacters(text.toString()));
+    }
+
+}
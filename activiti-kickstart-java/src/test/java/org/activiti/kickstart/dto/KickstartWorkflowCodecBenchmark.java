@@ -0,0 +1,74 @@
+package org.activiti.kickstart.dto;
+
+import java.io.ByteArrayInputStream;
+
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+import org.activiti.kickstart.service.StaxTransformationServiceImpl;
+import org.activiti.kickstart.service.WorkflowJsonConverter;
+
+
+/**
+ * Compares the size and the decode time of the {@link KickstartWorkflowCodec} with the
+ * json source and the BPMN 2.0 xml of the same workflow. Not a unit test: run the main
+ * method by hand, the timings depend on the machine.
+ */
+public class KickstartWorkflowCodecBenchmark {
+
+    protected static final int NR_OF_WARMUP_ROUNDS = 3;
+    protected static final int NR_OF_ROUNDS = 5;
+    protected static final int NR_OF_DECODES = 10000;
+
+    public static void main(String[] args) throws Exception {
+        String json = createJsonSource(20);
+        WorkflowJsonConverter jsonConverter = new WorkflowJsonConverter();
+        KickstartWorkflow workflow = jsonConverter.convertFromJson(json);
+        byte[] jsonBytes = json.getBytes("UTF-8");
+        byte[] xml = new MarshallingServiceImpl().marshallWorkflow(workflow).getBytes("UTF-8");
+        byte[] binary = KickstartWorkflowCodec.encode(workflow);
+        StaxTransformationServiceImpl xmlReader = new StaxTransformationServiceImpl();
+
+        System.out.println("Size: json " + jsonBytes.length + " bytes, xml " + xml.length 
+                + " bytes, binary " + binary.length + " bytes");
+
+        for (int round = 0; round < NR_OF_WARMUP_ROUNDS + NR_OF_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < NR_OF_DECODES; i++) {
+                jsonConverter.convertFromJson(json);
+            }
+            long jsonTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < NR_OF_DECODES; i++) {
+                xmlReader.convertToKickstartWorkflow(new ByteArrayInputStream(xml));
+            }
+            long xmlTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < NR_OF_DECODES; i++) {
+                KickstartWorkflowCodec.decode(binary);
+            }
+            long binaryTime = System.nanoTime() - start;
+
+            if (round >= NR_OF_WARMUP_ROUNDS) {
+                System.out.println("Decode: json " + jsonTime / NR_OF_DECODES + " ns, xml " + xmlTime / NR_OF_DECODES 
+                        + " ns, binary " + binaryTime / NR_OF_DECODES + " ns");
+            }
+        }
+    }
+
+    protected static String createJsonSource(int nrOfTasks) {
+        StringBuilder json = new StringBuilder("{\"name\":\"Expense approval\",\"description\":\"Expenses\",\"tasks\":[");
+        for (int i = 0; i < nrOfTasks; i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("{\"name\":\"Review ").append(i).append("\",\"description\":\"Review the expense note\",")
+                .append("\"assigneeType\":\"user\",\"assignee\":\"kermit\",\"startWithPrevious\":").append(i % 2 == 1).append(",")
+                .append("\"form\":[{\"name\":\"reason\",\"type\":\"text\",\"isRequired\":false},")
+                .append("{\"name\":\"amount\",\"type\":\"number\",\"isRequired\":true}]}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+}
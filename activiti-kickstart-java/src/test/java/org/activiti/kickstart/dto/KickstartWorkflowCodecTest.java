@@ -0,0 +1,150 @@
+package org.activiti.kickstart.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.activiti.kickstart.service.MarshallingServiceImpl;
+import org.activiti.kickstart.service.WorkflowJsonConverter;
+import org.junit.Test;
+
+
+public class KickstartWorkflowCodecTest {
+
+    @Test
+    public void testRoundTripOfAllTaskTypes() {
+        KickstartWorkflow workflow = createWorkflow(1);
+        ((KickstartUserTask) workflow.getTasks().get(0)).getForm().getFormProperties().get(2).setRequired(null);
+        KickstartWorkflow decoded = KickstartWorkflowCodec.decode(KickstartWorkflowCodec.encode(workflow));
+
+        assertEquals(workflow.getId(), decoded.getId());
+        assertEquals(workflow.getName(), decoded.getName());
+        assertNull(decoded.getDescription());
+        assertEquals(workflow.getTasks().size(), decoded.getTasks().size());
+
+        KickstartUserTask userTask = (KickstartUserTask) decoded.getTasks().get(0);
+        assertEquals("Review 0", userTask.getName());
+        assertEquals("kermit", userTask.getAssignee());
+        assertNull(userTask.getGroups());
+        assertFalse(userTask.getStartsWithPrevious());
+        assertEquals(3, userTask.getForm().getFormProperties().size());
+        assertEquals("amount", userTask.getForm().getFormProperties().get(1).getProperty());
+        assertEquals("number", userTask.getForm().getFormProperties().get(1).getType());
+        assertTrue(userTask.getForm().getFormProperties().get(1).isRequired());
+        assertNull(userTask.getForm().getFormProperties().get(2).isRequired());
+
+        KickstartUserTask initiatorTask = (KickstartUserTask) decoded.getTasks().get(1);
+        assertTrue(initiatorTask.isAssigneeInitiator());
+        assertTrue(initiatorTask.getStartsWithPrevious());
+        assertNull(initiatorTask.getForm());
+
+        KickstartServiceTask serviceTask = (KickstartServiceTask) decoded.getTasks().get(2);
+        assertEquals("org.activiti.Delegate", serviceTask.getClassName());
+        assertEquals("#{delegate}", serviceTask.getDelegateExpression());
+
+        KickstartScriptTask scriptTask = (KickstartScriptTask) decoded.getTasks().get(3);
+        assertEquals("groovy", scriptTask.getScriptFormat());
+        assertEquals("if (a < b && c) { out = \"\u00e9\u4e2d\" }", scriptTask.getScript());
+
+        KickstartMailTask mailTask = (KickstartMailTask) decoded.getTasks().get(4);
+        assertEquals("fozzie@muppets.org", mailTask.getTo().getStringValue());
+        assertEquals("${initiator}", mailTask.getFrom().getExpression());
+        assertNull(mailTask.getCc().getStringValue());
+        assertEquals("Expense <b>approved</b>", mailTask.getHtml().getStringValue());
+    }
+
+    @Test
+    public void testNewerVersionIsRejected() {
+        byte[] bytes = KickstartWorkflowCodec.encode(createWorkflow(1));
+        bytes[1] = (byte) (KickstartWorkflowCodec.VERSION + 1);
+        try {
+            KickstartWorkflowCodec.decode(bytes);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void testTruncatedDataIsRejected() {
+        byte[] bytes = KickstartWorkflowCodec.encode(createWorkflow(1));
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        try {
+            KickstartWorkflowCodec.decode(truncated);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSmallerThanJsonSourceAndXml() throws Exception {
+        String json = KickstartWorkflowCodecBenchmark.createJsonSource(20);
+        KickstartWorkflow workflow = new WorkflowJsonConverter().convertFromJson(json);
+        byte[] xml = new MarshallingServiceImpl().marshallWorkflow(workflow).getBytes("UTF-8");
+
+        // About 8 times smaller than the json source and well over an order of magnitude smaller than the xml
+        byte[] binary = KickstartWorkflowCodec.encode(workflow);
+        assertTrue(binary.length * 5 < json.getBytes("UTF-8").length);
+        assertTrue(binary.length * 10 < xml.length);
+        assertEquals(workflow.getFingerprint(), KickstartWorkflowCodec.decode(binary).getFingerprint());
+    }
+
+    protected KickstartWorkflow createWorkflow(int nrOfBlocks) {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setId("expenses");
+        workflow.setName("Expense approval");
+
+        for (int i = 0; i < nrOfBlocks; i++) {
+            KickstartUserTask userTask = new KickstartUserTask();
+            userTask.setName("Review " + i);
+            userTask.setDescription("Review the expense note");
+            userTask.setAssignee("kermit");
+            KickstartForm form = new KickstartForm();
+            form.addFormProperty(createFormProperty("reason", "text", Boolean.FALSE));
+            form.addFormProperty(createFormProperty("amount", "number", Boolean.TRUE));
+            form.addFormProperty(createFormProperty("date", "date", Boolean.FALSE));
+            userTask.setForm(form);
+            workflow.addTask(userTask);
+
+            KickstartUserTask initiatorTask = new KickstartUserTask();
+            initiatorTask.setName("Confirm " + i);
+            initiatorTask.setAssigneeInitiator(true);
+            initiatorTask.setStartWithPrevious(true);
+            workflow.addTask(initiatorTask);
+
+            KickstartServiceTask serviceTask = new KickstartServiceTask();
+            serviceTask.setName("Book " + i);
+            serviceTask.setClassName("org.activiti.Delegate");
+            serviceTask.setDelegateExpression("#{delegate}");
+            workflow.addTask(serviceTask);
+
+            KickstartScriptTask scriptTask = new KickstartScriptTask();
+            scriptTask.setName("Calculate " + i);
+            scriptTask.setScriptFormat("groovy");
+            scriptTask.setScript("if (a < b && c) { out = \"\u00e9\u4e2d\" }");
+            workflow.addTask(scriptTask);
+
+            KickstartMailTask mailTask = new KickstartMailTask();
+            mailTask.setName("Notify " + i);
+            mailTask.getTo().setStringValue("fozzie@muppets.org");
+            mailTask.getFrom().setExpression("${initiator}");
+            mailTask.getSubject().setStringValue("Expense approved");
+            mailTask.getHtml().setStringValue("Expense <b>approved</b>");
+            workflow.addTask(mailTask);
+        }
+        return workflow;
+    }
+
+    protected KickstartFormProperty createFormProperty(String property, String type, Boolean required) {
+        KickstartFormProperty formProperty = new KickstartFormProperty();
+        formProperty.setProperty(property);
+        formProperty.setType(type);
+        formProperty.setRequired(required);
+        return formProperty;
+    }
+
+}
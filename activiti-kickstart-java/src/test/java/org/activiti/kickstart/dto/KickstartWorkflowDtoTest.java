@@ -1,6 +1,12 @@
 package org.activiti.kickstart.dto;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 
@@ -11,6 +17,7 @@ import org.activiti.kickstart.bpmn20.model.activity.type.ServiceTask;
 import org.activiti.kickstart.bpmn20.model.activity.type.UserTask;
 import org.activiti.kickstart.bpmn20.model.bpmndi.BPMNPlane;
 import org.activiti.kickstart.bpmn20.model.extension.activiti.ActivitFieldExtensionElement;
+import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
 import org.activiti.kickstart.service.Bpmn20MarshallingService;
 import org.activiti.kickstart.service.MarshallingServiceImpl;
 import org.junit.Before;
@@ -226,4 +233,336 @@ public class KickstartWorkflowDtoTest {
         
         assertEquals("myAssignee", userTask.getActivityResource().get(0).getResourceAssignmentExpression().getExpression().getContent().get(0));
     }
+    
+    @Test
+    public void testXmlIsCachedUntilWorkflowChanges() throws Exception {
+        KickstartWorkflow kickstartWorkflow = new KickstartWorkflow();
+        kickstartWorkflow.setName("One User Task Workflow");
+        
+        KickstartTask task = new KickstartUserTask();
+        task.setName("My First User task");
+        kickstartWorkflow.addTask(task);
+        
+        // Every conversion is a new graph, drawing one doesn't affect the xml
+        Definitions def = marshallingService.convertToBpmn(kickstartWorkflow);
+        assertNotSame(def, marshallingService.convertToBpmn(kickstartWorkflow));
+        new ProcessDiagramGenerator(kickstartWorkflow, marshallingService).execute(def);
+        String xml = marshallingService.marshallWorkflow(kickstartWorkflow);
+        assertTrue(xml.indexOf("BPMNShape") == -1);
+        assertSame(xml, marshallingService.marshallWorkflow(kickstartWorkflow));
+        
+        kickstartWorkflow.setDescription("Changed description");
+        String changedXml = marshallingService.marshallWorkflow(kickstartWorkflow);
+        assertNotSame(xml, changedXml);
+        
+        // Changing a task resets the xml as well
+        task.setName("Renamed task");
+        String renamedXml = marshallingService.marshallWorkflow(kickstartWorkflow);
+        assertTrue(renamedXml.indexOf("Renamed task") > -1);
+        
+        KickstartTask task2 = new KickstartUserTask();
+        task2.setName("My Second User task");
+        kickstartWorkflow.addTask(task2);
+        assertNotSame(renamedXml, marshallingService.marshallWorkflow(kickstartWorkflow));
+        
+        // Every output profile has its own xml
+        MarshallingServiceImpl compactMarshallingService = new MarshallingServiceImpl();
+        compactMarshallingService.setCompact(true);
+        String compactXml = compactMarshallingService.marshallWorkflow(kickstartWorkflow);
+        assertTrue(compactXml.length() < marshallingService.marshallWorkflow(kickstartWorkflow).length());
+    }
+    
+    @Test
+    public void testSnapshotCantBeChanged() throws Exception {
+        KickstartWorkflow snapshot = KickstartWorkflow.builder()
+                .name("Snapshot workflow")
+                .addTask(createUserTask("First task", false))
+                .build();
+        assertTrue(snapshot.isSnapshot());
+        assertSame(snapshot, snapshot.snapshot());
+        
+        try {
+            snapshot.setName("Changed");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.addTask(createUserTask("Second task", false));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.getTaskBlocks().get(0).addTask(createUserTask("Second task", false));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        
+        // Snapshots cache their xml too, conversions are always new graphs
+        assertNotSame(marshallingService.convertToBpmn(snapshot), marshallingService.convertToBpmn(snapshot));
+        assertSame(marshallingService.marshallWorkflow(snapshot), marshallingService.marshallWorkflow(snapshot));
+    }
+    
+    @Test
+    public void testSnapshotOfMutableWorkflow() throws Exception {
+        KickstartWorkflow kickstartWorkflow = new KickstartWorkflow();
+        kickstartWorkflow.setName("Mutable workflow");
+        kickstartWorkflow.addTask(createUserTask("First task", false));
+        
+        KickstartWorkflow snapshot = kickstartWorkflow.snapshot();
+        kickstartWorkflow.addTask(createUserTask("Second task", false));
+        
+        assertFalse(kickstartWorkflow.isSnapshot());
+        assertEquals("Mutable workflow", snapshot.getName());
+        assertEquals(1, snapshot.getTasks().size());
+        assertEquals(2, kickstartWorkflow.getTasks().size());
+    }
+    
+    @Test
+    public void testSnapshotTasksAreFrozenCopies() throws Exception {
+        KickstartWorkflow kickstartWorkflow = createFingerprintWorkflow();
+        KickstartUserTask userTask = (KickstartUserTask) kickstartWorkflow.getTasks().get(0);
+        KickstartWorkflow snapshot = kickstartWorkflow.snapshot();
+        
+        // Changing the tasks of the mutable workflow doesn't change the snapshot
+        userTask.setAssignee("gonzo");
+        userTask.getForm().getFormProperties().get(0).setType("number");
+        ((KickstartMailTask) kickstartWorkflow.getTasks().get(1)).getSubject().setStringValue("Changed subject");
+        KickstartUserTask snapshotTask = (KickstartUserTask) snapshot.getTasks().get(0);
+        assertNotSame(userTask, snapshotTask);
+        assertTrue(snapshotTask.isFrozen());
+        assertEquals("kermit", snapshotTask.getAssignee());
+        assertEquals("text", snapshotTask.getForm().getFormProperties().get(0).getType());
+        assertEquals("Subject", ((KickstartMailTask) snapshot.getTasks().get(1)).getSubject().getStringValue());
+        
+        try {
+            snapshotTask.setAssignee("fozzie");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshotTask.getForm().getFormProperties().get(0).setRequired(true);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ((KickstartMailTask) snapshot.getTasks().get(1)).getTo().setStringValue("test@mycompany.com");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        
+        // A copy of a frozen task can be changed again
+        KickstartUserTask copy = snapshotTask.copy();
+        copy.setAssignee("fozzie");
+        assertFalse(copy.isFrozen());
+        assertEquals("kermit", snapshotTask.getAssignee());
+    }
+    
+    @Test
+    public void testConversionDoesntChangeWorkflow() throws Exception {
+        KickstartWorkflow kickstartWorkflow = new KickstartWorkflow();
+        kickstartWorkflow.setName("Initiator workflow");
+        KickstartUserTask userTask = createUserTask("Initiator task", false);
+        userTask.setAssigneeInitiator(true);
+        kickstartWorkflow.addTask(userTask);
+        Fingerprint fingerprint = kickstartWorkflow.getFingerprint();
+        
+        String bpmn = marshallingService.marshallWorkflow(kickstartWorkflow);
+        assertTrue(bpmn.indexOf("${ks_initiator}") > -1);
+        assertNull(userTask.getAssignee());
+        assertEquals(fingerprint, kickstartWorkflow.getFingerprint());
+        
+        // Snapshots are converted the same way
+        assertTrue(marshallingService.marshallWorkflow(kickstartWorkflow.snapshot()).indexOf("${ks_initiator}") > -1);
+    }
+    
+    @Test
+    public void testSnapshotsShareUnchangedTaskBlocks() throws Exception {
+        KickstartWorkflow snapshot = KickstartWorkflow.builder()
+                .name("Shared workflow")
+                .addTask(createUserTask("First task", false))
+                .addTask(createUserTask("Second task", false))
+                .addTask(createUserTask("Parallel task", true))
+                .addTask(createUserTask("Last task", false))
+                .build();
+        assertEquals(3, snapshot.getTaskBlocks().size());
+        assertSame(snapshot, snapshot.toBuilder().build());
+        
+        KickstartWorkflow changed = snapshot.toBuilder()
+                .setTask(3, createUserTask("Changed last task", false))
+                .build();
+        assertNotSame(snapshot, changed);
+        assertEquals("Shared workflow", changed.getName());
+        assertSame(snapshot.getTasks().get(0), changed.getTasks().get(0));
+        assertSame(snapshot.getTaskBlocks().get(0), changed.getTaskBlocks().get(0));
+        assertSame(snapshot.getTaskBlocks().get(1), changed.getTaskBlocks().get(1));
+        assertNotSame(snapshot.getTaskBlocks().get(2), changed.getTaskBlocks().get(2));
+        assertEquals("Last task", snapshot.getTasks().get(3).getName());
+        
+        KickstartWorkflow renamed = changed.toBuilder().name("Renamed workflow").build();
+        assertEquals("Renamed workflow", renamed.getName());
+        assertSame(changed.getTaskBlocks().get(2), renamed.getTaskBlocks().get(2));
+    }
+    
+    @Test
+    public void testFingerprintFollowsContent() throws Exception {
+        KickstartWorkflow kickstartWorkflow = createFingerprintWorkflow();
+        Fingerprint fingerprint = kickstartWorkflow.getFingerprint();
+        assertEquals(32, fingerprint.toString().length());
+        assertSame(fingerprint, kickstartWorkflow.getFingerprint()); // kept until something changes
+        assertEquals(fingerprint, createFingerprintWorkflow().getFingerprint());
+        
+        // Ids are assigned on deployment and don't change the content
+        kickstartWorkflow.setId("deployed");
+        kickstartWorkflow.getTasks().get(0).setId("task1");
+        assertEquals(fingerprint, kickstartWorkflow.getFingerprint());
+        assertEquals(fingerprint, KickstartWorkflowCodec.decode(KickstartWorkflowCodec.encode(kickstartWorkflow)).getFingerprint());
+        assertEquals(fingerprint, kickstartWorkflow.snapshot().getFingerprint());
+        
+        KickstartUserTask userTask = (KickstartUserTask) kickstartWorkflow.getTasks().get(0);
+        userTask.setAssignee("gonzo");
+        Fingerprint changed = assertChanged(fingerprint, kickstartWorkflow);
+        
+        userTask.getForm().getFormProperties().get(0).setRequired(true);
+        changed = assertChanged(changed, kickstartWorkflow);
+        
+        KickstartMailTask mailTask = (KickstartMailTask) kickstartWorkflow.getTasks().get(1);
+        mailTask.getSubject().setStringValue("Changed subject");
+        changed = assertChanged(changed, kickstartWorkflow);
+        
+        // Parallel instead of sequential: same tasks, other task blocks
+        mailTask.setStartWithPrevious(true);
+        changed = assertChanged(changed, kickstartWorkflow);
+        assertEquals(1, kickstartWorkflow.getTaskBlocks().size());
+        
+        // Converting doesn't change the workflow
+        marshallingService.convertToBpmn(kickstartWorkflow);
+        assertSame(changed, kickstartWorkflow.getFingerprint());
+        
+        kickstartWorkflow.setDescription("Changed description");
+        assertChanged(changed, kickstartWorkflow);
+    }
+    
+    @Test
+    public void testTaskOfOtherWorkflowIsCopied() throws Exception {
+        KickstartWorkflow first = createFingerprintWorkflow();
+        KickstartWorkflow second = new KickstartWorkflow();
+        KickstartTask task = first.getTasks().get(0);
+        second.addTask(task);
+        assertNotSame(task, second.getTasks().get(0));
+        assertEquals(task.getFingerprint(), second.getTasks().get(0).getFingerprint());
+        
+        // Changing the task of the first workflow still resets its fingerprint, not the one of the second
+        Fingerprint firstFingerprint = first.getFingerprint();
+        Fingerprint secondFingerprint = second.getFingerprint();
+        task.setName("Changed name");
+        assertChanged(firstFingerprint, first);
+        assertSame(secondFingerprint, second.getFingerprint());
+    }
+    
+    @Test
+    public void testFormPropertiesOnlyChangeThroughTheForm() throws Exception {
+        KickstartWorkflow kickstartWorkflow = createFingerprintWorkflow();
+        KickstartForm form = ((KickstartUserTask) kickstartWorkflow.getTasks().get(0)).getForm();
+        try {
+            form.getFormProperties().add(new KickstartFormProperty());
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        
+        Fingerprint fingerprint = kickstartWorkflow.getFingerprint();
+        KickstartFormProperty formProperty = new KickstartFormProperty();
+        formProperty.setProperty("amount");
+        form.addFormProperty(formProperty);
+        assertChanged(fingerprint, kickstartWorkflow);
+    }
+    
+    protected Fingerprint assertChanged(Fingerprint previous, KickstartWorkflow kickstartWorkflow) {
+        Fingerprint fingerprint = kickstartWorkflow.getFingerprint();
+        assertFalse(previous.equals(fingerprint));
+        return fingerprint;
+    }
+    
+    protected KickstartWorkflow createFingerprintWorkflow() {
+        KickstartWorkflow kickstartWorkflow = new KickstartWorkflow();
+        kickstartWorkflow.setName("Fingerprint workflow");
+        
+        KickstartUserTask userTask = createUserTask("First task", false);
+        userTask.setAssignee("kermit");
+        KickstartForm form = new KickstartForm();
+        KickstartFormProperty formProperty = new KickstartFormProperty();
+        formProperty.setProperty("reason");
+        formProperty.setType("text");
+        form.addFormProperty(formProperty);
+        userTask.setForm(form);
+        kickstartWorkflow.addTask(userTask);
+        
+        KickstartMailTask mailTask = new KickstartMailTask();
+        mailTask.setName("Notify");
+        mailTask.getSubject().setStringValue("Subject");
+        kickstartWorkflow.addTask(mailTask);
+        return kickstartWorkflow;
+    }
+    
+    @Test
+    public void testSummary() throws Exception {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setName("Summary workflow");
+        KickstartUserTask first = createUserTask("first", false);
+        first.setAssignee("kermit");
+        first.setGroups("management, sales,");
+        KickstartForm form = new KickstartForm();
+        form.addFormProperty(new KickstartFormProperty());
+        form.addFormProperty(new KickstartFormProperty());
+        first.setForm(form);
+        workflow.addTask(first);
+        KickstartUserTask second = createUserTask("second", false);
+        second.setAssignee("fozzie;bear=1,2");
+        workflow.addTask(second);
+        KickstartUserTask third = createUserTask("third", true);
+        third.setAssigneeInitiator(true);
+        workflow.addTask(third);
+        workflow.addTask(createUserTask("fourth", false));
+
+        KickstartWorkflowSummary summary = KickstartWorkflowSummary.create(workflow);
+        assertEquals(4, summary.getNrOfTasks());
+        assertEquals(1, summary.getNrOfParallelBlocks());
+        assertEquals(2, summary.getNrOfFormProperties());
+        assertTrue(summary.isInitiatorAssigned());
+        assertEquals(2, summary.getAssignees().size());
+        assertTrue(summary.getGroups().contains("sales"));
+
+        // One line, which survives a round trip
+        String text = summary.format();
+        assertEquals(-1, text.indexOf('\n'));
+        KickstartWorkflowSummary parsed = KickstartWorkflowSummary.parse(text);
+        assertEquals(text, parsed.format());
+        assertEquals(summary.getAssignees(), parsed.getAssignees());
+        assertEquals(summary.getGroups(), parsed.getGroups());
+        assertTrue(parsed.getAssignees().contains("fozzie;bear=1,2"));
+        
+        // Entries that can't be parsed are skipped
+        parsed = KickstartWorkflowSummary.parse("tasks=many;parallelBlocks=2;formProperties=;assignees=kermit");
+        assertEquals(0, parsed.getNrOfTasks());
+        assertEquals(2, parsed.getNrOfParallelBlocks());
+        assertEquals(0, parsed.getNrOfFormProperties());
+        assertTrue(parsed.getAssignees().contains("kermit"));
+        
+        // Only xml deployed by KickStart has a summary
+        assertEquals("Summary_workflow.summary", KickstartWorkflowSummary.getResourceName("Summary_workflow.bpmn20.xml"));
+        assertNull(KickstartWorkflowSummary.getResourceName("imported.bpmn"));
+    }
+
+    protected KickstartUserTask createUserTask(String name, boolean startWithPrevious) {
+        KickstartUserTask task = new KickstartUserTask();
+        task.setName(name);
+        task.setStartWithPrevious(startWithPrevious);
+        return task;
+    }
 }
@@ -1,10 +1,23 @@
 package org.activiti.kickstart.service;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.history.HistoricProcessInstanceQuery;
+import org.activiti.engine.impl.util.IoUtil;
 import org.activiti.engine.repository.ProcessDefinition;
 import org.activiti.engine.test.ActivitiTestCase;
+import org.activiti.kickstart.bpmn20.diagram.IdGenerator;
+import org.activiti.kickstart.bpmn20.diagram.UUIDGenerator;
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.gateway.ExclusiveGateway;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
 import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
 import org.activiti.kickstart.dto.KickstartForm;
 import org.activiti.kickstart.dto.KickstartFormProperty;
@@ -13,6 +26,8 @@ import org.activiti.kickstart.dto.KickstartScriptTask;
 import org.activiti.kickstart.dto.KickstartServiceTask;
 import org.activiti.kickstart.dto.KickstartUserTask;
 import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowInfoCriteria;
 import org.junit.Test;
 
 
@@ -413,6 +428,51 @@ public class KickstartServiceImplTest extends ActivitiTestCase {
         assertEquals("${my.text.expression}", task.getText().getExpression());
     }
 
+    private String generateAdhocKey(String name) {
+        return "adhoc_" + name.toLowerCase().replace(" ", "_");
+    }
+    
+    @Test
+    public void testFindWorkflowInformationByIdOrKey() throws Exception {
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        assertNull(service.findWorkflowInformation("adhoc_single_lookup", false));
+        
+        KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+        dto.setId("adhoc_single_lookup");
+        String firstDeploymentId = service.deployWorkflow(dto, null);
+        String firstPid = getDeployedProcessDefinitionId(firstDeploymentId);
+        String secondDeploymentId = service.deployWorkflow(dto, null);
+        String secondPid = getDeployedProcessDefinitionId(secondDeploymentId);
+        runtimeService.startProcessInstanceById(firstPid);
+        
+        // By id: that exact version
+        KickstartWorkflowInfo info = service.findWorkflowInformation(firstPid, true);
+        assertEquals(firstPid, info.getId());
+        assertEquals(1, info.getVersion());
+        assertEquals(1, info.getNrOfRuntimeInstances());
+        assertNotNull(info.getCreateTime());
+        
+        // By key: the latest version
+        info = service.findWorkflowInformation("adhoc_single_lookup", false);
+        assertEquals(secondPid, info.getId());
+        assertEquals(2, info.getVersion());
+        assertEquals("adhoc_single_lookup", info.getKey());
+        assertEquals(0, info.getNrOfRuntimeInstances());
+        assertNull(info.getCreateTime()); // only read along with the counts
+        
+        assertNull(service.findWorkflowInformation("adhoc_single_lookup:3:unknown", false));
+        try {
+            service.findWorkflowInformation((String) null, false);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        
+        repositoryService.deleteDeployment(firstDeploymentId, true);
+        repositoryService.deleteDeployment(secondDeploymentId, true);
+    }
+    
     private String getDeployedProcessDefinitionId(final String deploymentId) {
         ProcessDefinition process = processEngine.getRepositoryService()
             .createProcessDefinitionQuery()
@@ -530,6 +590,383 @@ public class KickstartServiceImplTest extends ActivitiTestCase {
         assertEquals("#{echo}", task.getScript());
     }
     
+    @Test
+    public void testDeployAndFindMarkupInDescriptionAndScript() throws Exception {
+        KickstartWorkflow dto = createMarkupWorkflow();
+        
+        KickstartServiceImpl service = (KickstartServiceImpl) new KickstartServiceFactory().createActivitiStandaloneKickStartService();
+        service.setMarshallingService(marshallingService);
+        String deploymentId = service.deployWorkflow(dto, null);
+        KickstartWorkflow deployedDto = service.findWorkflowById(getDeployedProcessDefinitionId(deploymentId));
+        
+        assertEquals("Runs <b>a</b> & b", deployedDto.getDescription());
+        KickstartScriptTask task = (KickstartScriptTask) deployedDto.getTasks().get(0);
+        assertEquals("Checks that a < b && b > c", task.getDescription());
+        assertEquals("if (a < b && x[y[0]]> 0) { out:print(\"ok\") }", task.getScript());
+    }
+    
+    protected KickstartWorkflow createMarkupWorkflow() {
+        KickstartWorkflow dto = new KickstartWorkflow();
+        dto.setName("Markup Workflow");
+        dto.setDescription("Runs <b>a</b> & b\u0001");
+        
+        KickstartScriptTask task = new KickstartScriptTask();
+        task.setName("Markup script task");
+        task.setDescription("Checks that a < b && b > c");
+        task.setScriptFormat("groovy");
+        task.setScript("if (a < b && x[y[0]]> 0) { out:print(\"ok\") }");
+        dto.addTask(task);
+        return dto;
+    }
+    
+    @Test
+    public void testMarshallWorkflowToOutputStream() throws Exception {
+        KickstartWorkflow dto = createSimpleServiceTaskWorkflow();
+        dto.setDescription("Pr\u00fcfung des Antrags \u2013 \u00e9t\u00e9");
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshallingService.marshallWorkflow(dto, out);
+        
+        assertEquals(marshallingService.marshallWorkflow(dto), new String(out.toByteArray(), "UTF-8"));
+    }
+    
+    @Test
+    public void testRepeatedMarshallingGivesSameXml() throws Exception {
+        KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+        
+        String bpmn = marshallingService.marshallWorkflow(dto);
+        assertEquals(bpmn, marshallingService.marshallWorkflow(dto));
+        
+        // Drawing twice on the cached conversion must not duplicate the DI
+        ProcessDiagramGenerator generator = new ProcessDiagramGenerator(dto, marshallingService);
+        generator.execute();
+        String bpmnWithDi = marshallingService.marshallWorkflow(dto);
+        generator.execute();
+        assertEquals(bpmnWithDi, marshallingService.marshallWorkflow(dto));
+    }
+    
+    @Test
+    public void testDeployedXmlContainsDiagramInterchange() throws Exception {
+        KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+        
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        String deploymentId = service.deployWorkflow(dto, null);
+        
+        RepositoryService repositoryService = processEngine.getRepositoryService();
+        String bpmnResourceName = null;
+        for (String resourceName : repositoryService.getDeploymentResourceNames(deploymentId)) {
+            if (resourceName.endsWith(".bpmn20.xml")) {
+                bpmnResourceName = resourceName;
+            }
+        }
+        assertNotNull(bpmnResourceName);
+        
+        byte[] bpmn = IoUtil.readInputStream(repositoryService.getResourceAsStream(deploymentId, bpmnResourceName), bpmnResourceName);
+        Definitions definitions = Bpmn20JaxbContext.getInstance().unmarshal(bpmn);
+        Process process = (Process) definitions.getRootElement().get(0);
+        
+        // Every flow element (start, task, end and the sequence flow in between) has a shape or edge
+        assertEquals(process.getFlowElement().size(), 
+                definitions.getDiagram().get(0).getBPMNPlane().getDiagramElement().size());
+    }
+    
+    @Test
+    public void testKickstartSubsetMarshalling() throws Exception {
+        MarshallingServiceImpl subsetMarshallingService = new MarshallingServiceImpl();
+        subsetMarshallingService.setJaxbMode(Bpmn20JaxbContext.Mode.KICKSTART_SUBSET);
+        
+        assertEquals(marshallingService.marshallWorkflow(createSimpleServiceTaskWorkflow()), 
+                subsetMarshallingService.marshallWorkflow(createSimpleServiceTaskWorkflow()));
+        assertEquals(marshallingService.marshallWorkflow(createSimpleEmailTaskWorkflow()), 
+                subsetMarshallingService.marshallWorkflow(createSimpleEmailTaskWorkflow()));
+        assertEquals(marshallingService.marshallWorkflow(createSimpleScriptTask()), 
+                subsetMarshallingService.marshallWorkflow(createSimpleScriptTask()));
+    }
+    
+    @Test
+    public void testCompactMarshalling() throws Exception {
+        KickstartWorkflow dto = createLargeUserTaskWorkflow(50);
+        MarshallingServiceImpl compactMarshallingService = new MarshallingServiceImpl();
+        compactMarshallingService.setCompact(true);
+        
+        String bpmn = marshallingService.marshallWorkflow(dto);
+        String compactBpmn = compactMarshallingService.marshallWorkflow(dto);
+        assertTrue(compactBpmn.length() < bpmn.length());
+        assertFalse(compactBpmn.indexOf("documentation") > -1);
+        assertFalse(compactBpmn.indexOf("_humanPerformer") > -1);
+        
+        // The deployed xml, which contains the DI, is smaller as well and still deploys
+        ProcessDiagramGenerator generator = new ProcessDiagramGenerator(dto, marshallingService);
+        Definitions definitions = marshallingService.convertToBpmn(dto);
+        generator.execute(definitions);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshallingService.marshallDefinitions(definitions, out);
+        ByteArrayOutputStream compactOut = new ByteArrayOutputStream();
+        compactMarshallingService.marshallDefinitions(definitions, compactOut);
+        assertTrue(compactOut.size() < out.size());
+        
+        deploy(out.toByteArray());
+        deploy(compactOut.toByteArray());
+        
+        // Nothing KickStart reads back is lost
+        KickstartServiceImpl service = (KickstartServiceImpl) new KickstartServiceFactory().createActivitiStandaloneKickStartService();
+        service.setMarshallingService(compactMarshallingService);
+        String deploymentId = service.deployWorkflow(dto, null);
+        KickstartWorkflow deployedDto = service.findWorkflowById(getDeployedProcessDefinitionId(deploymentId));
+        assertEquals(50, deployedDto.getTasks().size());
+        KickstartUserTask task = (KickstartUserTask) deployedDto.getTasks().get(49);
+        assertEquals("kermit", task.getAssignee());
+        assertEquals("management,sales", task.getGroups());
+    }
+    
+    private KickstartWorkflow createLargeUserTaskWorkflow(int nrOfTasks) {
+        KickstartWorkflow dto = new KickstartWorkflow();
+        dto.setName("Large User Task Workflow");
+        for (int i = 0; i < nrOfTasks; i++) {
+            KickstartUserTask taskDto = new KickstartUserTask();
+            taskDto.setName("User task " + i);
+            taskDto.setAssignee("kermit");
+            taskDto.setGroups("management,sales");
+            taskDto.setStartWithPrevious(i % 2 == 1);
+            dto.addTask(taskDto);
+        }
+        return dto;
+    }
+    
+    private void deploy(byte[] bpmn) {
+        processEngine.getRepositoryService().createDeployment()
+            .addInputStream("large.bpmn20.xml", new ByteArrayInputStream(bpmn))
+            .deploy();
+    }
+    
+    @Test
+    public void testBulkMarshalling() throws Exception {
+        // Fixed ids for the elements that otherwise get a random one, so separate runs produce the same xml
+        IdGenerator idGenerator = UUIDGenerator.getIdGenerator();
+        UUIDGenerator.setIdGenerator(new IdGenerator() {
+            public String generateId() {
+                return "sid-bulk";
+            }
+        });
+        List<String> serialXmls = new ArrayList<String>();
+        List<KickstartWorkflow> workflows = createBulkWorkflows(200);
+        List<String> bulkXmls;
+        try {
+            // Serial run on separate instances, so nothing is taken from the xml cached on the workflows
+            for (KickstartWorkflow workflow : createBulkWorkflows(200)) {
+                serialXmls.add(marshallingService.marshallWorkflow(workflow));
+            }
+            bulkXmls = marshallingService.marshallWorkflows(workflows);
+        } finally {
+            UUIDGenerator.setIdGenerator(idGenerator);
+        }
+        
+        // Results are in order, and the same as marshalling one by one
+        assertEquals(serialXmls, bulkXmls);
+        
+        // The same instance twice is marshalled once
+        workflows.add(workflows.get(0));
+        bulkXmls = marshallingService.marshallWorkflows(workflows);
+        assertEquals(bulkXmls.get(0), bulkXmls.get(workflows.size() - 1));
+        
+        // The executor is kept for the next call
+        MarshallingServiceImpl service = (MarshallingServiceImpl) marshallingService;
+        assertSame(service.getBulkExecutor(), service.getBulkExecutor());
+        assertFalse(service.getBulkExecutor().isShutdown());
+    }
+    
+    private List<KickstartWorkflow> createBulkWorkflows(int nrOfWorkflows) {
+        List<KickstartWorkflow> workflows = new ArrayList<KickstartWorkflow>();
+        for (int i = 0; i < nrOfWorkflows; i++) {
+            KickstartWorkflow workflow = createLargeUserTaskWorkflow(20);
+            workflow.setId("bulk_" + i);
+            workflows.add(workflow);
+        }
+        return workflows;
+    }
+    
+    @Test
+    public void testKickstartSubsetFallsBackToFullModel() throws Exception {
+        // Exclusive gateways are never generated by KickStart, so they're not part of the subset
+        String bpmnXml = "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"foreign\">"
+                + "<process id=\"foreign\"><startEvent id=\"theStart\"/><exclusiveGateway id=\"gateway\"/></process>"
+                + "</definitions>";
+        Definitions definitions = Bpmn20JaxbContext.getInstance(Bpmn20JaxbContext.Mode.KICKSTART_SUBSET).unmarshal(bpmnXml.getBytes("UTF-8"));
+        Process process = (Process) definitions.getRootElement().get(0);
+        assertEquals(2, process.getFlowElement().size());
+        assertTrue(process.getFlowElement().get(1) instanceof ExclusiveGateway);
+    }
+    
+    @Test
+    public void testWorkflowInformationCountsSameAsQueryApi() throws Exception {
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+        dto.setId("adhoc_counts");
+        String deploymentId = service.deployWorkflow(dto, null);
+        String pid = getDeployedProcessDefinitionId(deploymentId);
+        
+        // Two running instances, one finished
+        for (int i = 0; i < 3; i++) {
+            runtimeService.startProcessInstanceById(pid);
+        }
+        String processInstanceId = runtimeService.createProcessInstanceQuery().processDefinitionId(pid).list().get(0).getId();
+        taskService.complete(taskService.createTaskQuery().processInstanceId(processInstanceId).singleResult().getId());
+        
+        List<KickstartWorkflowInfo> infoList = service.findWorkflowInformation(true);
+        boolean found = false;
+        for (KickstartWorkflowInfo info : infoList) {
+            if (info.getId().equals(pid)) {
+                assertEquals(2, info.getNrOfRuntimeInstances());
+                assertEquals(1, info.getNrOfHistoricInstances());
+                found = true;
+            }
+            
+            HistoricProcessInstanceQuery query = historyService.createHistoricProcessInstanceQuery().processDefinitionId(info.getId());
+            assertEquals(query.unfinished().count(), info.getNrOfRuntimeInstances());
+            query = historyService.createHistoricProcessInstanceQuery().processDefinitionId(info.getId());
+            assertEquals(query.finished().count(), info.getNrOfHistoricInstances());
+            assertEquals(repositoryService.createDeploymentQuery().deploymentId(info.getDeploymentId()).singleResult().getDeploymentTime().getTime(), 
+                    info.getCreateTime().getTime());
+        }
+        assertTrue(found);
+        
+        // The summary was deployed next to the process xml
+        for (KickstartWorkflowInfo info : infoList) {
+            if (info.getId().equals(pid)) {
+                assertEquals(1, info.getSummary().getNrOfTasks());
+                assertEquals(1, info.getSummary().getNrOfFormProperties());
+            }
+        }
+        
+        // Without counts only the deployments are fetched
+        for (KickstartWorkflowInfo info : service.findWorkflowInformation(false)) {
+            assertEquals(0, info.getNrOfRuntimeInstances());
+            assertNotNull(info.getCreateTime());
+        }
+        
+        repositoryService.deleteDeployment(deploymentId, true);
+    }
+    
+    @Test
+    public void testPagedWorkflowInformation() throws Exception {
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        List<String> deploymentIds = new ArrayList<String>();
+        for (String name : new String[] { "Paging C", "Paging A", "Paging B" }) {
+            KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+            dto.setId(generateAdhocKey(name));
+            dto.setName(name);
+            deploymentIds.add(service.deployWorkflow(dto, null));
+        }
+        
+        KickstartWorkflowInfoCriteria criteria = new KickstartWorkflowInfoCriteria(0, 2);
+        criteria.setNameFilter("Paging ");
+        List<KickstartWorkflowInfo> page = service.findWorkflowInformation(criteria, false);
+        assertEquals(2, page.size());
+        assertEquals("Paging A", page.get(0).getName());
+        assertEquals("Paging B", page.get(1).getName());
+        
+        criteria.setStart(2);
+        page = service.findWorkflowInformation(criteria, true);
+        assertEquals(1, page.size());
+        assertEquals("Paging C", page.get(0).getName());
+        assertNotNull(page.get(0).getCreateTime());
+        
+        criteria.setStart(0);
+        criteria.setAscending(false);
+        page = service.findWorkflowInformation(criteria, false);
+        assertEquals("Paging C", page.get(0).getName());
+        assertEquals("Paging B", page.get(1).getName());
+        
+        criteria.setNameFilter("Paging B");
+        assertEquals(1, service.findWorkflowInformation(criteria, false).size());
+        
+        for (String deploymentId : deploymentIds) {
+            repositoryService.deleteDeployment(deploymentId, true);
+        }
+    }
+    
+    @Test
+    public void testNameFilterIsTakenLiterally() throws Exception {
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        List<String> deploymentIds = new ArrayList<String>();
+        for (String name : new String[] { "Literal_A", "LiteralxB", "Literal_C" }) {
+            KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+            dto.setId(generateAdhocKey(name));
+            dto.setName(name);
+            deploymentIds.add(service.deployWorkflow(dto, null));
+        }
+        
+        KickstartWorkflowInfoCriteria criteria = new KickstartWorkflowInfoCriteria(0, 10);
+        criteria.setNameFilter("Literal_");
+        List<KickstartWorkflowInfo> page = service.findWorkflowInformation(criteria, false);
+        assertEquals(2, page.size());
+        assertEquals("Literal_A", page.get(0).getName());
+        assertEquals("Literal_C", page.get(1).getName());
+        
+        criteria = new KickstartWorkflowInfoCriteria(1, 10);
+        criteria.setNameFilter("Literal_");
+        page = service.findWorkflowInformation(criteria, false);
+        assertEquals(1, page.size());
+        assertEquals("Literal_C", page.get(0).getName());
+        
+        criteria.setNameFilter("Literal%");
+        assertEquals(0, service.findWorkflowInformation(criteria, false).size());
+        
+        for (String deploymentId : deploymentIds) {
+            repositoryService.deleteDeployment(deploymentId, true);
+        }
+    }
+    
+    @Test
+    public void testLatestVersionOnlyWorkflowInformation() throws Exception {
+        KickstartServiceFactory kickstartServiceFactory = new KickstartServiceFactory();
+        KickstartService service = kickstartServiceFactory.createActivitiStandaloneKickStartService();
+        List<String> deploymentIds = new ArrayList<String>();
+        for (String name : new String[] { "Versioned A", "Versioned B", "Versioned A", "Versioned A", "Versioned B" }) {
+            KickstartWorkflow dto = createSimpleUserTaskWorkflow();
+            dto.setId(generateAdhocKey(name));
+            dto.setName(name);
+            deploymentIds.add(service.deployWorkflow(dto, null));
+        }
+        
+        KickstartWorkflowInfoCriteria criteria = new KickstartWorkflowInfoCriteria(0, 10);
+        criteria.setNameFilter("Versioned ");
+        assertEquals(5, service.findWorkflowInformation(criteria, false).size());
+        
+        // With a name filter
+        criteria.setLatestVersionOnly(true);
+        List<KickstartWorkflowInfo> page = service.findWorkflowInformation(criteria, true);
+        assertEquals(2, page.size());
+        assertEquals("Versioned A", page.get(0).getName());
+        assertEquals(3, page.get(0).getVersion());
+        assertEquals("Versioned B", page.get(1).getName());
+        assertEquals(2, page.get(1).getVersion());
+        
+        criteria.setStart(1);
+        page = service.findWorkflowInformation(criteria, false);
+        assertEquals(1, page.size());
+        assertEquals("Versioned B", page.get(0).getName());
+        
+        // Without a name filter, every key occurs once
+        criteria = new KickstartWorkflowInfoCriteria(0, 1000);
+        criteria.setLatestVersionOnly(true);
+        List<String> keys = new ArrayList<String>();
+        for (KickstartWorkflowInfo info : service.findWorkflowInformation(criteria, false)) {
+            assertFalse(keys.contains(info.getKey()));
+            keys.add(info.getKey());
+            assertEquals(info.getVersion(), repositoryService.createProcessDefinitionQuery().processDefinitionKey(info.getKey())
+                    .latestVersion().singleResult().getVersion());
+        }
+        
+        for (String deploymentId : deploymentIds) {
+            repositoryService.deleteDeployment(deploymentId, true);
+        }
+    }
+    
 //    private void createFile(final InputStream imageStream, final String fileName) throws Exception {
 //        File f = new File(fileName);
 //        if (f.exists()) {
@@ -0,0 +1,159 @@
+package org.activiti.kickstart.service;
+
+
+import java.io.ByteArrayOutputStream;
+
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.model.Process;
+import org.activiti.kickstart.bpmn20.model.gateway.ExclusiveGateway;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
+import org.activiti.kickstart.dto.KickstartForm;
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartMailTask;
+import org.activiti.kickstart.dto.KickstartScriptTask;
+import org.activiti.kickstart.dto.KickstartServiceTask;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.junit.Test;
+
+
+/**
+ * Runs all {@link KickstartServiceImplTest} cases against the streaming marshaller,
+ * and checks its output against the JAXB marshaller.
+ */
+public class StaxMarshallingServiceImplTest extends KickstartServiceImplTest {
+    
+    protected Bpmn20MarshallingService jaxbMarshallingService = new MarshallingServiceImpl();
+    
+    public StaxMarshallingServiceImplTest() {
+        marshallingService = new StaxMarshallingServiceImpl();
+    }
+    
+    @Test
+    public void testSameOutputAsJaxbForParallelTasks() throws Exception {
+        assertSameAsJaxb(createParallelWorkflow());
+    }
+    
+    protected KickstartWorkflow createParallelWorkflow() {
+        KickstartWorkflow dto = new KickstartWorkflow();
+        dto.setId("adhoc_parallel");
+        dto.setName("Parallel Workflow");
+        dto.setDescription("Workflow with a user task, a script task and a mail task in parallel");
+        
+        KickstartServiceTask serviceTask = new KickstartServiceTask();
+        serviceTask.setName("My Service task");
+        serviceTask.setClassName("de.test.MyClass");
+        dto.addTask(serviceTask);
+        
+        KickstartUserTask userTask = new KickstartUserTask();
+        userTask.setName("My User task");
+        KickstartForm form = new KickstartForm();
+        form.setFormKey("myForm");
+        KickstartFormProperty property = new KickstartFormProperty();
+        property.setProperty("amount");
+        property.setType("number");
+        property.setRequired(true);
+        form.addFormProperty(property);
+        userTask.setForm(form);
+        dto.addTask(userTask);
+        
+        KickstartScriptTask scriptTask = new KickstartScriptTask();
+        scriptTask.setName("My Script task");
+        scriptTask.setScriptFormat("juel");
+        scriptTask.setScript("#{echo}");
+        scriptTask.setStartWithPrevious(true);
+        dto.addTask(scriptTask);
+        
+        KickstartMailTask mailTask = new KickstartMailTask();
+        mailTask.setName("My Mail task");
+        mailTask.getTo().setStringValue("test@mycompany.com");
+        mailTask.getSubject().setExpression("${subject}");
+        mailTask.setStartWithPrevious(true);
+        dto.addTask(mailTask);
+        
+        return dto;
+    }
+    
+    @Test
+    public void testDefinitionsWithDiagramSameOutputAsJaxb() throws Exception {
+        KickstartWorkflow dto = createParallelWorkflow();
+        KickstartUserTask assignedTask = new KickstartUserTask();
+        assignedTask.setName("My Assigned task");
+        assignedTask.setAssignee("kermit");
+        assignedTask.setGroups("management,sales");
+        assignedTask.setDescription("Task with an assignee & groups");
+        dto.addTask(assignedTask);
+        
+        Definitions definitions = marshallingService.convertToBpmn(dto);
+        new ProcessDiagramGenerator(dto, marshallingService).execute(definitions);
+        
+        ByteArrayOutputStream jaxbXml = new ByteArrayOutputStream();
+        jaxbMarshallingService.marshallDefinitions(definitions, jaxbXml);
+        ByteArrayOutputStream staxXml = new ByteArrayOutputStream();
+        marshallingService.marshallDefinitions(definitions, staxXml);
+        
+        Bpmn20JaxbContext jaxbContext = Bpmn20JaxbContext.getInstance();
+        assertEquals(jaxbContext.marshal(jaxbContext.unmarshal(jaxbXml.toByteArray())), 
+                jaxbContext.marshal(jaxbContext.unmarshal(staxXml.toByteArray())));
+    }
+    
+    @Test
+    public void testUnsupportedDefinitionsAreMarshalledWithJaxb() throws Exception {
+        Definitions definitions = marshallingService.convertToBpmn(createParallelWorkflow());
+        ExclusiveGateway exclusiveGateway = new ExclusiveGateway();
+        exclusiveGateway.setId("exclusive_gateway");
+        ((Process) definitions.getRootElement().get(0)).getFlowElement().add(exclusiveGateway);
+        
+        ByteArrayOutputStream jaxbXml = new ByteArrayOutputStream();
+        jaxbMarshallingService.marshallDefinitions(definitions, jaxbXml);
+        ByteArrayOutputStream staxXml = new ByteArrayOutputStream();
+        marshallingService.marshallDefinitions(definitions, staxXml);
+        
+        assertEquals(new String(jaxbXml.toByteArray(), "UTF-8"), new String(staxXml.toByteArray(), "UTF-8"));
+    }
+    
+    @Test
+    public void testSameOutputAsJaxbForSimpleWorkflows() throws Exception {
+        KickstartWorkflow dto = new KickstartWorkflow();
+        dto.setId("adhoc_simple");
+        dto.setName("Simple Workflow");
+        dto.setDescription("Workflow with two sequential tasks");
+        
+        KickstartScriptTask scriptTask = new KickstartScriptTask();
+        scriptTask.setName("My Script task");
+        scriptTask.setScriptFormat("groovy");
+        scriptTask.setResultVariableName("myVar");
+        scriptTask.setScript("a < b && b > c");
+        dto.addTask(scriptTask);
+        
+        KickstartServiceTask serviceTask = new KickstartServiceTask();
+        serviceTask.setName("My \"quoted\" Service task");
+        serviceTask.setDelegateExpression("#{myDelegateExpression}");
+        dto.addTask(serviceTask);
+        
+        assertSameAsJaxb(dto);
+    }
+    
+    @Test
+    public void testFreeTextIsWrittenAsCData() throws Exception {
+        KickstartWorkflow dto = createMarkupWorkflow();
+        
+        String bpmn = marshallingService.marshallWorkflow(dto);
+        assertTrue(bpmn.indexOf("<![CDATA[Runs <b>a</b> & b]]>") > -1);
+        assertTrue(bpmn.indexOf("<![CDATA[if (a < b && x[y[0]]]]><![CDATA[> 0)") > -1);
+        assertSameAsJaxb(dto);
+    }
+    
+    /**
+     * Both outputs are read back and written again with JAXB, which gives
+     * an identical document when both contain the same elements, attributes and ids.
+     */
+    protected void assertSameAsJaxb(KickstartWorkflow dto) throws Exception {
+        Bpmn20JaxbContext jaxbContext = Bpmn20JaxbContext.getInstance();
+        String expected = jaxbContext.marshal(jaxbContext.unmarshal(jaxbMarshallingService.marshallWorkflow(dto).getBytes("UTF-8")));
+        String actual = jaxbContext.marshal(jaxbContext.unmarshal(marshallingService.marshallWorkflow(dto).getBytes("UTF-8")));
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.activiti.kickstart.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.activiti.kickstart.bpmn20.model.Definitions;
+import org.activiti.kickstart.bpmn20.util.Bpmn20JaxbContext;
+import org.activiti.kickstart.diagram.ProcessDiagramGenerator;
+import org.activiti.kickstart.dto.KickstartForm;
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartMailTask;
+import org.activiti.kickstart.dto.KickstartScriptTask;
+import org.activiti.kickstart.dto.KickstartServiceTask;
+import org.activiti.kickstart.dto.KickstartTask;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.junit.Test;
+
+
+/**
+ * Checks that reading the xml with StAX gives the same workflow as the JAXB conversion.
+ */
+public class StaxTransformationServiceImplTest {
+
+    protected TransformationService jaxbTransformationService = new TransformationServiceImpl();
+    protected TransformationService staxTransformationService = new StaxTransformationServiceImpl();
+
+    @Test
+    public void testSameWorkflowAsJaxbForAllTaskTypes() throws Exception {
+        KickstartWorkflow dto = createWorkflow();
+        assertSameAsJaxb(new MarshallingServiceImpl().marshallWorkflow(dto).getBytes("UTF-8"));
+        assertSameAsJaxb(new StaxMarshallingServiceImpl().marshallWorkflow(dto).getBytes("UTF-8"));
+
+        KickstartWorkflow read = staxTransformationService.convertToKickstartWorkflow(
+                new ByteArrayInputStream(new MarshallingServiceImpl().marshallWorkflow(dto).getBytes("UTF-8")));
+        assertEquals(dto.getName(), read.getName());
+        assertEquals(dto.getDescription(), read.getDescription());
+        assertEquals(dto.getTasks().size(), read.getTasks().size());
+
+        KickstartUserTask userTask = (KickstartUserTask) read.getTasks().get(0);
+        assertEquals("kermit", userTask.getAssignee());
+        assertNull(userTask.getGroups());
+        assertEquals(2, userTask.getForm().getFormProperties().size());
+        assertEquals("number", userTask.getForm().getFormProperties().get(0).getType());
+        assertTrue(userTask.getForm().getFormProperties().get(0).isRequired());
+        assertFalse(userTask.getForm().getFormProperties().get(1).isRequired());
+
+        assertEquals("management, sales", ((KickstartUserTask) read.getTasks().get(1)).getGroups());
+        assertTrue(read.getTasks().get(2).getStartsWithPrevious());
+
+        KickstartMailTask mailTask = (KickstartMailTask) read.getTasks().get(3);
+        assertEquals("test@mycompany.com", mailTask.getTo().getStringValue());
+        assertEquals("${subject}", mailTask.getSubject().getExpression());
+        assertNull(mailTask.getCc().getStringValue());
+
+        KickstartScriptTask scriptTask = (KickstartScriptTask) read.getTasks().get(4);
+        assertEquals("if (a < b && x[y[0]]]> 0) { out:print(\"<done/>\"); }", scriptTask.getScript());
+    }
+
+    @Test
+    public void testSameWorkflowAsJaxbForDeployedXml() throws Exception {
+        KickstartWorkflow dto = createWorkflow();
+        MarshallingServiceImpl marshallingService = new MarshallingServiceImpl();
+        Definitions definitions = marshallingService.convertToBpmn(dto);
+        new ProcessDiagramGenerator(dto, marshallingService).execute(definitions);
+
+        // The diagram interchange is skipped
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshallingService.marshallDefinitions(definitions, out);
+        assertSameAsJaxb(out.toByteArray());
+
+        MarshallingServiceImpl compactMarshallingService = new MarshallingServiceImpl();
+        compactMarshallingService.setCompact(true);
+        assertSameAsJaxb(compactMarshallingService.marshallWorkflow(dto).getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testUnsupportedElementInSequenceFlow() throws Exception {
+        String bpmn = new MarshallingServiceImpl().marshallWorkflow(createWorkflow());
+        int taskIndex = bpmn.indexOf("<userTask");
+        int idIndex = bpmn.indexOf("id=\"", taskIndex) + 4;
+        String taskId = bpmn.substring(idIndex, bpmn.indexOf('"', idIndex));
+        bpmn = bpmn.replace("id=\"" + taskId + "\"", "id=\"other\"");
+
+        try {
+            staxTransformationService.convertToKickstartWorkflow(new ByteArrayInputStream(bpmn.getBytes("UTF-8")));
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().indexOf(taskId) > -1);
+            return;
+        }
+        throw new AssertionError("Unknown sequence flow target was not detected");
+    }
+
+    protected void assertSameAsJaxb(byte[] bpmn) throws Exception {
+        Definitions definitions = Bpmn20JaxbContext.getInstance().unmarshal(bpmn);
+        KickstartWorkflow expected = jaxbTransformationService.convertToKickstartWorkflow(definitions);
+        KickstartWorkflow actual = staxTransformationService.convertToKickstartWorkflow(new ByteArrayInputStream(bpmn));
+
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getTasks().size(), actual.getTasks().size());
+        for (int i = 0; i < expected.getTasks().size(); i++) {
+            KickstartTask expectedTask = expected.getTasks().get(i);
+            KickstartTask actualTask = actual.getTasks().get(i);
+            assertEquals(expectedTask.getId(), actualTask.getId());
+            assertEquals(expectedTask.getClass(), actualTask.getClass());
+            assertEquals(expectedTask.getFingerprint(), actualTask.getFingerprint());
+        }
+        assertEquals(expected.getFingerprint(), actual.getFingerprint());
+    }
+
+    protected KickstartWorkflow createWorkflow() {
+        KickstartWorkflow dto = new KickstartWorkflow();
+        dto.setName("Stax workflow");
+        dto.setDescription("Description with <b>markup</b> & \"quotes\"");
+
+        KickstartUserTask userTask = new KickstartUserTask();
+        userTask.setName("Fill in form");
+        userTask.setDescription("First task");
+        userTask.setAssignee("kermit");
+        KickstartForm form = new KickstartForm();
+        form.addFormProperty(createFormProperty("amount", "number", true));
+        form.addFormProperty(createFormProperty("dueDate", "date", false));
+        userTask.setForm(form);
+        dto.addTask(userTask);
+
+        KickstartUserTask groupTask = new KickstartUserTask();
+        groupTask.setName("Review");
+        groupTask.setGroups("management, sales");
+        dto.addTask(groupTask);
+
+        KickstartServiceTask serviceTask = new KickstartServiceTask();
+        serviceTask.setName("Call service");
+        serviceTask.setClassName("de.test.MyClass");
+        serviceTask.setStartWithPrevious(true);
+        dto.addTask(serviceTask);
+
+        KickstartMailTask mailTask = new KickstartMailTask();
+        mailTask.setName("Send mail");
+        mailTask.getTo().setStringValue("test@mycompany.com");
+        mailTask.getSubject().setExpression("${subject}");
+        mailTask.getHtml().setStringValue("<p>Hello</p>");
+        dto.addTask(mailTask);
+
+        KickstartScriptTask scriptTask = new KickstartScriptTask();
+        scriptTask.setName("Run script");
+        scriptTask.setScriptFormat("groovy");
+        scriptTask.setResultVariableName("result");
+        scriptTask.setScript("if (a < b && x[y[0]]]> 0) { out:print(\"<done/>\"); }");
+        dto.addTask(scriptTask);
+
+        KickstartUserTask initiatorTask = new KickstartUserTask();
+        initiatorTask.setName("Check result");
+        initiatorTask.setAssigneeInitiator(true);
+        dto.addTask(initiatorTask);
+
+        return dto;
+    }
+
+    protected KickstartFormProperty createFormProperty(String property, String type, boolean required) {
+        KickstartFormProperty formProperty = new KickstartFormProperty();
+        formProperty.setProperty(property);
+        formProperty.setType(type);
+        formProperty.setRequired(required);
+        return formProperty;
+    }
+
+}
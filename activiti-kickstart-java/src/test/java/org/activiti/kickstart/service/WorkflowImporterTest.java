@@ -0,0 +1,115 @@
+package org.activiti.kickstart.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.activiti.engine.test.ActivitiTestCase;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.junit.Test;
+
+
+public class WorkflowImporterTest extends ActivitiTestCase {
+
+    protected Bpmn20MarshallingService marshallingService = new MarshallingServiceImpl();
+
+    @Test
+    public void testImportDirectory() throws Exception {
+        File directory = File.createTempFile("kickstart-import", "");
+        directory.delete();
+        directory.mkdir();
+        try {
+            for (int i = 0; i < 5; i++) {
+                writeFile(new File(directory, "import_" + i + ".bpmn20.xml"), createWorkflowXml("Import " + i));
+            }
+            writeFile(new File(directory, "broken.bpmn"), "<definitions><process".getBytes("UTF-8"));
+            writeFile(new File(directory, "readme.txt"), "not imported".getBytes("UTF-8"));
+            writeFile(new File(directory, "settings.xml"), "<settings/>".getBytes("UTF-8"));
+            writeFile(new File(directory, "zz_same_name.bpmn"), createWorkflowXml("Import 3"));
+
+            KickstartService kickstartService = new KickstartServiceFactory().createActivitiStandaloneKickStartService();
+            WorkflowImporter importer = new WorkflowImporter(kickstartService, new StaxTransformationServiceImpl());
+            importer.setNrOfThreads(2);
+            importer.setBatchSize(2);
+            WorkflowImportResult result = importer.importDirectory(directory);
+
+            assertEquals(7, result.getNrOfFiles());
+            assertEquals(5, result.getNrOfDeployedWorkflows());
+            assertEquals(2, result.getNrOfErrors());
+            assertTrue(result.getErrors().containsKey("broken.bpmn"));
+            assertTrue(result.getErrors().containsKey("zz_same_name.bpmn"));
+            assertEquals(1, repositoryService.createProcessDefinitionQuery().processDefinitionKey("adhoc_import_3").count());
+
+            KickstartWorkflow workflow = kickstartService.findWorkflowById(repositoryService.createProcessDefinitionQuery()
+                    .processDefinitionKey("adhoc_import_3").singleResult().getId());
+            assertEquals("Import 3", workflow.getName());
+            assertEquals("kermit", ((KickstartUserTask) workflow.getTasks().get(0)).getAssignee());
+
+            for (String deploymentId : result.getDeploymentIds().values()) {
+                repositoryService.deleteDeployment(deploymentId, true);
+            }
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testImportZip() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipOutputStream zipOutputStream = new ZipOutputStream(zip);
+        for (int i = 0; i < 3; i++) {
+            zipOutputStream.putNextEntry(new ZipEntry("processes/zip_" + i + ".bpmn"));
+            zipOutputStream.write(createWorkflowXml("Zip " + i));
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.putNextEntry(new ZipEntry("processes/empty.bpmn"));
+        zipOutputStream.write("<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"/>".getBytes("UTF-8"));
+        zipOutputStream.closeEntry();
+        zipOutputStream.close();
+
+        KickstartService kickstartService = new KickstartServiceFactory().createActivitiStandaloneKickStartService();
+        WorkflowImporter importer = new WorkflowImporter(kickstartService, new StaxTransformationServiceImpl());
+        WorkflowImportResult result = importer.importZip(new ByteArrayInputStream(zip.toByteArray()));
+
+        assertEquals(3, result.getNrOfDeployedWorkflows());
+        assertEquals(1, result.getNrOfErrors());
+        assertTrue(result.getErrors().containsKey("processes/empty.bpmn"));
+        assertEquals(3, repositoryService.createProcessDefinitionQuery().processDefinitionKeyLike("adhoc_zip_%").count());
+
+        for (String deploymentId : result.getDeploymentIds().values()) {
+            repositoryService.deleteDeployment(deploymentId, true);
+        }
+    }
+
+    protected byte[] createWorkflowXml(String name) throws Exception {
+        KickstartWorkflow workflow = new KickstartWorkflow();
+        workflow.setId("external_" + name.toLowerCase().replace(" ", "_"));
+        workflow.setName(name);
+
+        KickstartUserTask task = new KickstartUserTask();
+        task.setName("Review");
+        task.setAssignee("kermit");
+        workflow.addTask(task);
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshallingService.marshallDefinitions(marshallingService.convertToBpmn(workflow), xml);
+        return xml.toByteArray();
+    }
+
+    protected void writeFile(File file, byte[] bytes) throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+}
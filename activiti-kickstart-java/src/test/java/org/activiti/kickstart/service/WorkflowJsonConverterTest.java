@@ -0,0 +1,60 @@
+package org.activiti.kickstart.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.activiti.kickstart.dto.KickstartFormProperty;
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.junit.Test;
+
+
+public class WorkflowJsonConverterTest {
+
+    protected WorkflowJsonConverter converter = new WorkflowJsonConverter();
+
+    @Test
+    public void testConvertFromJson() {
+        String json = "{\"name\":\"Expense Report\",\"description\":\"Expenses\",\"tasks\":["
+                + "{\"name\":\"Fill in\",\"description\":\"Fill in the report\",\"assigneeType\":\"initiator\","
+                + "\"form\":[{\"name\":\"Amount\",\"type\":\"number\",\"isRequired\":true},"
+                + "{\"name\":\"Reason\",\"type\":\"text\",\"isRequired\":\"false\"}]},"
+                + "{\"name\":\"Approve\",\"assigneeType\":\"group\",\"assignee\":\"management\"},"
+                + "{\"name\":\"Pay\",\"assigneeType\":\"user\",\"assignee\":\"kermit\",\"startWithPrevious\":true}]}";
+
+        KickstartWorkflow workflow = converter.convertFromJson(json);
+        assertEquals("Expense Report", workflow.getName());
+        assertEquals("expense_report", workflow.getId());
+        assertEquals("Expenses", workflow.getDescription());
+        assertEquals(3, workflow.getTasks().size());
+
+        KickstartUserTask fillIn = (KickstartUserTask) workflow.getTasks().get(0);
+        assertEquals("Fill in", fillIn.getName());
+        assertEquals("Fill in the report", fillIn.getDescription());
+        assertTrue(fillIn.isAssigneeInitiator());
+        assertEquals(2, fillIn.getForm().getFormProperties().size());
+        KickstartFormProperty amount = fillIn.getForm().getFormProperties().get(0);
+        assertEquals("Amount", amount.getProperty());
+        assertEquals("number", amount.getType());
+        assertTrue(amount.isRequired());
+        assertFalse(fillIn.getForm().getFormProperties().get(1).isRequired());
+
+        KickstartUserTask approve = (KickstartUserTask) workflow.getTasks().get(1);
+        assertEquals("management", approve.getGroups());
+        assertNull(approve.getAssignee());
+        assertNull(approve.getForm());
+
+        KickstartUserTask pay = (KickstartUserTask) workflow.getTasks().get(2);
+        assertEquals("kermit", pay.getAssignee());
+        assertTrue(pay.getStartsWithPrevious());
+        assertFalse(approve.getStartsWithPrevious());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testConvertFromJsonWithoutName() {
+        converter.convertFromJson("{\"description\":\"No name\",\"tasks\":[]}");
+    }
+
+}
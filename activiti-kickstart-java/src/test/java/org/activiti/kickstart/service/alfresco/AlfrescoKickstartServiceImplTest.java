@@ -0,0 +1,75 @@
+package org.activiti.kickstart.service.alfresco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.activiti.kickstart.dto.KickstartUserTask;
+import org.activiti.kickstart.dto.KickstartWorkflow;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks the workflow cache of {@link AlfrescoKickstartServiceImpl#findWorkflowById(String)},
+ * without connecting to an Alfresco server.
+ */
+public class AlfrescoKickstartServiceImplTest {
+
+    protected static final String JSON = "{\"name\":\"Holiday Request\",\"tasks\":["
+            + "{\"name\":\"Approve\",\"assigneeType\":\"user\",\"assignee\":\"kermit\"}]}";
+
+    protected int nrOfReads;
+    protected AlfrescoKickstartServiceImpl kickstartService;
+
+    @Before
+    public void setUp() {
+        nrOfReads = 0;
+        kickstartService = new AlfrescoKickstartServiceImpl("user", "password", "http://localhost/cmis") {
+            protected String readWorkflowJsonSource(String id) {
+                nrOfReads++;
+                return JSON;
+            }
+        };
+    }
+
+    @Test
+    public void testFindWorkflowByIdIsCached() {
+        KickstartWorkflow workflow = kickstartService.findWorkflowById("holiday_request");
+        assertEquals("holiday_request", workflow.getId());
+        assertEquals("Holiday Request", workflow.getName());
+        assertEquals(1, nrOfReads);
+
+        // Changing the returned workflow doesn't change the cached one
+        ((KickstartUserTask) workflow.getTasks().get(0)).setAssignee("fozzie");
+
+        KickstartWorkflow cachedWorkflow = kickstartService.findWorkflowById("holiday_request");
+        assertEquals(1, nrOfReads);
+        assertNotSame(workflow, cachedWorkflow);
+        assertEquals("holiday_request", cachedWorkflow.getId());
+        assertEquals("kermit", ((KickstartUserTask) cachedWorkflow.getTasks().get(0)).getAssignee());
+    }
+
+    @Test
+    public void testEvictedWorkflowIsReadAgain() {
+        kickstartService.findWorkflowById("holiday_request");
+        kickstartService.workflowCache.evict("holiday_request");
+        kickstartService.findWorkflowById("holiday_request");
+        assertEquals(2, nrOfReads);
+    }
+
+    @Test
+    public void testCacheSize() {
+        kickstartService.setWorkflowCacheSize(2);
+        kickstartService.findWorkflowById("one");
+        kickstartService.findWorkflowById("two");
+        kickstartService.findWorkflowById("one");
+        kickstartService.findWorkflowById("three"); // 'two' is least recently used
+        assertEquals(3, nrOfReads);
+
+        kickstartService.findWorkflowById("one");
+        assertEquals(3, nrOfReads);
+        kickstartService.findWorkflowById("two");
+        assertEquals(4, nrOfReads);
+    }
+
+}
@@ -16,16 +16,48 @@ package org.activiti.kickstart;
 import java.util.List;
 
 import org.activiti.kickstart.dto.KickstartWorkflowInfo;
+import org.activiti.kickstart.dto.KickstartWorkflowInfoCriteria;
+import org.restlet.data.Form;
+import org.restlet.data.Status;
 import org.restlet.resource.Get;
 
 /**
+ * Lists the workflows. Without parameters all workflows are returned,
+ * a page can be requested with /workflows?start=&size=&filter=&sort=&order=&latest=
+ * 
  * @author jbarrez
  */
 public class WorkflowsResource extends BaseResource {
   
   @Get
   public List<KickstartWorkflowInfo> getWorkflowList() {
-    return getKickstartService().findWorkflowInformation(false);
+    Form query = getQuery();
+    if (query.getFirstValue("start") == null && query.getFirstValue("size") == null 
+            && query.getFirstValue("filter") == null && query.getFirstValue("latest") == null
+            && query.getFirstValue("sort") == null && query.getFirstValue("order") == null) {
+      return getKickstartService().findWorkflowInformation(false);
+    }
+    
+    KickstartWorkflowInfoCriteria criteria = new KickstartWorkflowInfoCriteria();
+    try {
+      if (query.getFirstValue("start") != null) {
+        criteria.setStart(Integer.parseInt(query.getFirstValue("start")));
+      }
+      if (query.getFirstValue("size") != null) {
+        criteria.setSize(Integer.parseInt(query.getFirstValue("size")));
+      }
+      if (query.getFirstValue("sort") != null) {
+        criteria.setSort(KickstartWorkflowInfoCriteria.Sort.valueOf(query.getFirstValue("sort").toUpperCase()));
+      }
+    } catch (IllegalArgumentException e) { // also thrown for malformed numbers
+      getResponse().setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+      return null;
+    }
+    criteria.setNameFilter(query.getFirstValue("filter"));
+    criteria.setAscending(!"desc".equalsIgnoreCase(query.getFirstValue("order")));
+    criteria.setLatestVersionOnly("true".equalsIgnoreCase(query.getFirstValue("latest")));
+    
+    return getKickstartService().findWorkflowInformation(criteria, false);
   }
 
 }